@@ -25,14 +25,26 @@
 package hudson;
 
 import hudson.model.AbstractProject;
+import hudson.model.DependencyGraph;
 import jenkins.model.Jenkins;
 import hudson.security.ACL;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.acegisecurity.Authentication;
@@ -40,6 +52,11 @@ import org.acegisecurity.context.SecurityContextHolder;
 
 /**
  * Runs a job on all projects in the order of dependencies
+ *
+ * <p>
+ * When given an {@link ExecutorService} and a parallelism greater than 1, projects that don't depend
+ * on each other are run concurrently on that executor, while a project still only runs after all of its
+ * upstream projects are done.
  */
 public class DependencyRunner implements Runnable {
 
@@ -49,8 +66,25 @@ public class DependencyRunner implements Runnable {
 
     List<AbstractProject> polledProjects = new ArrayList<AbstractProject>();
 
+    private final ExecutorService executor;
+    private final int parallelism;
+
     public DependencyRunner(ProjectRunnable runnable) {
+        this(runnable,null,1);
+    }
+
+    /**
+     * @param executor
+     *      Runs the projects other than the one run by the thread that calls {@link #run()}.
+     *      Can be the executor that runs this {@link DependencyRunner} itself.
+     * @param parallelism
+     *      Max number of projects to run at once, including the one run by the calling thread.
+     * @since 1.446
+     */
+    public DependencyRunner(ProjectRunnable runnable, ExecutorService executor, int parallelism) {
         this.runnable = runnable;
+        this.executor = executor;
+        this.parallelism = executor==null ? 1 : Math.max(1,parallelism);
     }
 
     public void run() {
@@ -69,10 +103,17 @@ public class DependencyRunner implements Runnable {
                     LOGGER.fine("skipping project since not a top level project: " + p.getName());
                 }
             populate(topLevelProjects);
+            if (parallelism>1) {
+                runInParallel();
+                return;
+            }
             for (AbstractProject p : polledProjects) {
                     LOGGER.fine("running project in correct dependency order: " + p.getName());
                 runnable.run(p);
             }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Interrupted while running projects in the order of dependencies", e);
+            Thread.currentThread().interrupt();
         } finally {
             SecurityContextHolder.getContext().setAuthentication(saveAuth);
         }
@@ -95,6 +136,127 @@ public class DependencyRunner implements Runnable {
         }
     }
 
+    /**
+     * Runs {@link #polledProjects} as soon as all of their upstream projects are done.
+     */
+    private void runInParallel() throws InterruptedException {
+        // use one snapshot throughout, as the graph can be updated while we are running
+        DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
+
+        // number of upstream projects yet to run, for each project
+        final Map<AbstractProject,Integer> pending = new HashMap<AbstractProject,Integer>();
+        for (AbstractProject p : polledProjects)
+            pending.put(p,0);
+        for (AbstractProject p : polledProjects)
+            for (AbstractProject d : downstream(graph,p,pending))
+                pending.put(d,pending.get(d)+1);
+
+        // in the order computed by populate(), so that ties are broken the same way as the sequential run
+        List<AbstractProject> ready = new LinkedList<AbstractProject>();
+        for (AbstractProject p : polledProjects)
+            if (pending.get(p)==0)
+                ready.add(p);
+
+        final BlockingQueue<AbstractProject> done = new LinkedBlockingQueue<AbstractProject>();
+        Map<AbstractProject,Future<?>> running = new HashMap<AbstractProject,Future<?>>();
+        int remaining = polledProjects.size();
+
+        while (remaining>0) {
+            if (!ready.isEmpty() && running.size()<parallelism-1) {
+                final AbstractProject p = ready.remove(0);
+                LOGGER.fine("running project concurrently in dependency order: " + p.getName());
+                Runnable task = new Runnable() {
+                    public void run() {
+                        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+                        try {
+                            runnable.run(p);
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.WARNING, "Failed to run "+p.getName(), e);
+                        } finally {
+                            SecurityContextHolder.clearContext();
+                            done.add(p);
+                        }
+                    }
+                };
+                try {
+                    running.put(p,executor.submit(task));
+                } catch (RejectedExecutionException e) {
+                    // the executor has been shut down, typically because it's been replaced by a resized one
+                    running.put(p,null);
+                    task.run();
+                }
+                continue;
+            }
+
+            AbstractProject p;
+            if (!ready.isEmpty()) {
+                // use our own thread as the last slot
+                p = ready.remove(0);
+                runInline(p);
+            } else if (running.isEmpty()) {
+                // the rest are waiting for each other, so there's a cycle. break it.
+                p = null;
+                for (Entry<AbstractProject,Integer> e : pending.entrySet())
+                    if (e.getValue()>0 && (p==null || e.getValue()<pending.get(p)))
+                        p = e.getKey();
+                LOGGER.fine("breaking a dependency cycle at " + p.getName());
+                pending.put(p,0);
+                ready.add(p);
+                continue;
+            } else {
+                p = done.poll(STEAL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (p==null) {
+                    // the executor might not have a thread for us (for example because we are using its only thread),
+                    // so take back a task it hasn't started yet and run it ourselves
+                    for (Entry<AbstractProject,Future<?>> e : running.entrySet()) {
+                        if (e.getValue()!=null && e.getValue().cancel(false)) {
+                            p = e.getKey();
+                            break;
+                        }
+                    }
+                    if (p==null)
+                        continue;
+                    runInline(p);
+                }
+                running.remove(p);
+            }
+
+            remaining--;
+            pending.remove(p);
+            for (AbstractProject d : downstream(graph,p,pending)) {
+                int n = pending.get(d)-1;
+                pending.put(d,n);
+                if (n==0)
+                    ready.add(d);
+            }
+        }
+    }
+
+    private void runInline(AbstractProject p) {
+        LOGGER.fine("running project in correct dependency order: " + p.getName());
+        try {
+            runnable.run(p);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to run "+p.getName(), e);
+        }
+    }
+
+    /**
+     * Downstream projects of the given project that are yet to run, other than itself.
+     */
+    private static Collection<AbstractProject> downstream(DependencyGraph graph, AbstractProject p, Map<AbstractProject,Integer> pending) {
+        Set<AbstractProject> r = new HashSet<AbstractProject>();
+        for (AbstractProject d : graph.getDownstream(p))
+            if (d!=p && pending.containsKey(d))
+                r.add(d);
+        return r;
+    }
+
+    /**
+     * How long to wait for a project running on the executor before taking back the ones that haven't started.
+     */
+    private static final long STEAL_TIMEOUT = 1000;
+
     public interface ProjectRunnable {
         void run(AbstractProject p);
     }
@@ -41,7 +41,12 @@ import hudson.remoting.VirtualChannel;
 import hudson.remoting.RemoteInputStream;
 import hudson.remoting.Which;
 import hudson.security.AccessControlled;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.DeltaTransfer;
+import hudson.util.DeltaTransfer.Signature;
 import hudson.util.DirScanner;
+import hudson.util.ExceptionCatchingThreadFactory;
+import hudson.util.FileVisitor;
 import hudson.util.IOException2;
 import hudson.util.HeadBufferingStream;
 import hudson.util.FormValidation;
@@ -61,7 +66,10 @@ import org.apache.tools.tar.TarEntry;
 import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.fileupload.FileItem;
 import org.kohsuke.stapler.Stapler;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -69,6 +77,7 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
@@ -79,7 +88,10 @@ import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -87,6 +99,8 @@ import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.zip.GZIPOutputStream;
@@ -1577,6 +1591,50 @@ public final class FilePath implements Serializable {
                     }
                 }
             });
+        } else {
+            return copyRecursiveTo(new DirScanner.Glob(fileMask,excludes),target,fileMask);
+        }
+    }
+
+    /**
+     * Copies the files that the given scanner finds to the specified target node.
+     *
+     * @param scanner
+     *      Enumerates the files to copy. This is sent to the node of this file path
+     *      if it's a remote one, so it needs to be serializable.
+     * @param description
+     *      Describes the files, for error messages.
+     * @return
+     *      the number of files copied.
+     * @since 1.446
+     */
+    public int copyRecursiveTo(final DirScanner scanner, final FilePath target, final String description) throws IOException, InterruptedException {
+        if(this.channel==target.channel) {
+            // local to local copy.
+            return act(new FileCallable<Integer>() {
+                public Integer invoke(File base, VirtualChannel channel) throws IOException {
+                    if(!base.exists())  return 0;
+                    assert target.channel==null;
+
+                    final File dst = new File(target.remote);
+                    final int[] count = new int[1];
+                    try {
+                        scanner.scan(base,new FileVisitor() {
+                            public void visit(File f, String relativePath) throws IOException {
+                                if (!f.isFile())    return;
+                                Util.copyFile(f,new File(dst,relativePath));
+                                count[0]++;
+                            }
+                        });
+                    } catch (BuildException e) {
+                        throw new IOException2("Failed to copy "+base+"/"+description+" to "+target,e);
+                    }
+                    return count[0];
+                }
+            });
+        } else
+        if(COPY_STREAMS>1) {
+            return copyRecursiveToInShards(scanner,target,description,COPY_STREAMS);
         } else
         if(this.channel==null) {
             // local -> remote copy
@@ -1585,14 +1643,14 @@ public final class FilePath implements Serializable {
             Future<Void> future = target.actAsync(new FileCallable<Void>() {
                 public Void invoke(File f, VirtualChannel channel) throws IOException {
                     try {
-                        readFromTar(remote+'/'+fileMask, f,TarCompression.GZIP.extract(pipe.getIn()));
+                        readFromTar(remote+'/'+description, f,TarCompression.GZIP.extract(pipe.getIn()));
                         return null;
                     } finally {
                         pipe.getIn().close();
                     }
                 }
             });
-            int r = writeToTar(new File(remote),fileMask,excludes,TarCompression.GZIP.compress(pipe.getOut()));
+            int r = writeToTar(new File(remote),scanner,TarCompression.GZIP.compress(pipe.getOut()));
             try {
                 future.get();
             } catch (ExecutionException e) {
@@ -1606,14 +1664,14 @@ public final class FilePath implements Serializable {
             Future<Integer> future = actAsync(new FileCallable<Integer>() {
                 public Integer invoke(File f, VirtualChannel channel) throws IOException {
                     try {
-                        return writeToTar(f,fileMask,excludes,TarCompression.GZIP.compress(pipe.getOut()));
+                        return writeToTar(f,scanner,TarCompression.GZIP.compress(pipe.getOut()));
                     } finally {
                         pipe.getOut().close();
                     }
                 }
             });
             try {
-                readFromTar(remote+'/'+fileMask,new File(target.remote),TarCompression.GZIP.extract(pipe.getIn()));
+                readFromTar(remote+'/'+description,new File(target.remote),TarCompression.GZIP.extract(pipe.getIn()));
             } catch (IOException e) {// BuildException or IOException
                 try {
                     future.get(3,TimeUnit.SECONDS);
@@ -1634,6 +1692,407 @@ public final class FilePath implements Serializable {
         }
     }
 
+    /**
+     * Remote copy of {@link #copyRecursiveTo(DirScanner, FilePath, String)} that splits the files into shards
+     * of about the same total size, and sends each of them as a separate compressed tar stream.
+     * This puts gzip, which is the bottleneck of a large copy, on multiple cores on both sides.
+     */
+    private int copyRecursiveToInShards(final DirScanner scanner, final FilePath target, final String description, int n) throws IOException, InterruptedException {
+        if(this.channel==null) {
+            // local -> remote copy
+            final Pipe[] pipes = new Pipe[n];
+            for (int i=0; i<n; i++)
+                pipes[i] = Pipe.createLocalToRemote();
+
+            Future<Void> future = target.actAsync(new FileCallable<Void>() {
+                public Void invoke(File f, VirtualChannel channel) throws IOException {
+                    InputStream[] ins = new InputStream[pipes.length];
+                    for (int i=0; i<pipes.length; i++)
+                        ins[i] = pipes[i].getIn();
+                    readFromTarShards(remote+'/'+description,f,ins);
+                    return null;
+                }
+            });
+            OutputStream[] outs = new OutputStream[n];
+            for (int i=0; i<n; i++)
+                outs[i] = pipes[i].getOut();
+            int r = writeToTarShards(new File(remote),scanner,outs);
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException2(e);
+            }
+            return r;
+        } else {
+            // remote -> local copy
+            final Pipe[] pipes = new Pipe[n];
+            for (int i=0; i<n; i++)
+                pipes[i] = Pipe.createRemoteToLocal();
+
+            Future<Integer> future = actAsync(new FileCallable<Integer>() {
+                public Integer invoke(File f, VirtualChannel channel) throws IOException {
+                    OutputStream[] outs = new OutputStream[pipes.length];
+                    for (int i=0; i<pipes.length; i++)
+                        outs[i] = pipes[i].getOut();
+                    return writeToTarShards(f,scanner,outs);
+                }
+            });
+            InputStream[] ins = new InputStream[n];
+            for (int i=0; i<n; i++)
+                ins[i] = pipes[i].getIn();
+            try {
+                readFromTarShards(remote+'/'+description,new File(target.remote),ins);
+            } catch (IOException e) {// BuildException or IOException
+                try {
+                    future.get(3,TimeUnit.SECONDS);
+                    throw e;    // the remote side completed successfully, so the error must be local
+                } catch (ExecutionException x) {
+                    // report both errors
+                    throw new IOException2(Functions.printThrowable(e),x);
+                } catch (TimeoutException _) {
+                    // remote is hanging
+                    throw e;
+                }
+            }
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw new IOException2(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the files to the given gzipped tar streams in parallel, and closes them.
+     *
+     * @return
+     *      number of files/directories that are written.
+     */
+    private static int writeToTarShards(File baseDir, DirScanner scanner, final OutputStream[] outs) throws IOException {
+        final List<List<String>> shards = new ArrayList<List<String>>();
+        try {
+            // largest first, each to the smallest shard so far
+            final Map<String,Long> sizes = new HashMap<String,Long>();
+            scanner.scan(baseDir,new FileVisitor() {
+                public void visit(File f, String relativePath) throws IOException {
+                    sizes.put(relativePath,f.length());
+                }
+            });
+            List<String> paths = new ArrayList<String>(sizes.keySet());
+            Collections.sort(paths,new Comparator<String>() {
+                public int compare(String o1, String o2) {
+                    long l1=sizes.get(o1), l2=sizes.get(o2);
+                    return l1>l2 ? -1 : l1<l2 ? 1 : o1.compareTo(o2);
+                }
+            });
+            long[] load = new long[outs.length];
+            for (int i=0; i<outs.length; i++)
+                shards.add(new ArrayList<String>());
+            for (String path : paths) {
+                int min = 0;
+                for (int i=1; i<load.length; i++)
+                    if (load[i]<load[min])  min = i;
+                shards.get(min).add(path);
+                load[min] += sizes.get(path);
+            }
+        } catch (IOException e) {
+            for (OutputStream out : outs)
+                IOUtils.closeQuietly(out);
+            throw e;
+        }
+
+        final File dir = baseDir;
+        List<java.util.concurrent.Callable<Integer>> tasks = new ArrayList<java.util.concurrent.Callable<Integer>>();
+        for (int i=0; i<outs.length; i++) {
+            final int shard = i;
+            tasks.add(new java.util.concurrent.Callable<Integer>() {
+                public Integer call() throws IOException {
+                    Archiver tw = ArchiverFactory.TAR.create(TarCompression.GZIP.compress(outs[shard]));
+                    try {
+                        for (String path : shards.get(shard))
+                            tw.visit(new File(dir,path),path);
+                    } finally {
+                        tw.close();
+                    }
+                    return tw.countEntries();
+                }
+            });
+        }
+
+        int r = 0;
+        for (Integer count : invokeAll(tasks))
+            r += count;
+        return r;
+    }
+
+    /**
+     * Reads the gzipped tar streams written by {@link #writeToTarShards(File, DirScanner, OutputStream[])}
+     * in parallel.
+     */
+    private static void readFromTarShards(final String name, final File baseDir, InputStream[] ins) throws IOException {
+        List<java.util.concurrent.Callable<Void>> tasks = new ArrayList<java.util.concurrent.Callable<Void>>();
+        for (final InputStream in : ins) {
+            tasks.add(new java.util.concurrent.Callable<Void>() {
+                public Void call() throws IOException {
+                    try {
+                        readFromTar(name,baseDir,TarCompression.GZIP.extract(in));
+                        return null;
+                    } finally {
+                        in.close();
+                    }
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Runs the tasks on their own threads, and waits for all of them to complete.
+     * The first failure is rethrown after that.
+     */
+    private static <T> List<T> invokeAll(List<java.util.concurrent.Callable<T>> tasks) throws IOException {
+        ExecutorService es = Executors.newFixedThreadPool(tasks.size(),
+                new ExceptionCatchingThreadFactory(new DaemonThreadFactory()));
+        try {
+            List<T> r = new ArrayList<T>();
+            IOException failure = null;
+            for (java.util.concurrent.Future<T> f : es.invokeAll(tasks)) {
+                try {
+                    r.add(f.get());
+                } catch (ExecutionException e) {
+                    if (failure==null)
+                        failure = e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException2(e.getCause());
+                }
+            }
+            if (failure!=null)
+                throw failure;
+            return r;
+        } catch (InterruptedException e) {
+            throw (IOException)new InterruptedIOException().initCause(e);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Copies the files that match the given file mask to the specified target node,
+     * but only sends the parts of the files that the target doesn't already have.
+     *
+     * <p>
+     * This first compares the size and the timestamp of each file, then for files that differ,
+     * the target sends the block checksums of its copy and the source replies with the delta
+     * (see {@link DeltaTransfer}.) When the target already has most of the data, for example
+     * when a workspace is copied back and forth between the same nodes, this is much cheaper
+     * than {@link #copyRecursiveTo(String, String, FilePath)}, which always sends everything.
+     * The cost is an extra round trip and reading the target's copies of the changed files.
+     *
+     * <p>
+     * Like {@link #copyRecursiveTo(String, String, FilePath)}, files on the target that don't
+     * exist in the source are left as they are.
+     *
+     * @param fileMask
+     *      Ant GLOB pattern.
+     * @param excludes
+     *      Files to be excluded. Can be null.
+     * @return
+     *      the number of files that match the mask, including those that were already up to date.
+     * @since 1.446
+     */
+    public int syncRecursiveTo(final String fileMask, final String excludes, final FilePath target) throws IOException, InterruptedException {
+        if(this.channel==target.channel)
+            // there's no transfer to save in a local copy
+            return copyRecursiveTo(fileMask,excludes,target);
+
+        // what the source has
+        final List<SyncEntry> entries = act(new FileCallable<List<SyncEntry>>() {
+            public List<SyncEntry> invoke(File base, VirtualChannel channel) throws IOException {
+                final List<SyncEntry> r = new ArrayList<SyncEntry>();
+                new DirScanner.Glob(fileMask,excludes).scan(base,new FileVisitor() {
+                    public void visit(File f, String relativePath) throws IOException {
+                        if (f.isFile())
+                            r.add(new SyncEntry(relativePath,f.length(),f.lastModified(),IOUtils.mode(f)));
+                    }
+                });
+                return r;
+            }
+        });
+
+        // what the target is missing. files without a signature are sent in full
+        final Map<String,Signature> signatures = target.act(new FileCallable<Map<String,Signature>>() {
+            public Map<String,Signature> invoke(File base, VirtualChannel channel) throws IOException {
+                Map<String,Signature> r = new HashMap<String,Signature>();
+                for (SyncEntry e : entries) {
+                    File f = new File(base,e.path);
+                    if (!f.isFile()) {
+                        r.put(e.path,null);
+                    } else
+                    // timestamps are compared in seconds, as tar only records that much
+                    if (f.length()!=e.length || f.lastModified()/1000!=e.lastModified/1000) {
+                        r.put(e.path,DeltaTransfer.signature(f));
+                    }
+                }
+                return r;
+            }
+        });
+
+        long literals;
+        if(this.channel==null) {
+            // local -> remote copy
+            final Pipe pipe = Pipe.createLocalToRemote();
+
+            Future<Void> future = target.actAsync(new FileCallable<Void>() {
+                public Void invoke(File f, VirtualChannel channel) throws IOException {
+                    try {
+                        readDeltas(remote+'/'+fileMask,f,TarCompression.GZIP.extract(pipe.getIn()));
+                        return null;
+                    } finally {
+                        pipe.getIn().close();
+                    }
+                }
+            });
+            literals = writeDeltas(new File(remote),entries,signatures,TarCompression.GZIP.compress(pipe.getOut()));
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException2(e);
+            }
+        } else {
+            // remote -> local copy
+            final Pipe pipe = Pipe.createRemoteToLocal();
+
+            Future<Long> future = actAsync(new FileCallable<Long>() {
+                public Long invoke(File f, VirtualChannel channel) throws IOException {
+                    try {
+                        return writeDeltas(f,entries,signatures,TarCompression.GZIP.compress(pipe.getOut()));
+                    } finally {
+                        pipe.getOut().close();
+                    }
+                }
+            });
+            try {
+                readDeltas(remote+'/'+fileMask,new File(target.remote),TarCompression.GZIP.extract(pipe.getIn()));
+            } catch (IOException e) {
+                try {
+                    future.get(3,TimeUnit.SECONDS);
+                    throw e;    // the remote side completed successfully, so the error must be local
+                } catch (ExecutionException x) {
+                    // report both errors
+                    throw new IOException2(Functions.printThrowable(e),x);
+                } catch (TimeoutException _) {
+                    // remote is hanging
+                    throw e;
+                }
+            }
+            try {
+                literals = future.get();
+            } catch (ExecutionException e) {
+                throw new IOException2(e);
+            }
+        }
+
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine("Synchronized "+entries.size()+" files from "+this+" to "+target+": "
+                    +signatures.size()+" files were out of date, and "+literals+" bytes were sent");
+        return entries.size();
+    }
+
+    /**
+     * A file in {@link #syncRecursiveTo(String, String, FilePath)}.
+     */
+    private static final class SyncEntry implements Serializable {
+        final String path;
+        final long length;
+        final long lastModified;
+        final int mode;
+
+        SyncEntry(String path, long length, long lastModified, int mode) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.mode = mode;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Writes the deltas of the files that the target asked for.
+     *
+     * @return
+     *      the number of bytes that had to be sent as they are.
+     */
+    private static long writeDeltas(File baseDir, List<SyncEntry> entries, Map<String,Signature> signatures, OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        long literals = 0;
+        try {
+            for (SyncEntry e : entries) {
+                if (!signatures.containsKey(e.path))
+                    continue;   // up to date
+                Signature sig = signatures.get(e.path);
+                File f = new File(baseDir,e.path);
+
+                dos.writeBoolean(true);
+                dos.writeUTF(e.path);
+                dos.writeLong(f.lastModified());
+                dos.writeInt(e.mode);
+                dos.writeInt(sig!=null ? sig.blockSize : 0);
+                literals += DeltaTransfer.writeDelta(f,sig,dos);
+            }
+            dos.writeBoolean(false);
+        } finally {
+            dos.close();
+        }
+        return literals;
+    }
+
+    /**
+     * Applies the deltas written by {@link #writeDeltas(File, List, Map, OutputStream)}.
+     * Each file is rebuilt next to the current one, then moved over it.
+     */
+    private static void readDeltas(String name, File baseDir, InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+        try {
+            while (din.readBoolean()) {
+                String path = din.readUTF();
+                long lastModified = din.readLong();
+                int mode = din.readInt();
+                int blockSize = din.readInt();
+
+                File f = new File(baseDir,path);
+                File parent = f.getParentFile();
+                if (parent != null) parent.mkdirs();
+
+                File tmp = File.createTempFile("sync",".tmp",parent);
+                try {
+                    OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+                    try {
+                        DeltaTransfer.applyDelta(blockSize>0 ? f : null,blockSize,din,os);
+                    } finally {
+                        os.close();
+                    }
+                    if (!tmp.renameTo(f)) {
+                        // Windows can't rename over an existing file
+                        f.delete();
+                        if (!tmp.renameTo(f))
+                            throw new IOException("Failed to rename "+tmp+" to "+f);
+                    }
+                } finally {
+                    tmp.delete();
+                }
+
+                f.setLastModified(lastModified);
+                // -1 means the source didn't have a POSIX mode, so keep the default one
+                if(mode!=-1 && (mode&0777)!=0 && !Functions.isWindows()) // be defensive
+                    _chmod(f,mode&0777);
+            }
+        } catch(IOException e) {
+            throw new IOException2("Failed to synchronize "+name,e);
+        } finally {
+            din.close();
+        }
+    }
+
 
     /**
      * Writes files in 'this' directory to a tar stream.
@@ -1662,10 +2121,10 @@ public final class FilePath implements Serializable {
      * @return
      *      number of files/directories that are written.
      */
-    private static Integer writeToTar(File baseDir, String fileMask, String excludes, OutputStream out) throws IOException {
+    private static Integer writeToTar(File baseDir, DirScanner scanner, OutputStream out) throws IOException {
         Archiver tw = ArchiverFactory.TAR.create(out);
         try {
-            new DirScanner.Glob(fileMask,excludes).scan(baseDir,tw);
+            scanner.scan(baseDir,tw);
         } finally {
             tw.close();
         }
@@ -2006,6 +2465,13 @@ public final class FilePath implements Serializable {
 
     public static int SIDE_BUFFER_SIZE = 1024;
 
+    /**
+     * Number of compressed streams that {@link #copyRecursiveTo(String, String, FilePath)} uses
+     * to copy files between nodes. With more than one, the files are split into shards that are
+     * compressed and sent concurrently.
+     */
+    public static int COPY_STREAMS = Integer.getInteger(FilePath.class.getName()+".copyStreams",1);
+
     private static final Logger LOGGER = Logger.getLogger(FilePath.class.getName());
 
     /**
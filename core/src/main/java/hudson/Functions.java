@@ -520,6 +520,15 @@ public class Functions {
         return Util.encode(s);
     }
 
+    /**
+     * Encodes a single path segment of a URL, such as a label expression.
+     *
+     * @since 1.446
+     */
+    public static String rawEncode(String s) {
+        return Util.rawEncode(s);
+    }
+
     public static String escape(String s) {
         return Util.escape(s);
     }
@@ -573,6 +573,16 @@ public abstract class Launcher {
      */
     public abstract void kill(Map<String,String> modelEnvVars) throws IOException, InterruptedException;
 
+    /**
+     * Calls {@link ProcessTree#killAll(Map, long)} to kill processes that started in the last {@code age} milliseconds.
+     * Launchers that don't override this method fall back to {@link #kill(Map)}.
+     *
+     * @since 1.446
+     */
+    public void kill(Map<String,String> modelEnvVars, long age) throws IOException, InterruptedException {
+        kill(modelEnvVars);
+    }
+
     /**
      * Prints out the command line to the listener so that users know what we are doing.
      */
@@ -666,6 +676,11 @@ public abstract class Launcher {
                 outer.kill(modelEnvVars);
             }
 
+            @Override
+            public void kill(Map<String, String> modelEnvVars, long age) throws IOException, InterruptedException {
+                outer.kill(modelEnvVars,age);
+            }
+
             private String[] prefix(String[] args) {
                 String[] newArgs = new String[args.length+prefix.length];
                 System.arraycopy(prefix,0,newArgs,0,prefix.length);
@@ -730,6 +745,11 @@ public abstract class Launcher {
             ProcessTree.get().killAll(modelEnvVars);
         }
 
+        @Override
+        public void kill(Map<String, String> modelEnvVars, long age) throws InterruptedException {
+            ProcessTree.get().killAll(modelEnvVars,age);
+        }
+
         /**
          * @param out
          *      Where the stderr from the launched process will be sent.
@@ -818,19 +838,32 @@ public abstract class Launcher {
 
         @Override
         public void kill(final Map<String,String> modelEnvVars) throws IOException, InterruptedException {
-            getChannel().call(new KillTask(modelEnvVars));
+            getChannel().call(new KillTask(modelEnvVars,-1));
+        }
+
+        @Override
+        public void kill(Map<String,String> modelEnvVars, long age) throws IOException, InterruptedException {
+            getChannel().call(new KillTask(modelEnvVars,age));
         }
 
         private static final class KillTask implements Callable<Void,RuntimeException> {
             private final Map<String, String> modelEnvVars;
+            /**
+             * -1 if unknown.
+             */
+            private final long age;
 
-            public KillTask(Map<String, String> modelEnvVars) {
+            public KillTask(Map<String, String> modelEnvVars, long age) {
                 this.modelEnvVars = modelEnvVars;
+                this.age = age;
             }
 
             public Void call() throws RuntimeException {
                 try {
-                    ProcessTree.get().killAll(modelEnvVars);
+                    if (age<0)
+                        ProcessTree.get().killAll(modelEnvVars);
+                    else
+                        ProcessTree.get().killAll(modelEnvVars,age);
                 } catch (InterruptedException e) {
                     // we are asked to terminate early by the caller, so no need to do anything
                 }
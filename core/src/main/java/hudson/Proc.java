@@ -31,6 +31,7 @@ import hudson.util.ExceptionCatchingThreadFactory;
 import hudson.util.IOException2;
 import hudson.util.NullStream;
 import hudson.util.StreamCopyThread;
+import hudson.util.StreamPump;
 import hudson.util.ProcessTree;
 import org.apache.commons.io.input.NullInputStream;
 
@@ -176,7 +177,7 @@ public abstract class Proc {
      */
     public static final class LocalProc extends Proc {
         private final Process proc;
-        private final Thread copier,copier2;
+        private final Copier copier,copier2;
         private final OutputStream out;
         private final EnvVars cookie;
         private final String name;
@@ -248,8 +249,7 @@ public abstract class Proc {
                 stdout = procInputStream;
                 copier = null;
             } else {
-                copier = new StreamCopyThread(name+": stdout copier", procInputStream, out);
-                copier.start();
+                copier = copy(name+": stdout copier", procInputStream, out);
                 stdout = null;
             }
 
@@ -272,8 +272,7 @@ public abstract class Proc {
                     copier2 = null;
                 } else {
                     stderr = null;
-                    copier2 = new StreamCopyThread(name+": stderr copier", procErrorStream, err);
-                    copier2.start();
+                    copier2 = copy(name+": stderr copier", procErrorStream, err);
                 }
             } else {
                 // the javadoc is unclear about what getErrorStream() returns when ProcessBuilder.redirectErrorStream(true),
@@ -289,6 +288,39 @@ public abstract class Proc {
             }
         }
 
+        private Copier copy(String threadName, InputStream in, OutputStream out) {
+            if (USE_SHARED_PUMP) {
+                final StreamPump.Handle h = PUMP.add(proc, in, out);
+                return new Copier() {
+                    public void join(long timeout) throws InterruptedException {
+                        h.join(timeout);
+                    }
+                    public boolean isAlive() {
+                        return !h.isDone();
+                    }
+                };
+            } else {
+                final Thread t = new StreamCopyThread(threadName, in, out);
+                t.start();
+                return new Copier() {
+                    public void join(long timeout) throws InterruptedException {
+                        t.join(timeout);
+                    }
+                    public boolean isAlive() {
+                        return t.isAlive();
+                    }
+                };
+            }
+        }
+
+        /**
+         * Copies stdout or stderr of the process, either on its own thread or on {@link #PUMP}.
+         */
+        private interface Copier {
+            void join(long timeout) throws InterruptedException;
+            boolean isAlive();
+        }
+
         public InputStream getStdout() {
             return stdout;
         }
@@ -486,4 +518,13 @@ public abstract class Proc {
      * Debug switch to have the thread display the process it's waiting for.
      */
     public static boolean SHOW_PID = false;
+
+    /**
+     * If true, {@link LocalProc} copies the output of processes on {@link #PUMP}, a few threads shared by
+     * all processes, instead of one thread per stream. This helps masters and slaves that run many
+     * short-lived processes at the same time, such as SCM polling.
+     */
+    public static boolean USE_SHARED_PUMP = Boolean.getBoolean(Proc.class.getName()+".sharedPump");
+
+    private static final StreamPump PUMP = new StreamPump(Integer.getInteger(Proc.class.getName()+".pumpThreads",2));
 }
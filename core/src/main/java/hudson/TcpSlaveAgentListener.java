@@ -25,6 +25,7 @@ package hudson;
 
 import jenkins.model.Jenkins;
 import hudson.model.Computer;
+import hudson.slaves.ConnectionThrottle;
 import hudson.slaves.OfflineCause;
 import hudson.slaves.SlaveComputer;
 import hudson.remoting.Channel;
@@ -35,22 +36,40 @@ import hudson.remoting.Channel.Listener;
 import hudson.remoting.Channel.Mode;
 import hudson.cli.CliManagerImpl;
 import hudson.cli.CliEntryPoint;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
 import hudson.util.IOException2;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.net.ServerSocket;
+import java.io.SequenceInputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.BindException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -85,9 +104,25 @@ import java.util.logging.Logger;
  */
 public final class TcpSlaveAgentListener extends Thread {
 
-    private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverSocket;
+    private final Selector selector;
     private volatile boolean shuttingDown;
 
+    /**
+     * Handshakes in progress, in the order of their deadlines.
+     * Only touched by the listener thread.
+     */
+    private final LinkedList<Handshake> handshakes = new LinkedList<Handshake>();
+
+    /**
+     * Runs the JNLP handshakes once the header has been received.
+     * Bounded, so that a reconnect storm queues up instead of spawning hundreds of threads.
+     */
+    private final ThreadPoolExecutor handlers = new ThreadPoolExecutor(
+            HANDLER_POOL_SIZE, HANDLER_POOL_SIZE, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(HANDLER_QUEUE_SIZE),
+            new ExceptionCatchingThreadFactory(new DaemonThreadFactory()));
+
     public final int configuredPort;
 
     /**
@@ -96,11 +131,16 @@ public final class TcpSlaveAgentListener extends Thread {
      */
     public TcpSlaveAgentListener(int port) throws IOException {
         super("TCP slave agent listener port="+port);
+        serverSocket = ServerSocketChannel.open();
         try {
-            serverSocket = new ServerSocket(port);
+            serverSocket.socket().bind(new InetSocketAddress(port));
         } catch (BindException e) {
+            serverSocket.close();
             throw (BindException)new BindException("Failed to listen on port "+port+" because it's already in use.").initCause(e);
         }
+        serverSocket.configureBlocking(false);
+        selector = Selector.open();
+        serverSocket.register(selector, SelectionKey.OP_ACCEPT);
         this.configuredPort = port;
 
         LOGGER.info("JNLP slave agent listener started on TCP port "+getPort());
@@ -112,31 +152,107 @@ public final class TcpSlaveAgentListener extends Thread {
      * Gets the TCP port number in which we are listening.
      */
     public int getPort() {
-        return serverSocket.getLocalPort();
+        return serverSocket.socket().getLocalPort();
     }
 
     private String getSecretKey() {
         return Jenkins.getInstance().getSecretKey();
     }
 
+    /**
+     * Accepts connections and reads their protocol headers without blocking,
+     * then hands off the connections that passed the authentication to {@link ConnectionHandler}s.
+     * A slow or silent client thus costs nothing more than a socket until it times out.
+     */
     @Override
     public void run() {
         try {
             // the loop eventually terminates when the socket is closed.
-            while (true) {
-                Socket s = serverSocket.accept();
+            while (!shuttingDown) {
+                long timeout = 0;
+                if (!handshakes.isEmpty())
+                    timeout = Math.max(1, handshakes.getFirst().deadline-System.currentTimeMillis());
+                selector.select(timeout);
+
+                List<Handshake> completed = new ArrayList<Handshake>();
+                for (Iterator<SelectionKey> itr = selector.selectedKeys().iterator(); itr.hasNext();) {
+                    SelectionKey key = itr.next();
+                    itr.remove();
+                    if (!key.isValid())     continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        Handshake h = (Handshake) key.attachment();
+                        try {
+                            if (h.read()) {
+                                h.done = true;
+                                key.cancel();
+                                completed.add(h);
+                            }
+                        } catch (IOException e) {
+                            LOGGER.log(Level.WARNING,"Connection #"+h.id+" failed",e);
+                            h.close();
+                        }
+                    }
+                }
 
-                // this prevents a connection from silently terminated by the router in between or the other peer
-                // and that goes without unnoticed. However, the time out is often very long (for example 2 hours
-                // by default in Linux) that this alone is enough to prevent that.
-                s.setKeepAlive(true);
+                if (!completed.isEmpty()) {
+                    // the cancelled keys need to be flushed before the channels can go back to the blocking mode
+                    selector.selectNow();
+                    for (Handshake h : completed)
+                        h.handOff();
+                }
 
-                new ConnectionHandler(s).start();
+                expire();
             }
         } catch (IOException e) {
             if(!shuttingDown) {
                 LOGGER.log(Level.SEVERE,"Failed to accept JNLP slave agent connections",e);
             }
+        } finally {
+            for (Handshake h : handshakes)
+                h.close();
+            handshakes.clear();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch=serverSocket.accept())!=null) {
+            // this prevents a connection from silently terminated by the router in between or the other peer
+            // and that goes without unnoticed. However, the time out is often very long (for example 2 hours
+            // by default in Linux) that this alone is enough to prevent that.
+            ch.socket().setKeepAlive(true);
+            ch.configureBlocking(false);
+
+            Handshake h = new Handshake(ch);
+            h.key = ch.register(selector, SelectionKey.OP_READ, h);
+            handshakes.add(h);
+        }
+    }
+
+    /**
+     * Drops the handshakes that took too long.
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        while (!handshakes.isEmpty()) {
+            Handshake h = handshakes.getFirst();
+            if (h.done) {
+                handshakes.removeFirst();
+            } else if (h.deadline<=now) {
+                handshakes.removeFirst();
+                LOGGER.warning("Connection #"+h.id+" from "+h.ch.socket().getRemoteSocketAddress()+" timed out during the handshake");
+                h.close();
+            } else {
+                break;
+            }
         }
     }
 
@@ -150,29 +266,179 @@ public final class TcpSlaveAgentListener extends Thread {
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Failed to close down TCP port",e);
         }
+        selector.wakeup();
+        handlers.shutdown();
     }
 
-    private final class ConnectionHandler extends Thread {
+    /**
+     * Reads the protocol header of one connection in the non-blocking mode.
+     *
+     * <p>
+     * The header consists of strings in the {@link DataInputStream#readUTF()} format. The first one
+     * names the protocol, which determines how many more follow. The buffer is always sized to the
+     * next length or string, so we never read past the header even if the client doesn't wait for
+     * our response (as the CLI does).
+     */
+    private final class Handshake {
+        private final SocketChannel ch;
+        private SelectionKey key;
+        private final int id;
+        private final long deadline = System.currentTimeMillis()+HANDSHAKE_TIMEOUT;
+
+        /**
+         * Everything we've read so far, which is replayed to {@link ConnectionHandler}.
+         */
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        private final List<String> frames = new ArrayList<String>();
+        private int expectedFrames = 1;
+        /**
+         * Either the length of the next frame, or the frame itself.
+         */
+        private java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(2);
+        private boolean readingLength = true;
+        private boolean done;
+
+        private Handshake(SocketChannel ch) {
+            this.ch = ch;
+            synchronized(ConnectionHandler.class) {
+                id = iotaGen++;
+            }
+        }
+
+        /**
+         * Reads whatever is available.
+         *
+         * @return
+         *      true if the whole header is received.
+         */
+        boolean read() throws IOException {
+            while (true) {
+                int n = ch.read(buf);
+                if (n<0)
+                    throw new EOFException("Connection closed during the handshake");
+                if (buf.hasRemaining())
+                    return false;   // wait for more
+
+                header.write(buf.array(),0,buf.position());
+                if (readingLength) {
+                    buf.flip();
+                    buf = java.nio.ByteBuffer.allocate(buf.getShort()&0xFFFF);
+                    readingLength = false;
+                    if (buf.capacity()>0)   continue;
+                }
+
+                frames.add(decode(buf.array()));
+                buf = java.nio.ByteBuffer.allocate(2);
+                readingLength = true;
+
+                if (frames.size()==1)
+                    expectedFrames = getHeaderSize(frames.get(0));
+                if (frames.size()==expectedFrames)
+                    return true;
+            }
+        }
+
+        /**
+         * Number of strings in the header of the given protocol, including the protocol itself.
+         */
+        private int getHeaderSize(String protocol) {
+            if (protocol.equals("Protocol:JNLP-connect"))
+                return 3;   // secret key, node name
+            if (protocol.equals("Protocol:JNLP2-connect"))
+                return 2;   // properties
+            return 1;       // ConnectionHandler reports the unknown ones
+        }
+
+        private String decode(byte[] frame) throws IOException {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(frame.length+2);
+            DataOutputStream dos = new DataOutputStream(buf);
+            dos.writeShort(frame.length);
+            dos.write(frame);
+            return new DataInputStream(new ByteArrayInputStream(buf.toByteArray())).readUTF();
+        }
+
+        /**
+         * Checks the secret key, so that unauthorized clients never get to consume a handler thread.
+         */
+        private boolean isAuthorized() throws IOException {
+            String protocol = frames.get(0);
+            if (protocol.equals("Protocol:JNLP-connect"))
+                return getSecretKey().equals(frames.get(1));
+            if (protocol.equals("Protocol:JNLP2-connect")) {
+                Properties request = new Properties();
+                request.load(new ByteArrayInputStream(frames.get(1).getBytes("UTF-8")));
+                return getSecretKey().equals(request.getProperty("Secret-Key"));
+            }
+            return true;
+        }
+
+        /**
+         * Switches the connection back to the blocking mode and passes it to {@link ConnectionHandler}.
+         * The selection key must have been flushed by then.
+         */
+        void handOff() {
+            try {
+                if (!isAuthorized()) {
+                    // the response is tiny, so this won't block even in the non-blocking mode
+                    ch.write(java.nio.ByteBuffer.wrap(("Unauthorized access"+LINE_SEPARATOR).getBytes("UTF-8")));
+                    LOGGER.log(Level.WARNING,"Connection #"+id+" is aborted: Unauthorized access");
+                    close();
+                    return;
+                }
+
+                ch.configureBlocking(true);
+                ConnectionHandler handler = new ConnectionHandler(ch.socket(), id, header.toByteArray());
+                if (frames.get(0).equals("Protocol:CLI-connect"))
+                    // CLI sessions last as long as the command runs, so they don't count against the handler pool
+                    Computer.threadPoolForRemoting.submit(handler);
+                else
+                    handlers.execute(handler);
+            } catch (RejectedExecutionException e) {
+                LOGGER.warning("Connection #"+id+" is aborted: too many pending connections");
+                close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING,"Connection #"+id+" failed",e);
+                close();
+            }
+        }
+
+        void close() {
+            done = true;
+            key.cancel();
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private final class ConnectionHandler implements Runnable {
         private final Socket s;
         /**
          * Unique number to identify this connection. Used in the log.
          */
         private final int id;
+        /**
+         * The protocol header already read by {@link Handshake}.
+         */
+        private final byte[] header;
 
-        public ConnectionHandler(Socket s) {
+        public ConnectionHandler(Socket s, int id, byte[] header) {
             this.s = s;
-            synchronized(getClass()) {
-                id = iotaGen++;
-            }
-            setName("TCP slave agent connection handler #"+id+" with "+s.getRemoteSocketAddress());
+            this.id = id;
+            this.header = header;
         }
 
-        @Override
         public void run() {
+            Thread t = Thread.currentThread();
+            String oldName = t.getName();
+            t.setName("TCP slave agent connection handler #"+id+" with "+s.getRemoteSocketAddress());
             try {
                 LOGGER.info("Accepted connection #"+id+" from "+s.getRemoteSocketAddress());
 
-                DataInputStream in = new DataInputStream(s.getInputStream());
+                DataInputStream in = new DataInputStream(new SequenceInputStream(
+                        new ByteArrayInputStream(header), s.getInputStream()));
                 PrintWriter out = new PrintWriter(s.getOutputStream(),true);
 
                 String s = in.readUTF();
@@ -205,6 +471,8 @@ public final class TcpSlaveAgentListener extends Thread {
                 } catch (IOException _) {
                     // try to clean up the socket
                 }
+            } finally {
+                t.setName(oldName);
             }
         }
 
@@ -216,7 +484,7 @@ public final class TcpSlaveAgentListener extends Thread {
             Channel channel = new Channel("CLI channel from " + s.getInetAddress(),
                     Computer.threadPoolForRemoting, Mode.BINARY,
                     new BufferedInputStream(new SocketInputStream(this.s)),
-                    new BufferedOutputStream(new SocketOutputStream(this.s)), null, true, Jenkins.getInstance().pluginManager.uberClassLoader);
+                    new BufferedOutputStream(new InterruptSafeOutputStream(new SocketOutputStream(this.s))), null, true, Jenkins.getInstance().pluginManager.uberClassLoader);
             channel.setProperty(CliEntryPoint.class.getName(),new CliManagerImpl(channel));
             channel.join();
         }
@@ -317,8 +585,11 @@ public final class TcpSlaveAgentListener extends Thread {
             PrintWriter logw = new PrintWriter(log,true);
             logw.println("JNLP agent connected from "+ this.s.getInetAddress());
 
+            // the agent just waits on the other end while we are busy with other nodes
+            long start = System.currentTimeMillis();
+            boolean admitted = ConnectionThrottle.JNLP.acquire();
             try {
-                computer.setChannel(new BufferedInputStream(this.s.getInputStream()), new BufferedOutputStream(this.s.getOutputStream()), log,
+                computer.setChannel(new BufferedInputStream(this.s.getInputStream()), new BufferedOutputStream(new InterruptSafeOutputStream(this.s.getOutputStream())), log,
                     new Listener() {
                         @Override
                         public void onClosed(Channel channel, IOException cause) {
@@ -340,6 +611,10 @@ public final class TcpSlaveAgentListener extends Thread {
                 logw.println("Failed to establish the connection with the slave " + nodeName);
                 e.printStackTrace(logw);
                 throw e;
+            } finally {
+                if (admitted)
+                    ConnectionThrottle.JNLP.release();
+                ConnectionThrottle.JNLP.record(start, computer.getChannel()!=null);
             }
         }
 
@@ -350,6 +625,51 @@ public final class TcpSlaveAgentListener extends Thread {
         }
     }
 
+    /**
+     * The socket of an accepted {@link SocketChannel} writes through that channel even after it's switched
+     * back to the blocking mode, and the channel closes itself when a thread is interrupted in the middle of I/O.
+     * Any thread can end up writing to a remoting {@link Channel} (for example an executor whose build is being aborted),
+     * so writes are done with the interrupt flag cleared, and the flag is restored afterward.
+     */
+    private static final class InterruptSafeOutputStream extends FilterOutputStream {
+        InterruptSafeOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            boolean interrupted = Thread.interrupted();
+            try {
+                out.write(b);
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            boolean interrupted = Thread.interrupted();
+            try {
+                out.write(b,off,len);
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            boolean interrupted = Thread.interrupted();
+            try {
+                out.flush();
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Connection terminated because we are reconnected from the current peer.
      */
@@ -365,6 +685,24 @@ public final class TcpSlaveAgentListener extends Thread {
 
     private static final String COOKIE_NAME = TcpSlaveAgentListener.class.getName()+".cookie";
 
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /**
+     * Milliseconds a client has to send its protocol header before we drop the connection.
+     */
+    public static long HANDSHAKE_TIMEOUT = Long.getLong(TcpSlaveAgentListener.class.getName()+".handshakeTimeout",30*1000);
+
+    /**
+     * Number of threads that perform the JNLP handshakes after the header is received.
+     */
+    public static int HANDLER_POOL_SIZE = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".handlerPoolSize",16);
+
+    /**
+     * Number of authenticated connections that can wait for a handler thread. Beyond this, connections are dropped
+     * and the agents retry later.
+     */
+    public static int HANDLER_QUEUE_SIZE = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".handlerQueueSize",1024);
+
     /**
      * Host name that we advertise the CLI client to connect to.
      * This is primarily for those who have reverse proxies in place such that the HTTP host name
@@ -179,4 +179,62 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
             cl.onConfigurationChange();
     }
 
+    /* =================================================================================================================
+     * Label to node mapping
+     * ============================================================================================================== */
+
+    /**
+     * {@linkplain Label#toBitSet(Collection) Atoms} of each node as of the last {@link #updateLabels(Collection)}.
+     * Replaced as a whole, never modified.
+     */
+    private transient volatile Map<Node,BitSet> labelBits = Collections.emptyMap();
+
+    private final transient Object updateLabelsLock = new Object();
+
+    /**
+     * Gets the atoms of the given node, from the cache if it's up to date.
+     */
+    /*package*/ BitSet getLabelBits(Node n) {
+        BitSet r = labelBits.get(n);
+        if (r==null)
+            r = Label.toBitSet(n.getAssignedLabels());
+        return r;
+    }
+
+    /**
+     * Recomputes the atoms of every node, and updates the {@linkplain Label#getNodes() nodes} of the given labels
+     * only for the nodes that were added, removed, or whose atoms have changed.
+     *
+     * <p>
+     * This replaces resetting every label with {@link #resetLabel(Label)}, which causes every label
+     * to be matched against every node all over again.
+     *
+     * @since 1.446
+     */
+    protected void updateLabels(Collection<? extends Label> labels) {
+        synchronized (updateLabelsLock) {
+            Map<Node,BitSet> old = labelBits;
+            Map<Node,BitSet> current = new IdentityHashMap<Node,BitSet>();
+            current.put(this, Label.toBitSet(getAssignedLabels()));
+            for (Node n : getNodes())
+                current.put(n, Label.toBitSet(n.getAssignedLabels()));
+
+            List<Node> removed = new ArrayList<Node>();
+            Map<Node,BitSet> added = new IdentityHashMap<Node,BitSet>();
+            for (Map.Entry<Node,BitSet> e : current.entrySet()) {
+                BitSet b = old.get(e.getKey());
+                if (b==null || !b.equals(e.getValue())) {
+                    if (b!=null)    removed.add(e.getKey());
+                    added.put(e.getKey(),e.getValue());
+                }
+            }
+            for (Node n : old.keySet())
+                if (!current.containsKey(n))
+                    removed.add(n);
+
+            labelBits = current;
+            for (Label l : labels)
+                l.update(removed,added);
+        }
+    }
 }
@@ -52,6 +52,7 @@ import org.kohsuke.stapler.export.ExportedBean;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -539,7 +540,10 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
             // try to reflect the changes by reloading
             new XmlFile(Items.XSTREAM, out.getTemporaryFile()).unmarshal(this);
             onLoad(getParent(), getRootDir().getName());
-            Jenkins.getInstance().rebuildDependencyGraph();
+            if (this instanceof AbstractProject)
+                Jenkins.getInstance().updateDependencyGraph(Collections.singleton((AbstractProject)this));
+            else
+                Jenkins.getInstance().rebuildDependencyGraph();
 
             // if everything went well, commit this new version
             out.commit();
@@ -71,6 +71,7 @@ import hudson.tasks.Publisher;
 import hudson.triggers.SCMTrigger;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
+import hudson.triggers.TriggerSchedule;
 import hudson.util.AlternativeUiTextProvider;
 import hudson.util.AlternativeUiTextProvider.Message;
 import hudson.util.DescribableList;
@@ -264,6 +265,7 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
         }
         for (Trigger t : triggers)
             t.start(this,false);
+        TriggerSchedule.INSTANCE.update(this);
         if(scm==null)
             scm = new NullSCM(); // perhaps it was pointing to a plugin that no longer exists.
 
@@ -284,6 +286,7 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
                 on.getFileSystemProvisioner().discardWorkspace(this,ws);
         }
         super.performDelete();
+        TriggerSchedule.INSTANCE.remove(this);
     }
 
     /**
@@ -649,13 +652,14 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
             upstream = new HashSet<AbstractProject>(Items.fromNameList(getParent(),req.getParameter("upstreamProjects"),AbstractProject.class));
         }
 
-        // dependency setting might have been changed by the user, so rebuild.
-        Jenkins.getInstance().rebuildDependencyGraph();
+        // dependency setting might have been changed by the user, so update.
+        Jenkins.getInstance().updateDependencyGraph(Collections.singleton(this));
 
         // reflect the submission of the pseudo 'upstream build trriger'.
         // this needs to be done after we release the lock on 'this',
         // or otherwise we could dead-lock
 
+        Set<AbstractProject> modified = new HashSet<AbstractProject>();
         for (AbstractProject<?,?> p : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
             // Don't consider child projects such as MatrixConfiguration:
             if (!p.isConfigurable()) continue;
@@ -673,6 +677,8 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
                 }
 
                 if(newChildProjects.isEmpty()) {
+                    if (trigger!=null)
+                        modified.add(p);
                     pl.remove(BuildTrigger.class);
                 } else {
                     // here, we just need to replace the old one with the new one,
@@ -700,6 +706,7 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
 
                     if(existing!=null && existing.hasSame(p,newChildProjects))
                         continue;   // no need to touch
+                    modified.add(p);
                     pl.replace(new BuildTrigger(newChildProjects,
                         existing==null?Result.SUCCESS:existing.getThreshold()));
                 }
@@ -710,7 +717,8 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
         Jenkins.getInstance().getQueue().scheduleMaintenance();
 
         // this is to reflect the upstream build adjustments done above
-        Jenkins.getInstance().rebuildDependencyGraph();
+        if (!modified.isEmpty())
+            Jenkins.getInstance().updateDependencyGraph(modified);
     }
 
 	/**
@@ -782,6 +790,27 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
      */
     @SuppressWarnings("unchecked")
     public Future<R> scheduleBuild2(int quietPeriod, Cause c, Collection<? extends Action> actions) {
+        Queue.ScheduleRequest req = createScheduleRequest(quietPeriod, c, actions);
+        if (req==null)
+            return null;
+
+        WaitingItem i = Jenkins.getInstance().getQueue().schedule(this, quietPeriod, req.actions);
+        if(i!=null)
+            return (Future)i.getFuture();
+        return null;
+    }
+
+    /**
+     * Prepares a request to schedule a build of this project, just like {@link #scheduleBuild2(int, Cause, Collection)}
+     * would do, so that builds of multiple projects can be {@linkplain Queue#schedule(Collection) scheduled at once}.
+     *
+     * @param actions
+     *      For the convenience of the caller, this collection can contain null, and those will be silently ignored.
+     * @return
+     *      null if this project is not buildable.
+     * @since 1.446
+     */
+    public Queue.ScheduleRequest createScheduleRequest(int quietPeriod, Cause c, Collection<? extends Action> actions) {
         if (!isBuildable())
             return null;
 
@@ -794,10 +823,7 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
             queueActions.add(new CauseAction(c));
         }
 
-        WaitingItem i = Jenkins.getInstance().getQueue().schedule(this, quietPeriod, queueActions);
-        if(i!=null)
-            return (Future)i.getFuture();
-        return null;
+        return new Queue.ScheduleRequest(this, quietPeriod, queueActions);
     }
 
     private List<ParameterValue> getDefaultParametersValues() {
@@ -1383,10 +1409,12 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
      */
     public void addTrigger(Trigger<?> trigger) throws IOException {
         addToList(trigger,triggers);
+        TriggerSchedule.INSTANCE.update(this);
     }
 
     public void removeTrigger(TriggerDescriptor trigger) throws IOException {
         removeFromList(trigger,triggers);
+        TriggerSchedule.INSTANCE.update(this);
     }
 
     protected final synchronized <T extends Describable<T>>
@@ -1708,6 +1736,7 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
         triggers = buildDescribable(req, Trigger.for_(this));
         for (Trigger t : triggers)
             t.start(this,true);
+        TriggerSchedule.INSTANCE.update(this);
     }
 
     /**
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.util.AtomicFileWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * List of the files in {@link Run#getArtifactsDir()}.
+ *
+ * <p>
+ * This is recorded when a build completes, so that showing, exporting and zipping up
+ * the artifacts of a build does not require walking the archive directory every time.
+ * The file has one line per artifact, in the form of "size TAB timestamp TAB path",
+ * where the path is '/'-separated and relative to the archive directory.
+ *
+ * @since 1.446
+ * @see Run#getArtifactManifest()
+ */
+public final class ArtifactManifest {
+    private final List<Entry> entries;
+
+    /**
+     * One archived file.
+     */
+    public static final class Entry {
+        public final String path;
+        /**
+         * -1 if this is not a regular file, such as a dangling symlink.
+         */
+        public final long length;
+        public final long lastModified;
+
+        public Entry(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    public ArtifactManifest(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Relative paths of all the artifacts.
+     */
+    public List<String> getPaths() {
+        return new AbstractList<String>() {
+            public String get(int index) {
+                return entries.get(index).path;
+            }
+
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Writes this manifest to the given file.
+     */
+    public void save(File f) throws IOException {
+        AtomicFileWriter w = new AtomicFileWriter(f);
+        try {
+            for (Entry e : entries) {
+                if (e.path.indexOf('\n')>=0 || e.path.indexOf('\r')>=0)
+                    throw new IOException("Can't record a file name with a line break: "+e.path);
+                w.write(e.length+"\t"+e.lastModified+"\t"+e.path+"\n");
+            }
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    /**
+     * Reads a manifest written by {@link #save(File)}.
+     *
+     * @return
+     *      null if the file doesn't exist.
+     */
+    public static ArtifactManifest load(File f) throws IOException {
+        if (!f.exists())
+            return null;
+
+        List<Entry> entries = new ArrayList<Entry>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(f),"UTF-8"));
+        try {
+            String line;
+            while ((line=r.readLine())!=null) {
+                String[] tokens = line.split("\t",3);
+                if (tokens.length<3)
+                    throw new IOException("Malformed line in "+f+": "+line);
+                try {
+                    entries.add(new Entry(tokens[2],Long.parseLong(tokens[0]),Long.parseLong(tokens[1])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed line in "+f+": "+line);
+                }
+            }
+        } finally {
+            r.close();
+        }
+        return new ArtifactManifest(entries);
+    }
+
+    /**
+     * Builds a manifest by walking the given directory.
+     */
+    public static ArtifactManifest scan(File dir) {
+        List<Entry> entries = new ArrayList<Entry>();
+        scan(dir,"",entries);
+        return new ArtifactManifest(entries);
+    }
+
+    private static void scan(File dir, String path, List<Entry> entries) {
+        File[] children = dir.listFiles();
+        if (children==null)     return;
+        for (File child : children) {
+            if (child.isDirectory())
+                scan(child,path+child.getName()+'/',entries);
+            else
+                entries.add(new Entry(path+child.getName(),child.isFile()?child.length():-1,child.lastModified()));
+        }
+    }
+
+    public static final ArtifactManifest EMPTY = new ArtifactManifest(Collections.<Entry>emptyList());
+}
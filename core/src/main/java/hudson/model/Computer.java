@@ -804,6 +804,36 @@ public /*transient*/ abstract class Computer extends Actionable implements Acces
         return r;
     }
 
+    /**
+     * Expose how long each monitor took to collect its data from this computer in its last round,
+     * in milliseconds, so that slow nodes can be spotted.
+     *
+     * @since 1.446
+     */
+    @Exported(inline=true)
+    public Map<String/*monitor name*/,Long> getMonitorCollectionTimes() {
+        Map<String,Long> r = new HashMap<String,Long>();
+        for (NodeMonitor monitor : NodeMonitor.getAll()) {
+            long t = monitor.getDescriptor().getCollectionTime(this);
+            if (t>=0)
+                r.put(monitor.getClass().getName(),t);
+        }
+        return r;
+    }
+
+    /**
+     * Gets the longest time any monitor took to collect its data from this computer in its last round,
+     * in milliseconds, or -1 if not known.
+     *
+     * @since 1.446
+     */
+    public long getMonitorCollectionTime() {
+        long max = -1;
+        for (Long t : getMonitorCollectionTimes().values())
+            max = Math.max(max,t);
+        return max;
+    }
+
     /**
      * Gets the system properties of the JVM on this computer.
      * If this is the master, it returns the system property of the master computer.
@@ -30,6 +30,7 @@ import hudson.XmlFile;
 import hudson.model.Descriptor.FormException;
 import hudson.model.listeners.SaveableListener;
 import hudson.node_monitors.NodeMonitor;
+import hudson.slaves.ConnectionThrottle;
 import hudson.slaves.NodeDescriptor;
 import hudson.util.DescribableList;
 import hudson.util.FormValidation;
@@ -170,6 +171,26 @@ public final class ComputerSet extends AbstractModelObject {
         return r;
     }
 
+    /**
+     * Admission control of the slaves that we launch.
+     *
+     * @since 1.446
+     */
+    @Exported(inline=true)
+    public ConnectionThrottle getLaunchThrottle() {
+        return ConnectionThrottle.INSTANCE;
+    }
+
+    /**
+     * Admission control of the JNLP slaves that connect to us.
+     *
+     * @since 1.446
+     */
+    @Exported(inline=true)
+    public ConnectionThrottle getJnlpThrottle() {
+        return ConnectionThrottle.JNLP;
+    }
+
     public String getSearchUrl() {
         return "/computers/";
     }
@@ -32,11 +32,13 @@ import org.acegisecurity.context.SecurityContext;
 import org.acegisecurity.context.SecurityContextHolder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
@@ -62,6 +64,9 @@ import java.util.Stack;
  * Once built, {@link DependencyGraph} is immutable, and every time
  * there's a change (which is relatively rare), a new instance
  * will be created. This eliminates the need of synchronization.
+ * When only a few projects have changed, the new instance can be derived from
+ * the current one by {@link #update(Collection)}, which only asks those projects
+ * for their dependencies and shares the rest of the graph with the current instance.
  *
  * @see Jenkins#getDependencyGraph()
  * @author Kohsuke Kawaguchi
@@ -71,8 +76,25 @@ public class DependencyGraph implements Comparator<AbstractProject> {
     private Map<AbstractProject, List<DependencyGroup>> forward = new HashMap<AbstractProject, List<DependencyGroup>>();
     private Map<AbstractProject, List<DependencyGroup>> backward = new HashMap<AbstractProject, List<DependencyGroup>>();
 
+    /**
+     * Dependencies keyed by the project that declared them in {@link AbstractProject#buildDependencyGraph(DependencyGraph)},
+     * which isn't necessarily their upstream or downstream. Used to remove them in {@link #update(Collection)}.
+     */
+    private Map<AbstractProject, List<Dependency>> declarations = new HashMap<AbstractProject, List<Dependency>>();
+
     private transient Map<Class<?>, Object> computationalData;
 
+    /**
+     * Project whose {@link AbstractProject#buildDependencyGraph(DependencyGraph)} is running.
+     */
+    private transient AbstractProject declarer;
+
+    /**
+     * Keys of {@link #forward} and {@link #backward} whose lists are copied from the
+     * graph being updated and can be modified. Null during {@link #build()}, as all the lists are then new.
+     */
+    private transient Set<AbstractProject> editedForward, editedBackward;
+
     private boolean built;
 
     /**
@@ -90,8 +112,7 @@ public class DependencyGraph implements Comparator<AbstractProject> {
             NotSerilizableSecurityContext system = new NotSerilizableSecurityContext();
             system.setAuthentication(ACL.SYSTEM);
             SecurityContextHolder.setContext(system);
-            for( AbstractProject p : getAllProjects() )
-                p.buildDependencyGraph(this);
+            declare(getAllProjects());
 
             forward = finalize(forward);
             backward = finalize(backward);
@@ -102,6 +123,132 @@ public class DependencyGraph implements Comparator<AbstractProject> {
             SecurityContextHolder.setContext(saveCtx);
         }
     }
+
+    /**
+     * Creates a new graph that reflects the changes in the dependencies declared by the given projects
+     * (and the projects inside them, such as {@link hudson.matrix.MatrixConfiguration}s), without asking
+     * any other project for its dependencies. This graph is left untouched.
+     *
+     * <p>
+     * This is suitable when the configuration of these projects has changed. When projects are created,
+     * deleted or renamed, dependencies declared by other projects may change as well, so the whole graph
+     * needs to be {@linkplain #build() built} again.
+     *
+     * @since 1.446
+     */
+    public DependencyGraph update(Collection<? extends AbstractProject> projects) {
+        if (!built)
+            throw new IllegalStateException();
+
+        DependencyGraph g = new DependencyGraph();
+        g.forward = new HashMap<AbstractProject, List<DependencyGroup>>(forward);
+        g.backward = new HashMap<AbstractProject, List<DependencyGroup>>(backward);
+        g.declarations = new HashMap<AbstractProject, List<Dependency>>(declarations);
+        g.editedForward = new HashSet<AbstractProject>();
+        g.editedBackward = new HashSet<AbstractProject>();
+
+        SecurityContext saveCtx = SecurityContextHolder.getContext();
+        try {
+            g.computationalData = new HashMap<Class<?>, Object>();
+            NotSerilizableSecurityContext system = new NotSerilizableSecurityContext();
+            system.setAuthentication(ACL.SYSTEM);
+            SecurityContextHolder.setContext(system);
+
+            // the projects themselves and the projects they contain, plus those they used to contain
+            Set<AbstractProject> current = new LinkedHashSet<AbstractProject>();
+            for (AbstractProject p : projects) {
+                current.add(p);
+                if (p instanceof ItemGroup)
+                    addDescendants((ItemGroup<?>)p,current);
+            }
+            Set<AbstractProject> changed = new HashSet<AbstractProject>(current);
+            for (AbstractProject p : declarations.keySet())
+                if (isInside(p,projects))
+                    changed.add(p);
+
+            g.retract(changed);
+            g.declare(current);
+
+            for (AbstractProject p : g.editedForward)
+                g.finalize(g.forward,p);
+            for (AbstractProject p : g.editedBackward)
+                g.finalize(g.backward,p);
+            g.forward = Collections.unmodifiableMap(g.forward);
+            g.backward = Collections.unmodifiableMap(g.backward);
+
+            g.computationalData = null;
+            g.editedForward = g.editedBackward = null;
+            g.built = true;
+            return g;
+        } finally {
+            SecurityContextHolder.setContext(saveCtx);
+        }
+    }
+
+    /**
+     * Is the given item nested inside one of the given projects?
+     */
+    private static boolean isInside(Object o, Collection<? extends AbstractProject> projects) {
+        while (o instanceof Item) {
+            ItemGroup parent = ((Item)o).getParent();
+            if (projects.contains(parent))
+                return true;
+            o = parent;
+        }
+        return false;
+    }
+
+    private static void addDescendants(ItemGroup<?> group, Set<AbstractProject> r) {
+        for (Item i : group.getItems()) {
+            if (i instanceof AbstractProject)
+                r.add((AbstractProject)i);
+            if (i instanceof ItemGroup)
+                addDescendants((ItemGroup<?>)i,r);
+        }
+    }
+
+    /**
+     * Lets the given projects add their dependencies.
+     */
+    private void declare(Collection<? extends AbstractProject> projects) {
+        for (AbstractProject p : projects) {
+            declarer = p;
+            try {
+                p.buildDependencyGraph(this);
+            } finally {
+                declarer = null;
+            }
+        }
+    }
+
+    /**
+     * Removes the dependencies declared by the given projects.
+     */
+    private void retract(Collection<AbstractProject> projects) {
+        Set<List<AbstractProject>> pairs = new HashSet<List<AbstractProject>>();
+        for (AbstractProject p : projects) {
+            List<Dependency> deps = declarations.remove(p);
+            if (deps==null)     continue;
+            for (Dependency dep : deps) {
+                if (remove(forward,dep.getUpstreamProject(),dep) | remove(backward,dep.getDownstreamProject(),dep))
+                    pairs.add(pair(dep));
+            }
+        }
+        if (pairs.isEmpty())    return;
+
+        // DependencyGroup keeps one of the equal dependencies declared for the same pair of projects.
+        // if we just removed such a dependency, put back the ones that other projects declared.
+        for (List<Dependency> deps : declarations.values())
+            for (Dependency dep : deps)
+                if (pairs.contains(pair(dep))) {
+                    add(forward,dep.getUpstreamProject(),dep);
+                    add(backward,dep.getDownstreamProject(),dep);
+                }
+    }
+
+    private static List<AbstractProject> pair(Dependency dep) {
+        return Arrays.asList(dep.getUpstreamProject(),dep.getDownstreamProject());
+    }
     
     Collection<AbstractProject> getAllProjects() {
         return Jenkins.getInstance().getAllItems(AbstractProject.class);
@@ -204,6 +351,12 @@ public class DependencyGraph implements Comparator<AbstractProject> {
             throw new IllegalStateException();
         add(forward,dep.getUpstreamProject(),dep);
         add(backward,dep.getDownstreamProject(),dep);
+        if (declarer!=null) {
+            List<Dependency> deps = declarations.get(declarer);
+            if (deps==null)
+                declarations.put(declarer,deps=new ArrayList<Dependency>());
+            deps.add(dep);
+        }
     }
 
     /**
@@ -293,11 +446,7 @@ public class DependencyGraph implements Comparator<AbstractProject> {
     }
 
     private void add(Map<AbstractProject, List<DependencyGroup>> map, AbstractProject key, Dependency dep) {
-        List<DependencyGroup> set = map.get(key);
-        if(set==null) {
-            set = new ArrayList<DependencyGroup>();
-            map.put(key,set);
-        }
+        List<DependencyGroup> set = edit(map,key);
         for (ListIterator<DependencyGroup> it = set.listIterator(); it.hasNext();) {
             DependencyGroup d = it.next();
             // Check for existing edge that connects the same two projects:
@@ -310,6 +459,59 @@ public class DependencyGraph implements Comparator<AbstractProject> {
         set.add(new DependencyGroup(dep));
     }
 
+    /**
+     * Removes the given dependency (and not just an equal one) from the map.
+     *
+     * @return
+     *      true if it was there.
+     */
+    private boolean remove(Map<AbstractProject, List<DependencyGroup>> map, AbstractProject key, Dependency dep) {
+        if (map.get(key)==null)     return false;
+        for (DependencyGroup d : edit(map,key)) {
+            for (Iterator<Dependency> itr = d.getGroup().iterator(); itr.hasNext();) {
+                if (itr.next()==dep) {
+                    itr.remove();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the list of the given key that can be modified, copying it from the graph being updated if necessary.
+     */
+    private List<DependencyGroup> edit(Map<AbstractProject, List<DependencyGroup>> map, AbstractProject key) {
+        List<DependencyGroup> list = map.get(key);
+        Set<AbstractProject> edited = map==forward ? editedForward : editedBackward;
+        if (edited!=null && edited.add(key)) {
+            List<DependencyGroup> copy = new ArrayList<DependencyGroup>();
+            if (list!=null)
+                for (DependencyGroup d : list)
+                    copy.add(new DependencyGroup(d));
+            map.put(key,list=copy);
+        }
+        if (list==null)
+            map.put(key,list=new ArrayList<DependencyGroup>());
+        return list;
+    }
+
+    /**
+     * Makes the modified list of the given key read-only, and drops it if it's empty.
+     */
+    private void finalize(Map<AbstractProject, List<DependencyGroup>> map, AbstractProject key) {
+        List<DependencyGroup> list = map.get(key);
+        for (Iterator<DependencyGroup> itr = list.iterator(); itr.hasNext();)
+            if (itr.next().getGroup().isEmpty())
+                itr.remove();
+        if (list.isEmpty()) {
+            map.remove(key);
+        } else {
+            Collections.sort(list, NAME_COMPARATOR);
+            map.put(key, Collections.unmodifiableList(list));
+        }
+    }
+
     private Map<AbstractProject, List<DependencyGroup>> finalize(Map<AbstractProject, List<DependencyGroup>> m) {
         for (Entry<AbstractProject, List<DependencyGroup>> e : m.entrySet()) {
             Collections.sort( e.getValue(), NAME_COMPARATOR );
@@ -327,6 +529,13 @@ public class DependencyGraph implements Comparator<AbstractProject> {
 
     public static final DependencyGraph EMPTY = new DependencyGraph(false);
 
+    /**
+     * Set to false to have {@link Jenkins#updateDependencyGraph(Collection)} rebuild the whole graph.
+     *
+     * @since 1.446
+     */
+    public static boolean INCREMENTAL = !Boolean.getBoolean(DependencyGraph.class.getName()+".disableIncremental");
+
     /**
      * Compare to Projects based on the topological order defined by this Dependency Graph
      */
@@ -411,6 +620,12 @@ public class DependencyGraph implements Comparator<AbstractProject> {
             group.add(first);
         }
 
+        DependencyGroup(DependencyGroup that) {
+            this.upstream = that.upstream;
+            this.downstream = that.downstream;
+            group.addAll(that.group);
+        }
+
         private void add(Dependency next) {
             group.add(next);
         }
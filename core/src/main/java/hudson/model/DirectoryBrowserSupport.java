@@ -25,6 +25,7 @@ package hudson.model;
 
 import hudson.FilePath;
 import hudson.Util;
+import hudson.util.DirScanner;
 import hudson.util.IOException2;
 import hudson.FilePath.FileCallable;
 import hudson.remoting.VirtualChannel;
@@ -34,13 +35,16 @@ import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.HttpResponse;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -49,6 +53,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -71,6 +77,7 @@ public final class DirectoryBrowserSupport implements HttpResponse {
     private final String icon;
     private final boolean serveDirIndex;
     private String indexFileName = "index.html";
+    private List<String> fileList;
 
     /**
      * @deprecated as of 1.297
@@ -118,6 +125,18 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         this.indexFileName = fileName;
     }
 
+    /**
+     * Tells this object what files are under the directory, when that is known ahead of time,
+     * so that zip downloads can be produced without walking the directory.
+     *
+     * @param paths
+     *      '/'-separated paths of all the files, relative to the root directory.
+     * @since 1.446
+     */
+    public void setFileList(List<String> paths) {
+        this.fileList = paths;
+    }
+
     /**
      * Serves a file from the file system (Maps the URL to a directory in a file system.)
      *
@@ -192,7 +211,10 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         if(baseFile.isDirectory()) {
             if(zip) {
                 rsp.setContentType("application/zip");
-                baseFile.zip(rsp.getOutputStream(),rest);
+                if (fileList!=null && root==this.base)
+                    baseFile.zip(rsp.getOutputStream(),listFiles(base,rest,baseFile.getName()));
+                else
+                    baseFile.zip(rsp.getOutputStream(),rest);
                 return;
             }
             if (plain) {
@@ -269,6 +291,13 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         if(LOGGER.isLoggable(Level.FINE))
             LOGGER.fine("Serving "+baseFile+" with lastModified="+ci.lastModified+", contentLength="+ci.contentLength);
 
+        if (!baseFile.isRemote()) {
+            if (view)
+                rsp.setHeader("Content-Disposition", "inline; filename=" + baseFile.getName());
+            serveLocalFile(req, rsp, new File(baseFile.getRemote()), ci, view ? "text/plain" : getMimeType(baseFile.getName()));
+            return;
+        }
+
         InputStream in = baseFile.read();
         if (view) {
             // for binary files, provide the file name for download
@@ -281,6 +310,201 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         }
     }
 
+    /**
+     * Serves a file that lives on the master's own disk.
+     *
+     * <p>
+     * Unlike {@link StaplerResponse#serveFile(StaplerRequest, InputStream, long, long, long, String)},
+     * this sends a strong {@code ETag}, honors a single {@code Range} (guarded by {@code If-Range})
+     * so that interrupted downloads of large artifacts can be resumed, and copies the body straight
+     * from the file to the response.
+     * Large bodies take a slot from {@link #DOWNLOADS} so that a burst of downloads cannot
+     * tie up every request handling thread.
+     */
+    private void serveLocalFile(StaplerRequest req, StaplerResponse rsp, File f, ContentInfo ci, String contentType) throws IOException {
+        final long length = ci.contentLength;
+        String etag = "\""+Long.toHexString(ci.lastModified)+'-'+Long.toHexString(length)+"\"";
+
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch!=null ? matchesETag(ifNoneMatch, etag) : !isModifiedSince(getDateHeader(req, "If-Modified-Since"), ci.lastModified)) {
+            setValidators(rsp, etag, ci.lastModified);
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0, count = length;
+        long[] r = null;
+        String range = req.getHeader("Range");
+        if (range!=null && isCurrent(req, etag, ci.lastModified)) {
+            r = parseRange(range, length);
+            if (r!=null && r.length==0) {
+                rsp.setHeader("Content-Range", "bytes */"+length);
+                rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (r!=null) {
+                start = r[0];
+                count = r[1]-r[0]+1;
+            }
+        }
+
+        // take the slot before anything of the successful response is set, so that a 503 doesn't carry its headers
+        boolean throttled = count>=DOWNLOAD_THRESHOLD && !req.getMethod().equals("HEAD");
+        if (throttled) {
+            try {
+                if (!DOWNLOADS.tryAcquire(DOWNLOAD_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    LOGGER.fine("Too many concurrent downloads; turning away "+f);
+                    rsp.setHeader("Retry-After", Long.toString(Math.max(1, DOWNLOAD_TIMEOUT/1000)));
+                    rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+            }
+        }
+
+        try {
+            setValidators(rsp, etag, ci.lastModified);
+            if (r!=null) {
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes "+r[0]+'-'+r[1]+'/'+length);
+            }
+            rsp.setContentType(contentType);
+            rsp.setHeader("Content-Length", Long.toString(count)); // setContentLength is limited to 2GB
+            if (req.getMethod().equals("HEAD"))
+                return;
+
+            FileInputStream in = new FileInputStream(f);
+            try {
+                in.getChannel().position(start);
+                OutputStream out = rsp.getOutputStream();
+                byte[] buf = new byte[8192];
+                while (count>0) {
+                    int n = in.read(buf, 0, (int)Math.min(buf.length, count));
+                    if (n<0)    break;  // the file was truncated while we were serving it
+                    out.write(buf, 0, n);
+                    count -= n;
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            if (throttled)
+                DOWNLOADS.release();
+        }
+    }
+
+    private static void setValidators(StaplerResponse rsp, String etag, long lastModified) {
+        rsp.setHeader("ETag", etag);
+        rsp.setHeader("Accept-Ranges", "bytes");
+        rsp.setDateHeader("Last-Modified", lastModified);
+    }
+
+    private static String getMimeType(String fileName) {
+        String type = Jenkins.getInstance().servletContext.getMimeType(fileName);
+        return type!=null ? type : "application/octet-stream";
+    }
+
+    private static long getDateHeader(StaplerRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;  // not a date
+        }
+    }
+
+    /**
+     * HTTP dates only have one second resolution.
+     */
+    private static boolean isModifiedSince(long since, long lastModified) {
+        return since<0 || lastModified/1000 > since/1000;
+    }
+
+    private static boolean matchesETag(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the {@code If-Range} header, which makes the range request conditional
+     * on the client having the same representation as we do.
+     */
+    private static boolean isCurrent(StaplerRequest req, String etag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange==null)
+            return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);    // weak tags never match in a strong comparison
+        long date = getDateHeader(req, "If-Range");
+        return date>=0 && date/1000==lastModified/1000;
+    }
+
+    /**
+     * Parses the {@code Range} header.
+     *
+     * @return
+     *      {first,last} byte positions (inclusive) for a single satisfiable range,
+     *      an empty array if the range is unsatisfiable, or null if the header is
+     *      malformed or asks for multiple ranges, in which case the whole file is sent.
+     */
+    private static long[] parseRange(String header, long length) {
+        header = header.trim();
+        if (!header.startsWith("bytes=") || header.indexOf(',')>=0)
+            return null;
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash<0)
+            return null;
+        try {
+            String first = spec.substring(0,dash).trim(), last = spec.substring(dash+1).trim();
+            if (first.length()==0) {
+                // suffix range: the last N bytes
+                long n = Long.parseLong(last);
+                if (n<0)    return null;
+                if (n==0 || length==0)  return new long[0];
+                return new long[] {Math.max(0,length-n), length-1};
+            }
+            long s = Long.parseLong(first);
+            long e = last.length()==0 ? length-1 : Long.parseLong(last);
+            if (s<0 || e<s)     return null;
+            if (s>=length)      return new long[0];
+            return new long[] {s, Math.min(e,length-1)};
+        } catch (NumberFormatException x) {
+            return null;
+        }
+    }
+
+    /**
+     * Picks the files that the zip download of "base/*zip*" or "base/rest/*zip*" should contain
+     * from {@link #setFileList(List)}, naming them the same way {@link FilePath#zip(OutputStream, String)} would.
+     */
+    private DirScanner listFiles(String base, String rest, String baseName) {
+        String prefix = base.length()>0 ? base+'/' : "";
+        String[] defaultExcludes = DirectoryScanner.getDefaultExcludes();
+        List<String> r = new ArrayList<String>();
+        OUTER:
+        for (String path : fileList) {
+            if (!path.startsWith(prefix))
+                continue;
+            path = path.substring(prefix.length());
+            if (rest.length()>0) {
+                if (!SelectorUtils.matchPath(rest,path))
+                    continue;
+                for (String exclude : defaultExcludes)
+                    if (SelectorUtils.matchPath(exclude,path))
+                        continue OUTER;
+            }
+            r.add(path);
+        }
+        // without a pattern, the zip has the directory itself at the top
+        return new DirScanner.Listed(rest.length()>0 ? "" : baseName+'/', r);
+    }
+
     private String getPath(StaplerRequest req) {
         String path = req.getRestOfPath();
         if(path.length()==0)
@@ -537,5 +761,24 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         private static final long serialVersionUID = 1L;
     }
 
+    /**
+     * Number of large files that can be served from the master's disk at the same time.
+     * Only read when this class is loaded.
+     */
+    public static final int MAX_DOWNLOADS = Integer.getInteger(DirectoryBrowserSupport.class.getName()+".maxDownloads",16);
+
+    /**
+     * Bodies at least this many bytes long count against {@link #MAX_DOWNLOADS}.
+     * Smaller ones finish quickly enough that they are never held back.
+     */
+    public static long DOWNLOAD_THRESHOLD = Long.getLong(DirectoryBrowserSupport.class.getName()+".downloadThreshold",1024*1024);
+
+    /**
+     * How long in milliseconds a download waits for a free slot before it is answered with 503.
+     */
+    public static long DOWNLOAD_TIMEOUT = Long.getLong(DirectoryBrowserSupport.class.getName()+".downloadTimeout",10*1000);
+
+    private static final Semaphore DOWNLOADS = new Semaphore(MAX_DOWNLOADS,true);
+
     private static final Logger LOGGER = Logger.getLogger(DirectoryBrowserSupport.class.getName());
 }
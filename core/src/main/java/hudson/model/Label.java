@@ -50,9 +50,12 @@ import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Collection;
 import java.util.TreeSet;
@@ -142,6 +145,26 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
      */
     public abstract boolean matches(VariableResolver<Boolean> resolver);
 
+    /**
+     * Evaluates whether the label expression is true when exactly the atoms whose
+     * {@linkplain LabelAtom#getIndex() indices} are set in the given bit set are true.
+     *
+     * <p>
+     * This is the fast path used to match labels against nodes, as it involves neither
+     * string comparison nor allocation. Subtypes should override this method, as
+     * the default implementation just adapts it to {@link #matches(VariableResolver)}.
+     *
+     * @see #toBitSet(Collection)
+     * @since 1.446
+     */
+    public boolean matches(final BitSet atoms) {
+        return matches(new VariableResolver<Boolean>() {
+            public Boolean resolve(String name) {
+                return atoms.get(LabelAtom.indexOf(name));
+            }
+        });
+    }
+
     /**
      * Evaluates whether the label expression is true when an entity owns the given set of
      * {@link LabelAtom}s.
@@ -158,7 +181,19 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
     }
 
     public final boolean matches(Node n) {
-        return matches(n.getAssignedLabels());
+        return matches(toBitSet(n.getAssignedLabels()));
+    }
+
+    /**
+     * Converts a set of atoms to the form {@link #matches(BitSet)} takes.
+     *
+     * @since 1.446
+     */
+    public static BitSet toBitSet(Collection<LabelAtom> atoms) {
+        BitSet r = new BitSet();
+        for (LabelAtom a : atoms)
+            r.set(a.getIndex());
+        return r;
     }
 
     /**
@@ -180,15 +215,46 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
 
         Set<Node> r = new HashSet<Node>();
         Jenkins h = Jenkins.getInstance();
-        if(this.matches(h))
+        if(this.matches(h.getLabelBits(h)))
             r.add(h);
         for (Node n : h.getNodes()) {
-            if(this.matches(n))
+            if(this.matches(h.getLabelBits(n)))
                 r.add(n);
         }
         return this.nodes = Collections.unmodifiableSet(r);
     }
 
+    /**
+     * Brings {@link #getNodes()} up to date with the given changes, instead of recomputing it from scratch.
+     *
+     * @param removed
+     *      Nodes that were removed, or whose labels may have changed.
+     * @param added
+     *      Nodes that were added, or whose labels may have changed, to their atoms.
+     */
+    /*package*/ void update(Collection<Node> removed, Map<Node,BitSet> added) {
+        clouds = null;
+
+        Set<Node> nodes = this.nodes;
+        if (nodes==null)    return; // not computed yet, so nothing to update
+
+        Set<Node> r = null;     // lazily copied only if there's any change
+        for (Node n : removed) {
+            if (nodes.contains(n)) {
+                if (r==null)    r = new HashSet<Node>(nodes);
+                r.remove(n);
+            }
+        }
+        for (Entry<Node,BitSet> e : added.entrySet()) {
+            if (matches(e.getValue())) {
+                if (r==null)    r = new HashSet<Node>(nodes);
+                r.add(e.getKey());
+            }
+        }
+        if (r!=null)
+            this.nodes = Collections.unmodifiableSet(r);
+    }
+
     /**
      * Gets all {@link Cloud}s that can launch for this label.
      */
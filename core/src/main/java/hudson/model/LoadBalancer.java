@@ -27,8 +27,8 @@ import hudson.model.Queue.Task;
 import hudson.model.queue.MappingWorksheet;
 import hudson.model.queue.MappingWorksheet.ExecutorChunk;
 import hudson.model.queue.MappingWorksheet.Mapping;
-import hudson.util.ConsistentHash;
-import hudson.util.ConsistentHash.Hash;
+import hudson.model.queue.NodeHashRing;
+import jenkins.model.Jenkins;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -69,41 +69,33 @@ public abstract class LoadBalancer /*implements ExtensionPoint*/ {
     public static final LoadBalancer CONSISTENT_HASH = new LoadBalancer() {
         @Override
         public Mapping map(Task task, MappingWorksheet ws) {
-            // build consistent hash for each work chunk
-            List<ConsistentHash<ExecutorChunk>> hashes = new ArrayList<ConsistentHash<ExecutorChunk>>(ws.works.size());
+            // order the candidates of each work chunk by the consistent hash of all the nodes
+            NodeHashRing ring = Jenkins.getInstance().getQueue().getNodeHashRing();
+            List<List<ExecutorChunk>> candidates = new ArrayList<List<ExecutorChunk>>(ws.works.size());
             for (int i=0; i<ws.works.size(); i++) {
-                ConsistentHash<ExecutorChunk> hash = new ConsistentHash<ExecutorChunk>(new Hash<ExecutorChunk>() {
-                    public String hash(ExecutorChunk node) {
-                        return node.getName();
-                    }
-                });
-                for (ExecutorChunk ec : ws.works(i).applicableExecutorChunks())
-                    hash.add(ec,ec.size()*100);
-
-                hashes.add(hash);
+                String key = task.getFullDisplayName() + (i>0 ? String.valueOf(i) : "");
+                candidates.add(ring.sort(key, ws.works(i).applicableExecutorChunks()));
             }
 
             // do a greedy assignment
             Mapping m = ws.new Mapping();
             assert m.size()==ws.works.size();   // just so that you the reader of the source code don't get confused with the for loop index
 
-            if (assignGreedily(m,task,hashes,0)) {
+            if (assignGreedily(m,candidates,0)) {
                 assert m.isCompletelyValid();
                 return m;
             } else
                 return null;
         }
 
-        private boolean assignGreedily(Mapping m, Task task, List<ConsistentHash<ExecutorChunk>> hashes, int i) {
-            if (i==hashes.size())   return true;    // fully assigned
+        private boolean assignGreedily(Mapping m, List<List<ExecutorChunk>> candidates, int i) {
+            if (i==candidates.size())   return true;    // fully assigned
 
-            String key = task.getFullDisplayName() + (i>0 ? String.valueOf(i) : "");
-
-            for (ExecutorChunk ec : hashes.get(i).list(key)) {
+            for (ExecutorChunk ec : candidates.get(i)) {
                 // let's attempt this assignment
                 m.assign(i,ec);
 
-                if (m.isPartiallyValid() && assignGreedily(m,task,hashes,i+1))
+                if (m.isPartiallyValid() && assignGreedily(m,candidates,i+1))
                     return true;    // successful greedily allocation
 
                 // otherwise 'ec' wasn't a good fit for us. try next.
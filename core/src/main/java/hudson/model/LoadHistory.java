@@ -0,0 +1,317 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.util.RollupTimeSeries;
+import hudson.util.RollupTimeSeries.Bucket;
+import hudson.util.TimeUnit2;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-term record of the {@link LoadStatistics}, for capacity planning.
+ *
+ * <p>
+ * {@link MultiStageTimeSeries} only keeps exponentially decayed averages, and they are lost on restart.
+ * This keeps the same numbers in {@link RollupTimeSeries}, which retain 10 second resolution for an hour,
+ * and then minute, hourly, and daily min/max/mean/percentile for a day, four weeks, and a year respectively,
+ * in a bounded amount of memory per label. They are written to <tt>$JENKINS_HOME/load-history</tt> periodically.
+ *
+ * <p>
+ * The history is kept for the whole system and for each label except the self labels of the nodes
+ * (since the node pages already show their load.) A label only starts a history once it has executors
+ * or something waiting for them, so that labels that merely got parsed somewhere don't use up memory.
+ * The history of a label is kept in memory only while it's being updated, and is deleted altogether
+ * once the label is gone from {@link Jenkins#getLabels()}. Use <tt>/loadHistory/query</tt> to retrieve it.
+ *
+ * @since 1.446
+ */
+@Extension
+public class LoadHistory implements RootAction {
+    private final Map<String,Series> series = new ConcurrentHashMap<String,Series>();
+
+    /**
+     * Busy executors, total executors, and the queue length of one {@link LoadStatistics}.
+     */
+    public static final class Series {
+        public final RollupTimeSeries busyExecutors = create();
+        public final RollupTimeSeries totalExecutors = create();
+        public final RollupTimeSeries queueLength = create();
+
+        private static RollupTimeSeries create() {
+            return new RollupTimeSeries(PERIODS,SIZES);
+        }
+
+        /*package*/ void update(long time, int busy, int total, int queue) {
+            busyExecutors.add(time,busy);
+            totalExecutors.add(time,total);
+            queueLength.add(time,queue);
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            busyExecutors.writeTo(out);
+            totalExecutors.writeTo(out);
+            queueLength.writeTo(out);
+        }
+
+        private void readFrom(DataInputStream in) throws IOException {
+            busyExecutors.readFrom(in);
+            totalExecutors.readFrom(in);
+            queueLength.readFrom(in);
+        }
+    }
+
+    /**
+     * Gets the history of the given label, or the whole system if null.
+     *
+     * @return
+     *      null if no history is kept for the label.
+     */
+    public Series getSeries(Label l) {
+        return getSeries(l==null ? OVERALL : l.getName(), false);
+    }
+
+    private Series getSeries(String name, boolean create) {
+        Series s = series.get(name);
+        if (s==null && (create || getFile(name).exists())) {
+            synchronized (this) {
+                s = series.get(name);
+                if (s==null) {
+                    s = new Series();
+                    load(name,s);
+                    series.put(name,s);
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Called every {@link LoadStatistics#CLOCK} to record the current load.
+     */
+    /*package*/ void record(Label l, int busy, int total, int queue) {
+        if (l!=null && l.isSelfLabel())    return;
+        Series s = getSeries(l==null ? OVERALL : l.getName(), l==null || total>0 || queue>0);
+        if (s!=null)
+            s.update(System.currentTimeMillis(),busy,total,queue);
+    }
+
+    /**
+     * Queries the history.
+     *
+     * @param label
+     *      Label expression, or empty for the whole system.
+     * @param from
+     *      Start of the window, in milliseconds since the epoch. Defaults to an hour ago.
+     * @param to
+     *      End of the window. Defaults to now.
+     * @param resolution
+     *      Desired duration of each data point in milliseconds. See {@link RollupTimeSeries#query(long, long, long)}.
+     */
+    public void doQuery(StaplerRequest req, StaplerResponse rsp, @QueryParameter String label, @QueryParameter long from, @QueryParameter long to, @QueryParameter long resolution) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.READ);
+
+        long now = System.currentTimeMillis();
+        if (to<=0)      to = now;
+        if (from<=0)    from = to-TimeUnit2.HOURS.toMillis(1);
+
+        Series s = null;
+        if (Util.fixEmpty(label)==null) {
+            s = getSeries(null);
+        } else {
+            // Jenkins.getLabel() would create and remember a label for whatever the request says
+            for (Label l : Jenkins.getInstance().getLabels())
+                if (l.getName().equals(label))
+                    s = getSeries(l);
+        }
+        JSONObject o = new JSONObject();
+        if (s!=null) {
+            o.put("busyExecutors", toJSON(s.busyExecutors.query(from,to,resolution)));
+            o.put("totalExecutors", toJSON(s.totalExecutors.query(from,to,resolution)));
+            o.put("queueLength", toJSON(s.queueLength.query(from,to,resolution)));
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        Writer w = rsp.getCompressedWriter(req);
+        o.write(w);
+        w.close();
+    }
+
+    private JSONArray toJSON(List<Bucket> buckets) {
+        JSONArray a = new JSONArray();
+        for (Bucket b : buckets) {
+            JSONObject o = new JSONObject();
+            o.put("start",b.start);
+            o.put("duration",b.duration);
+            o.put("min",b.min);
+            o.put("max",b.max);
+            o.put("mean",b.mean);
+            o.put("percentile90",b.percentile90);
+            o.put("count",b.count);
+            a.add(o);
+        }
+        return a;
+    }
+
+    private File getDir() {
+        return new File(Jenkins.getInstance().getRootDir(),"load-history");
+    }
+
+    private File getFile(String name) {
+        return name.equals(OVERALL) ? new File(getDir(),"overall.dat") : new File(getDir(),"label/"+Util.rawEncode(name)+".dat");
+    }
+
+    private void load(String name, Series s) {
+        File f = getFile(name);
+        if (!f.exists())    return;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            try {
+                s.readFrom(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load "+f, e);
+        }
+    }
+
+    /**
+     * Writes all the history to disk, forgets the labels that are no longer in use,
+     * and deletes the history of the labels that no longer exist.
+     */
+    public void save() {
+        Set<String> labels = new HashSet<String>();
+        labels.add(OVERALL);
+        for (Label l : Jenkins.getInstance().getLabels())
+            labels.add(l.getName());
+
+        long cutoff = System.currentTimeMillis()-TimeUnit2.DAYS.toMillis(1);
+        for (Iterator<Map.Entry<String,Series>> itr = series.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<String,Series> e = itr.next();
+            if (!labels.contains(e.getKey())) {
+                itr.remove();
+                continue;
+            }
+            File f = getFile(e.getKey());
+            File tmp = new File(f.getPath()+".tmp");
+            try {
+                f.getParentFile().mkdirs();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                try {
+                    e.getValue().writeTo(out);
+                } finally {
+                    out.close();
+                }
+                f.delete();   // needed on Windows
+                if (!tmp.renameTo(f))
+                    throw new IOException("Failed to rename "+tmp+" to "+f);
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to save "+f, x);
+            }
+
+            if (e.getValue().queueLength.getLastUpdated()<cutoff && !e.getKey().equals(OVERALL))
+                itr.remove();   // it's on disk if it's needed again
+        }
+
+        Set<String> files = new HashSet<String>();
+        for (String name : labels)
+            files.add(getFile(name).getName());
+        File[] existing = new File(getDir(),"label").listFiles();
+        if (existing!=null)
+            for (File f : existing)
+                if (!files.contains(f.getName()) && !f.delete())
+                    LOGGER.warning("Failed to delete "+f);
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "loadHistory";
+    }
+
+    public static LoadHistory get() {
+        return Jenkins.getInstance().getExtensionList(RootAction.class).get(LoadHistory.class);
+    }
+
+    /**
+     * Periodically writes the history to disk.
+     */
+    @Extension
+    public static class Saver extends PeriodicWork {
+        public long getRecurrencePeriod() {
+            return SAVE_INTERVAL;
+        }
+
+        protected void doRun() {
+            LoadHistory h = get();
+            if (h!=null)    h.save();
+        }
+    }
+
+    private static final String OVERALL = "";
+
+    /**
+     * Resolution and retention of the data: 10 sec for an hour, 1 min for a day, 1 hour for 4 weeks, and 1 day for a year.
+     */
+    private static final long[] PERIODS = {TimeUnit2.SECONDS.toMillis(10), TimeUnit2.MINUTES.toMillis(1), TimeUnit2.HOURS.toMillis(1), TimeUnit2.DAYS.toMillis(1)};
+    private static final int[] SIZES = {6*60, 60*24, 24*28, 365};
+
+    /**
+     * How often the history is written to disk, in milliseconds.
+     */
+    public static long SAVE_INTERVAL = Long.getLong(LoadHistory.class.getName()+".saveInterval", TimeUnit2.MINUTES.toMillis(10));
+
+    private static final Logger LOGGER = Logger.getLogger(LoadHistory.class.getName());
+}
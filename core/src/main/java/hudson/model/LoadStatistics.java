@@ -198,10 +198,14 @@ public abstract class LoadStatistics {
             Jenkins h = Jenkins.getInstance();
             List<hudson.model.Queue.BuildableItem> bis = h.getQueue().getBuildableItems();
 
+            LoadHistory history = LoadHistory.get();
+
             // update statistics on slaves
             for( Label l : h.getLabels() ) {
-                l.loadStatistics.totalExecutors.update(l.getTotalExecutors());
-                l.loadStatistics.busyExecutors .update(l.getBusyExecutors());
+                int total = l.getTotalExecutors();
+                int busy = l.getBusyExecutors();
+                l.loadStatistics.totalExecutors.update(total);
+                l.loadStatistics.busyExecutors .update(busy);
 
                 int q=0;
                 for (hudson.model.Queue.BuildableItem bi : bis) {
@@ -209,12 +213,17 @@ public abstract class LoadStatistics {
                         q++;
                 }
                 l.loadStatistics.queueLength.update(q);
+
+                if (history!=null)
+                    history.record(l,busy,total,q);
             }
 
             // update statistics of the entire system
             ComputerSet cs = new ComputerSet();
-            h.overallLoad.totalExecutors.update(cs.getTotalExecutors());
-            h.overallLoad.busyExecutors .update(cs.getBusyExecutors());
+            int total = cs.getTotalExecutors();
+            int busy = cs.getBusyExecutors();
+            h.overallLoad.totalExecutors.update(total);
+            h.overallLoad.busyExecutors .update(busy);
             int q=0;
             for (hudson.model.Queue.BuildableItem bi : bis) {
                 if(bi.task.getAssignedLabel()==null)
@@ -222,6 +231,9 @@ public abstract class LoadStatistics {
             }
             h.overallLoad.queueLength.update(q);
             h.overallLoad.totalQueueLength.update(bis.size());
+
+            if (history!=null)
+                history.record(null,busy,total,q);
         }
     }
 }
@@ -43,7 +43,10 @@ import hudson.model.queue.SubTask;
 import hudson.model.queue.FutureImpl;
 import hudson.model.queue.MappingWorksheet;
 import hudson.model.queue.MappingWorksheet.Mapping;
+import hudson.model.queue.NodeHashRing;
 import hudson.model.queue.QueueSorter;
+import hudson.model.queue.QueueStatistics;
+import hudson.model.queue.QueueStatistics.Stage;
 import hudson.model.queue.QueueTaskDispatcher;
 import hudson.model.queue.Tasks;
 import hudson.model.queue.WorkUnit;
@@ -58,11 +61,10 @@ import hudson.model.queue.CauseOfBlockage.BecauseNodeIsBusy;
 import hudson.model.queue.WorkUnitContext;
 import hudson.triggers.SafeTimerTask;
 import hudson.triggers.Trigger;
+import hudson.slaves.NodeProvisioner;
 import hudson.util.OneShotEvent;
 import hudson.util.TimeUnit2;
 import hudson.util.XStream2;
-import hudson.util.ConsistentHash;
-import hudson.util.ConsistentHash.Hash;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -78,7 +80,9 @@ import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -242,6 +246,16 @@ public class Queue extends ResourceController implements Saveable {
 
     private volatile transient QueueSorter sorter;
 
+    /**
+     * Records changes since the last {@link #save()}, so that the queue survives a crash
+     * without rewriting <tt>queue.xml</tt> every time. Lazily created, and null if {@link #JOURNAL} is off.
+     */
+    private transient QueueJournal journal;
+
+    private final transient QueueStatistics statistics = new QueueStatistics();
+
+    private final transient NodeHashRing nodeHashRing = new NodeHashRing();
+
     public Queue(LoadBalancer loadBalancer) {
         this.loadBalancer =  loadBalancer.sanitize();
         // if all the executors are busy doing something, then the queue won't be maintained in
@@ -266,6 +280,24 @@ public class Queue extends ResourceController implements Saveable {
         this.sorter = sorter;
     }
 
+    /**
+     * Gets the statistics of how long items stay in the queue.
+     *
+     * @since 1.446
+     */
+    public QueueStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets the consistent hash of all the nodes, which is used to pick the node a task runs on.
+     *
+     * @since 1.446
+     */
+    public NodeHashRing getNodeHashRing() {
+        return nodeHashRing;
+    }
+
     /**
      * Loads the queue contents that was {@link #save() saved}.
      */
@@ -289,29 +321,40 @@ public class Queue extends ResourceController implements Saveable {
                 queueFile.delete();
             } else {
                 queueFile = getXMLQueueFile();
-                if (queueFile.exists()) {
-                    List list = (List) new XmlFile(XSTREAM, queueFile).read();
-                    int maxId = 0;
-                    for (Object o : list) {
-                        if (o instanceof Task) {
-                            // backward compatibility
-                            schedule((Task)o, 0);
-                        } else if (o instanceof Item) {
-                            Item item = (Item)o;
-                            if(item.task==null)
-                                continue;   // botched persistence. throw this one away
-
-                            maxId = Math.max(maxId, item.id);
-                            if (item instanceof WaitingItem) {
-                                waitingList.add((WaitingItem) item);
-                            } else if (item instanceof BlockedItem) {
-                                blockedProjects.put(item.task, (BlockedItem) item);
-                            } else if (item instanceof BuildableItem) {
-                                buildables.add((BuildableItem) item);
-                            } else {
-                                throw new IllegalStateException("Unknown item type! " + item);
-                            }
-                        } // this conveniently ignores null
+                QueueJournal j = getJournal();
+                if (queueFile.exists() || (j!=null && j.getFile().exists())) {
+                    // items keyed by their IDs, in the order they are put back to the queue
+                    Map<Integer,Item> items = new LinkedHashMap<Integer,Item>();
+                    if (queueFile.exists()) {
+                        List list = (List) new XmlFile(XSTREAM, queueFile).read();
+                        for (Object o : list) {
+                            if (o instanceof Task) {
+                                // backward compatibility
+                                schedule((Task)o, 0);
+                            } else if (o instanceof Item) {
+                                Item item = (Item)o;
+                                if(item.task==null)
+                                    continue;   // botched persistence. throw this one away
+                                items.put(item.id, item);
+                            } // this conveniently ignores null
+                        }
+                    }
+                    if (j!=null)
+                        // apply the changes that happened after the snapshot was taken
+                        j.replay(items);
+
+                    int maxId = WaitingItem.COUNTER.get();
+                    for (Item item : items.values()) {
+                        maxId = Math.max(maxId, item.id);
+                        if (item instanceof WaitingItem) {
+                            waitingList.add((WaitingItem) item);
+                        } else if (item instanceof BlockedItem) {
+                            blockedProjects.put(item.task, (BlockedItem) item);
+                        } else if (item instanceof BuildableItem) {
+                            buildables.add((BuildableItem) item);
+                        } else {
+                            throw new IllegalStateException("Unknown item type! " + item);
+                        }
                     }
                     WaitingItem.COUNTER.set(maxId);
 
@@ -324,6 +367,10 @@ public class Queue extends ResourceController implements Saveable {
                     bk.delete();
                     queueFile.renameTo(bk);
                     queueFile.delete();
+
+                    if (j!=null)
+                        // the snapshot is gone, so the journal needs a new baseline
+                        save();
                 }
             }
         } catch (IOException e) {
@@ -347,6 +394,10 @@ public class Queue extends ResourceController implements Saveable {
         try {
             XmlFile queueFile = new XmlFile(XSTREAM, getXMLQueueFile());
             queueFile.write(items);
+            // everything in the journal is now reflected in the snapshot
+            QueueJournal j = getJournal();
+            if (j!=null)
+                j.reset();
             SaveableListener.fireOnChange(this, queueFile);
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Failed to write out the queue file " + getXMLQueueFile(), e);
@@ -364,9 +415,40 @@ public class Queue extends ResourceController implements Saveable {
         waitingList.clear();
         blockedProjects.cancelAll();
         buildables.cancelAll();
+        // rather than journaling every item that just left, start over from an empty snapshot
+        save();
         scheduleMaintenance();
     }
 
+    /**
+     * Gets the journal that records changes made since the last {@link #save()}.
+     *
+     * @return null if journaling is disabled.
+     */
+    private synchronized QueueJournal getJournal() {
+        if (journal==null && JOURNAL)
+            journal = new QueueJournal(new File(Jenkins.getInstance().getRootDir(), "queue.journal"));
+        return journal;
+    }
+
+    /**
+     * Records the new or updated item in the journal.
+     */
+    private void journalEnter(Item item) {
+        if (item.task instanceof TransientTask)  return;
+        QueueJournal j = getJournal();
+        if (j!=null)    j.enter(item);
+    }
+
+    /**
+     * Records the departure of the item from the queue in the journal.
+     */
+    private void journalLeave(Item item) {
+        if (item.task instanceof TransientTask)  return;
+        QueueJournal j = getJournal();
+        if (j!=null)    j.leave(item);
+    }
+
     private File getQueueFile() {
         return new File(Jenkins.getInstance().getRootDir(), "queue.txt");
     }
@@ -426,18 +508,80 @@ public class Queue extends ResourceController implements Saveable {
      *      That said, one can still look at {@link WaitingItem#future}, {@link WaitingItem#id}, etc.
      */
     public synchronized WaitingItem schedule(Task p, int quietPeriod, List<Action> actions) {
-        // remove nulls
+        actions = removeNulls(actions);
+
+        if (!shouldSchedule(QueueDecisionHandler.all(), p, actions))
+            return null;    // veto
+
+        return scheduleInternal(p, quietPeriod, actions);
+    }
+
+    /**
+     * Schedules executions of multiple tasks at once.
+     *
+     * <p>
+     * This works like calling {@link #schedule(Task, int, List)} for each request, except that it's cheaper
+     * when many tasks are scheduled at once, such as when a build triggers lots of downstream projects:
+     * the queue is scanned for duplicates only once, the changes are persisted together,
+     * and the queue maintenance is scheduled only once at the end.
+     *
+     * @return
+     *      List of the same size as the requests, where each entry is what {@link #schedule(Task, int, List)}
+     *      would have returned for the corresponding request.
+     * @since 1.446
+     */
+    public synchronized List<WaitingItem> schedule(Collection<ScheduleRequest> requests) {
+        List<WaitingItem> r = new ArrayList<WaitingItem>(requests.size());
+        if (requests.isEmpty())     return r;
+
+        // index the items currently in the queue once, instead of scanning the whole queue for every request
+        Map<Task,List<Item>> index = new IdentityHashMap<Task,List<Item>>();
+        for (Item i : getItems()) {
+            List<Item> l = index.get(i.task);
+            if (l==null)    index.put(i.task, l=new ArrayList<Item>());
+            l.add(i);
+        }
+
+        List<QueueDecisionHandler> handlers = QueueDecisionHandler.all();
+        QueueJournal j = getJournal();
+        if (j!=null)    j.beginBatch();
+        try {
+            for (ScheduleRequest req : requests) {
+                List<Action> actions = removeNulls(req.actions);
+                WaitingItem wi = null;
+                if (shouldSchedule(handlers, req.task, actions)) {
+                    List<Item> existing = index.get(req.task);
+                    if (existing==null)     index.put(req.task, existing=new ArrayList<Item>());
+                    wi = scheduleInternal(req.task, req.quietPeriod, actions, existing, false);
+                    if (wi!=null)   existing.add(wi);   // later requests for the same task fold into this one
+                }
+                r.add(wi);
+            }
+        } finally {
+            if (j!=null)    j.endBatch();
+        }
+
+        scheduleMaintenance();
+        return r;
+    }
+
+    private static List<Action> removeNulls(List<Action> actions) {
         actions = new ArrayList<Action>(actions);
         for (Iterator<Action> itr = actions.iterator(); itr.hasNext();) {
             Action a =  itr.next();
             if (a==null)    itr.remove();
         }
+        return actions;
+    }
 
-    	for(QueueDecisionHandler h : QueueDecisionHandler.all())
+    /**
+     * Consults {@link QueueDecisionHandler}s.
+     */
+    private static boolean shouldSchedule(List<QueueDecisionHandler> handlers, Task p, List<Action> actions) {
+    	for(QueueDecisionHandler h : handlers)
     		if (!h.shouldSchedule(p, actions))
-                return null;    // veto
-
-        return scheduleInternal(p, quietPeriod, actions);
+                return false;
+        return true;
     }
 
     /**
@@ -453,12 +597,22 @@ public class Queue extends ResourceController implements Saveable {
      *      That said, one can still look at {@link WaitingItem#future}, {@link WaitingItem#id}, etc.
      */
     private synchronized WaitingItem scheduleInternal(Task p, int quietPeriod, List<Action> actions) {
+        return scheduleInternal(p, quietPeriod, actions, getItems(p), true);
+    }
+
+    /**
+     * @param existing
+     *      Items of the given task that are currently in the queue.
+     * @param maintain
+     *      False if the caller takes care of {@link #scheduleMaintenance()}.
+     */
+    private WaitingItem scheduleInternal(Task p, int quietPeriod, List<Action> actions, List<Item> existing, boolean maintain) {
         Calendar due = new GregorianCalendar();
     	due.add(Calendar.SECOND, quietPeriod);
 
         // Do we already have this task in the queue? Because if so, we won't schedule a new one.
     	List<Item> duplicatesInQueue = new ArrayList<Item>();
-    	for(Item item : getItems(p)) {
+    	for(Item item : existing) {
     		boolean shouldScheduleItem = false;
     		for (QueueAction action: item.getActions(QueueAction.class)) {
                 shouldScheduleItem |= action.shouldSchedule(actions);
@@ -476,7 +630,9 @@ public class Queue extends ResourceController implements Saveable {
     		// put the item in the queue
             WaitingItem added = new WaitingItem(due,p,actions);
     		waitingList.add(added);
-            scheduleMaintenance();   // let an executor know that a new item is in the queue.
+            journalEnter(added);
+            if (maintain)
+                scheduleMaintenance();   // let an executor know that a new item is in the queue.
             return added;
     	}
 
@@ -484,9 +640,12 @@ public class Queue extends ResourceController implements Saveable {
 
         // but let the actions affect the existing stuff.
         for(Item item : duplicatesInQueue) {
-            for(FoldableAction a : Util.filter(actions,FoldableAction.class)) {
+            List<FoldableAction> foldables = Util.filter(actions,FoldableAction.class);
+            for(FoldableAction a : foldables) {
                 a.foldIntoExisting(item, p, actions);
             }
+            if (!foldables.isEmpty() && item instanceof WaitingItem)
+                journalEnter(item);
         }
 
         boolean queueUpdated = false;
@@ -507,10 +666,11 @@ public class Queue extends ResourceController implements Saveable {
             waitingList.remove(wi);
             wi.timestamp = due;
             waitingList.add(wi);
+            journalEnter(wi);
             queueUpdated=true;
         }
 
-        if (queueUpdated)   scheduleMaintenance();
+        if (queueUpdated && maintain)   scheduleMaintenance();
         return null;
     }
     
@@ -554,19 +714,26 @@ public class Queue extends ResourceController implements Saveable {
             if (item.task.equals(p)) {
                 itr.remove();
                 item.onCancelled();
+                journalLeave(item);
                 return true;
             }
         }
-        // use bitwise-OR to make sure that both branches get evaluated all the time
-        return blockedProjects.cancel(p)!=null | buildables.cancel(p)!=null;
+        // make sure that both lists get evaluated all the time
+        Item b = blockedProjects.cancel(p);
+        if (b!=null)    journalLeave(b);
+        Item bi = buildables.cancel(p);
+        if (bi!=null)   journalLeave(bi);
+        return b!=null || bi!=null;
     }
     
     public synchronized boolean cancel(Item item) {
         LOGGER.fine("Cancelling " + item.task.getFullDisplayName() + " item#" + item.id);
         // use bitwise-OR to make sure that all the branches get evaluated all the time
         boolean r = (item instanceof WaitingItem && waitingList.remove(item)) | blockedProjects.remove(item) | buildables.remove(item);
-        if(r)
+        if(r) {
             item.onCancelled();
+            journalLeave(item);
+        }
         return r;
     }
 
@@ -764,7 +931,10 @@ public class Queue extends ResourceController implements Saveable {
         if (exec instanceof OneOffExecutor) {
             OneOffExecutor ooe = (OneOffExecutor) exec;
             final WorkUnit wu = ooe.getAssignedWorkUnit();
-            pendings.remove(wu.context.item);
+            if (pendings.remove(wu.context.item)) {
+                journalLeave(wu.context.item);
+                recordTotal(wu.context.item);
+            }
             return wu;
         }
 
@@ -791,6 +961,7 @@ public class Queue extends ResourceController implements Saveable {
                     if (isBuildBlocked(p)) {
                         itr.remove();
                         blockedProjects.put(p.task,new BlockedItem(p));
+                        statistics.blocked(getBlockageType(p));
                         continue;
                     }
 
@@ -810,10 +981,15 @@ public class Queue extends ResourceController implements Saveable {
                     // found a matching executor. use it.
                     WorkUnitContext wuc = new WorkUnitContext(p);
                     m.execute(wuc);
+                    recordStage(Stage.BUILDABLE, p);
 
                     itr.remove();
                     if (!wuc.getWorkUnits().isEmpty())
                         pendings.add(p);
+                    else {
+                        journalLeave(p);
+                        recordTotal(p);
+                    }
                 }
 
                 // we went over all the buildable projects and awaken
@@ -842,8 +1018,10 @@ public class Queue extends ResourceController implements Saveable {
                     LOGGER.fine("Pop returning " + offer.workUnit + " for " + exec.getName());
 
                     // TODO: I think this has to be done by the last executor that leaves the pop(), not by main executor
-                    if (offer.workUnit.isMainWork())
-                        pendings.remove(offer.workUnit.context.item);
+                    if (offer.workUnit.isMainWork() && pendings.remove(offer.workUnit.context.item)) {
+                        journalLeave(offer.workUnit.context.item);
+                        recordTotal(offer.workUnit.context.item);
+                    }
 
                     return offer.workUnit;
                 }
@@ -901,6 +1079,44 @@ public class Queue extends ResourceController implements Saveable {
         return false;
     }
 
+    /**
+     * Classifies why the given item is blocked, for {@link QueueStatistics}.
+     */
+    private String getBlockageType(Item i) {
+        ResourceActivity r = getBlockingActivity(i.task);
+        if (r != null)
+            return r == i.task ? "InProgress" : "ResourceInUse";
+
+        CauseOfBlockage c = i.task.getCauseOfBlockage();
+        if (c == null) {
+            for (QueueTaskDispatcher d : QueueTaskDispatcher.all()) {
+                if (d.canRun(i)!=null)
+                    return d.getClass().getSimpleName();
+            }
+            return "Unknown";
+        }
+        Class<?> t = c.getClass();
+        while (t.isAnonymousClass())
+            t = t.getSuperclass();  // such as CauseOfBlockage.fromMessage()
+        return t.getSimpleName();
+    }
+
+    /**
+     * Records the time the item spent in the stage it's leaving.
+     */
+    private void recordStage(Stage stage, NotWaitingItem i) {
+        if (i.stageStartMilliseconds > 0)  // unknown if the item was restored from the disk
+            statistics.record(stage, i, System.currentTimeMillis() - i.stageStartMilliseconds);
+    }
+
+    /**
+     * Records the total time the item spent in the queue, as it's picked up by an executor.
+     */
+    private void recordTotal(Item i) {
+        if (i.inQueueSince > 0)
+            statistics.record(Stage.TOTAL, i, System.currentTimeMillis() - i.inQueueSince);
+    }
+
     /**
      * Make sure we don't queue two tasks of the same project to be built
      * unless that project allows concurrent builds.
@@ -939,6 +1155,7 @@ public class Queue extends ResourceController implements Saveable {
                 // ready to be executed
                 LOGGER.fine(p.task.getFullDisplayName() + " no longer blocked");
                 itr.remove();
+                recordStage(Stage.BLOCKED, p);
                 makeBuildable(new BuildableItem(p));
             }
         }
@@ -950,6 +1167,8 @@ public class Queue extends ResourceController implements Saveable {
                 return; // finished moving all ready items from queue
 
             waitingList.remove(top);
+            if (top.inQueueSince > 0)
+                statistics.record(Stage.WAITING, top, System.currentTimeMillis() - top.inQueueSince);
             Task p = top.task;
             if (!isBuildBlocked(top) && allowNewBuildableTask(p)) {
                 // ready to be executed immediately
@@ -960,6 +1179,7 @@ public class Queue extends ResourceController implements Saveable {
                 // set this project aside.
                 LOGGER.fine(p.getFullDisplayName() + " is blocked");
                 blockedProjects.put(p,new BlockedItem(top));
+                statistics.blocked(getBlockageType(top));
             }
         }
 
@@ -970,23 +1190,14 @@ public class Queue extends ResourceController implements Saveable {
 
     private void makeBuildable(BuildableItem p) {
         if(Jenkins.FLYWEIGHT_SUPPORT && p.task instanceof FlyweightTask && !ifBlockedByHudsonShutdown(p.task)) {
-            ConsistentHash<Node> hash = new ConsistentHash<Node>(new Hash<Node>() {
-                public String hash(Node node) {
-                    return node.getNodeName();
-                }
-            });
-            Jenkins h = Jenkins.getInstance();
-            hash.add(h, h.getNumExecutors()*100);
-            for (Node n : h.getNodes())
-                hash.add(n,n.getNumExecutors()*100);
-
             Label lbl = p.getAssignedLabel();
-            for (Node n : hash.list(p.task.getFullDisplayName())) {
+            for (Node n : nodeHashRing.list(p.task.getFullDisplayName())) {
                 Computer c = n.toComputer();
                 if (c==null || c.isOffline())    continue;
                 if (lbl!=null && !lbl.contains(n))  continue;
                 if (n.canTake(p) != null) continue;
                 c.startFlyWeightTask(new WorkUnitContext(p).createWorkUnit(p.task));
+                recordStage(Stage.BUILDABLE, p);
                 pendings.add(p);
                 return;
             }
@@ -995,6 +1206,21 @@ public class Queue extends ResourceController implements Saveable {
         }
         
         buildables.put(p.task,p);
+
+        if (NodeProvisioner.EVENT_DRIVEN) {
+            // let the provisioner react to the queue growth right away
+            Label lbl = p.getAssignedLabel();
+            (lbl!=null ? lbl.nodeProvisioner : Jenkins.getInstance().overallNodeProvisioner).suggestReviewNow();
+        }
+    }
+
+    /**
+     * Rewrites <tt>queue.xml</tt> if enough changes have accumulated in the journal.
+     */
+    private synchronized void compactJournal() {
+        QueueJournal j = getJournal();
+        if (j!=null && j.needsCompaction())
+            save();
     }
 
     public static boolean ifBlockedByHudsonShutdown(Task task) {
@@ -1209,6 +1435,15 @@ public class Queue extends ResourceController implements Saveable {
 
         private /*almost final*/ transient FutureImpl future;
 
+        /**
+         * When was this item submitted to the queue? 0 if it's unknown
+         * because the item was persisted by an older version.
+         *
+         * @since 1.446
+         */
+        @Exported
+        public final long inQueueSince;
+
         /**
          * Build is blocked because another build is in progress,
          * required {@link Resource}s are not available, or otherwise blocked
@@ -1260,14 +1495,22 @@ public class Queue extends ResourceController implements Saveable {
         }
 
         protected Item(Task task, List<Action> actions, int id, FutureImpl future) {
+            this(task, actions, id, future, System.currentTimeMillis());
+        }
+
+        /**
+         * @since 1.446
+         */
+        protected Item(Task task, List<Action> actions, int id, FutureImpl future, long inQueueSince) {
             this.task = task;
             this.id = id;
             this.future = future;
+            this.inQueueSince = inQueueSince;
             for (Action action: actions) addAction(action);
         }
         
         protected Item(Item item) {
-        	this(item.task, item.getActions(), item.id, item.future);
+        	this(item.task, item.getActions(), item.id, item.future, item.inQueueSince);
         }
 
         /**
@@ -1342,6 +1585,30 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
     
+    /**
+     * Request to schedule a task, used for {@linkplain Queue#schedule(Collection) scheduling multiple tasks at once}.
+     *
+     * @since 1.446
+     */
+    public static final class ScheduleRequest {
+        public final Task task;
+        public final int quietPeriod;
+        /**
+         * Can contain null, which will be ignored.
+         */
+        public final List<Action> actions;
+
+        public ScheduleRequest(Task task, int quietPeriod, List<Action> actions) {
+            this.task = task;
+            this.quietPeriod = quietPeriod;
+            this.actions = actions;
+        }
+
+        public ScheduleRequest(Task task, int quietPeriod, Action... actions) {
+            this(task, quietPeriod, Arrays.asList(actions));
+        }
+    }
+
     /**
      * An optional interface for actions on Queue.Item.
      * Lets the action cooperate in queue management.
@@ -1432,6 +1699,12 @@ public class Queue extends ResourceController implements Saveable {
         @Exported
         public final long buildableStartMilliseconds;
 
+        /**
+         * When did this item enter its current stage? This is used for {@link QueueStatistics},
+         * and it's not persisted, so it's 0 for items restored from the disk.
+         */
+        /*package*/ transient long stageStartMilliseconds = System.currentTimeMillis();
+
         protected NotWaitingItem(WaitingItem wi) {
             super(wi);
             buildableStartMilliseconds = System.currentTimeMillis();
@@ -1539,6 +1812,12 @@ public class Queue extends ResourceController implements Saveable {
 
     private static final Logger LOGGER = Logger.getLogger(Queue.class.getName());
 
+    /**
+     * If true, changes to the queue are journaled so that they survive a crash.
+     * Otherwise the queue is only persisted upon an orderly shutdown.
+     */
+    public static boolean JOURNAL = !Boolean.getBoolean(Queue.class.getName()+".noJournal");
+
     /**
      * This {@link XStream} instance is used to persist {@link Task}s.
      */
@@ -1609,9 +1888,10 @@ public class Queue extends ResourceController implements Saveable {
 
         protected void doRun() {
             Queue q = queue.get();
-            if (q != null)
+            if (q != null) {
                 q.maintain();
-            else
+                q.compactJournal();
+            } else
                 cancel();
         }
     }
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.model.Queue.Item;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only log of the changes made to the {@link Queue} since it was last {@linkplain Queue#save() saved}.
+ *
+ * <p>
+ * Writing out <tt>queue.xml</tt> takes time proportional to the size of the whole queue, so instead of
+ * doing that for every change, {@link Queue} appends a small record here whenever an item enters it
+ * (or gets updated) and whenever it leaves. The snapshot is only rewritten when the journal
+ * {@linkplain #needsCompaction() grows long enough}, and {@link Queue#load()} replays the journal
+ * on top of the snapshot.
+ *
+ * <p>
+ * Each record consists of a type byte, {@link Item#id}, and for {@link #ENTER} records,
+ * the XStream serialization of the item. The last record may be cut short by a crash,
+ * in which case it's ignored.
+ *
+ * <p>
+ * Access to this object is guarded by the {@link Queue} lock.
+ *
+ * @since 1.446
+ */
+final class QueueJournal {
+    private final File file;
+
+    /**
+     * Lazily opened output stream, or null.
+     */
+    private DataOutputStream out;
+
+    /**
+     * Number of records written since the last {@link #reset()}.
+     */
+    private int records;
+
+    /**
+     * While true, records are not flushed individually. See {@link #beginBatch()}.
+     */
+    private boolean batching;
+
+    QueueJournal(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Records that the item has entered the queue, or was modified while in it
+     * (for example its quiet period was reset, or new actions were folded into it.)
+     */
+    public void enter(Item item) {
+        try {
+            byte[] data = Queue.XSTREAM.toXML(item).getBytes("UTF-8");
+            DataOutputStream o = open();
+            o.writeByte(ENTER);
+            o.writeInt(item.id);
+            o.writeInt(data.length);
+            o.write(data);
+            if (!batching)  o.flush();
+            records++;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to the queue journal "+file, e);
+            close();
+        }
+    }
+
+    /**
+     * Records that the item has left the queue, either because it's cancelled or handed to an executor.
+     */
+    public void leave(Item item) {
+        try {
+            DataOutputStream o = open();
+            o.writeByte(LEAVE);
+            o.writeInt(item.id);
+            if (!batching)  o.flush();
+            records++;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to the queue journal "+file, e);
+            close();
+        }
+    }
+
+    /**
+     * Starts writing multiple records at once, which are flushed together by {@link #endBatch()}.
+     */
+    public void beginBatch() {
+        batching = true;
+    }
+
+    public void endBatch() {
+        batching = false;
+        if (out!=null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write to the queue journal "+file, e);
+                close();
+            }
+        }
+    }
+
+    /**
+     * True if enough records have accumulated that the queue should be written out as a whole.
+     */
+    public boolean needsCompaction() {
+        return records >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Discards all the records. Called once the current state is safely persisted in <tt>queue.xml</tt>.
+     */
+    public void reset() {
+        close();
+        file.delete();
+        records = 0;
+    }
+
+    /**
+     * Applies the records on top of the items loaded from the snapshot.
+     *
+     * @param items
+     *      Items keyed by their {@link Item#id}, which gets updated in place.
+     *      The iteration order of the map is the order in which they will be put back to the queue.
+     */
+    public void replay(Map<Integer,Item> items) throws IOException {
+        if (!file.exists())     return;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int type;
+            while ((type=in.read())>=0) {
+                int id = in.readInt();
+                switch (type) {
+                case ENTER:
+                    int len = in.readInt();
+                    if (len<0 || len>file.length()) {
+                        LOGGER.warning("Corrupted record in the queue journal "+file+". Ignoring the rest");
+                        return;
+                    }
+                    byte[] data = new byte[len];
+                    in.readFully(data);
+                    try {
+                        Object o = Queue.XSTREAM.fromXML(new String(data, "UTF-8"));
+                        // remove first so that an updated item moves to the end, just like it did in the live queue
+                        items.remove(id);
+                        if (o instanceof Item && ((Item)o).task!=null)
+                            items.put(id, (Item)o);
+                    } catch (RuntimeException e) {
+                        // most likely the job no longer exists
+                        LOGGER.log(Level.WARNING, "Failed to restore the queue item #"+id+" from "+file, e);
+                        items.remove(id);
+                    }
+                    break;
+                case LEAVE:
+                    items.remove(id);
+                    break;
+                default:
+                    LOGGER.warning("Corrupted record in the queue journal "+file+". Ignoring the rest");
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            // the last record was cut short, presumably by a crash. everything before that is intact
+            LOGGER.log(Level.FINE, "Truncated record at the end of "+file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void close() {
+        if (out!=null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close the queue journal "+file, e);
+            }
+            out = null;
+        }
+    }
+
+    private DataOutputStream open() throws IOException {
+        if (out==null)
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file,true)));
+        return out;
+    }
+
+    private static final byte ENTER = 'E';
+    private static final byte LEAVE = 'L';
+
+    /**
+     * Number of records after which {@link Queue} rewrites <tt>queue.xml</tt> and truncates the journal.
+     */
+    public static int COMPACTION_THRESHOLD = Integer.getInteger(Queue.class.getName()+".journalCompactionThreshold",1000);
+
+    private static final Logger LOGGER = Logger.getLogger(QueueJournal.class.getName());
+}
@@ -70,6 +70,7 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.lang.ref.SoftReference;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -89,6 +90,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -233,6 +235,16 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      */
     private volatile transient Runner runner;
 
+    /**
+     * Cache of {@link #getArtifactManifest()}.
+     */
+    private volatile transient SoftReference<ArtifactManifest> artifactManifest;
+
+    /**
+     * Timestamp of {@link #getArtifactsDir()} when {@link #artifactManifest} was obtained.
+     */
+    private volatile transient long artifactManifestTimestamp;
+
     protected static final ThreadLocal<SimpleDateFormat> ID_FORMATTER =
             new ThreadLocal<SimpleDateFormat>() {
                 @Override
@@ -868,7 +880,8 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      */
     public List<Artifact> getArtifactsUpTo(int n) {
         ArtifactList r = new ArtifactList();
-        addArtifacts(getArtifactsDir(),"","",r,null,n);
+        ArtifactManifest m = getArtifactManifest();
+        addArtifacts(m!=null ? new ManifestDir(m) : new FileDir(getArtifactsDir()),"","",r,null,n);
         r.computeDisplayName();
         return r;
     }
@@ -880,36 +893,38 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      * The strange method name is so that we can access it from EL.
      */
     public boolean getHasArtifacts() {
+        ArtifactManifest m = getArtifactManifest();
+        if (m!=null)
+            return !m.isEmpty();
         return !getArtifactsUpTo(1).isEmpty();
     }
 
-    private int addArtifacts( File dir, String path, String pathHref, ArtifactList r, Artifact parent, int upTo ) {
+    private int addArtifacts( ArtifactDir dir, String path, String pathHref, ArtifactList r, Artifact parent, int upTo ) {
         String[] children = dir.list();
         if(children==null)  return 0;
-        Arrays.sort(children, String.CASE_INSENSITIVE_ORDER);
 
         int n = 0;
         for (String child : children) {
             String childPath = path + child;
             String childHref = pathHref + Util.rawEncode(child);
-            File sub = new File(dir, child);
-            String length = sub.isFile() ? String.valueOf(sub.length()) : "";
+            ArtifactDir sub = dir.getDir(child);
+            String length = sub==null ? dir.getLength(child) : "";
             boolean collapsed = (children.length==1 && parent!=null);
             Artifact a;
             if (collapsed) {
                 // Collapse single items into parent node where possible:
                 a = new Artifact(parent.getFileName() + '/' + child, childPath,
-                                 sub.isDirectory() ? null : childHref, length,
+                                 sub!=null ? null : childHref, length,
                                  parent.getTreeNodeId());
                 r.tree.put(a, r.tree.remove(parent));
             } else {
                 // Use null href for a directory:
                 a = new Artifact(child, childPath,
-                                 sub.isDirectory() ? null : childHref, length,
+                                 sub!=null ? null : childHref, length,
                                  "n" + ++r.idSeq);
                 r.tree.put(a, parent!=null ? parent.getTreeNodeId() : null);
             }
-            if (sub.isDirectory()) {
+            if (sub!=null) {
                 n += addArtifacts(sub, childPath + '/', childHref + '/', r, a, upTo-n);
                 if (n>=upTo) break;
             } else {
@@ -921,6 +936,169 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         return n;
     }
 
+    /**
+     * A directory in the artifact tree, as seen by {@link #addArtifacts}.
+     */
+    private static abstract class ArtifactDir {
+        /**
+         * Names of the children in the display order, or null if this is not a directory.
+         */
+        abstract String[] list();
+        /**
+         * Returns the given child if it is a directory, or null if it is a file.
+         */
+        abstract ArtifactDir getDir(String child);
+        /**
+         * Size of the given child file for display, or "" if it is not a regular file.
+         */
+        abstract String getLength(String child);
+    }
+
+    /**
+     * Walks the archive directory itself, for builds that are still running.
+     */
+    private static final class FileDir extends ArtifactDir {
+        private final File dir;
+
+        FileDir(File dir) {
+            this.dir = dir;
+        }
+
+        String[] list() {
+            String[] children = dir.list();
+            if (children!=null)
+                Arrays.sort(children, String.CASE_INSENSITIVE_ORDER);
+            return children;
+        }
+
+        ArtifactDir getDir(String child) {
+            File sub = new File(dir,child);
+            return sub.isDirectory() ? new FileDir(sub) : null;
+        }
+
+        String getLength(String child) {
+            File sub = new File(dir,child);
+            return sub.isFile() ? String.valueOf(sub.length()) : "";
+        }
+    }
+
+    /**
+     * Replays an {@link ArtifactManifest} as a directory tree.
+     */
+    private static final class ManifestDir extends ArtifactDir {
+        private final Map<String,ManifestDir> dirs = new HashMap<String,ManifestDir>();
+        private final Map<String,Long> files = new HashMap<String,Long>();
+
+        ManifestDir() {
+        }
+
+        ManifestDir(ArtifactManifest m) {
+            for (ArtifactManifest.Entry e : m.getEntries()) {
+                ManifestDir d = this;
+                String[] tokens = e.path.split("/");
+                for (int i=0; i<tokens.length-1; i++) {
+                    ManifestDir sub = d.dirs.get(tokens[i]);
+                    if (sub==null)
+                        d.dirs.put(tokens[i], sub=new ManifestDir());
+                    d = sub;
+                }
+                d.files.put(tokens[tokens.length-1], e.length);
+            }
+        }
+
+        String[] list() {
+            Set<String> names = new TreeSet<String>(dirs.keySet());
+            names.addAll(files.keySet());
+            String[] children = names.toArray(new String[names.size()]);
+            Arrays.sort(children, String.CASE_INSENSITIVE_ORDER);
+            return children;
+        }
+
+        ArtifactDir getDir(String child) {
+            return dirs.get(child);
+        }
+
+        String getLength(String child) {
+            Long length = files.get(child);
+            return length!=null && length>=0 ? String.valueOf(length) : "";
+        }
+    }
+
+    /**
+     * Gets the list of the archived files, as recorded when this build completed.
+     *
+     * <p>
+     * Builds from before manifests were recorded get theirs the first time this method is called.
+     * The manifest is also recorded again when files are added to or removed from the top of the archive
+     * directory after the fact. Code that changes deeper parts of the archive should call
+     * {@link #refreshArtifactManifest()}.
+     *
+     * @return
+     *      null while the build is in progress, as artifacts may still be added.
+     * @since 1.446
+     */
+    public ArtifactManifest getArtifactManifest() {
+        if (isBuilding())
+            return null;
+
+        File dir = getArtifactsDir();
+        File f = getArtifactManifestFile();
+        if (!dir.exists()) {
+            // never had any, or removed from underneath us, as ArtifactArchiver.isLatestOnly() does
+            if (artifactManifest!=null) {
+                f.delete();
+                artifactManifest = null;
+            }
+            return ArtifactManifest.EMPTY;
+        }
+
+        long timestamp = dir.lastModified();
+        SoftReference<ArtifactManifest> ref = artifactManifest;
+        ArtifactManifest m = ref!=null ? ref.get() : null;
+        if (m!=null && timestamp==artifactManifestTimestamp)
+            return m;
+
+        // if the archive directory changed after the manifest was written, the manifest is stale
+        if (m==null && f.lastModified()>=timestamp) {
+            try {
+                m = ArtifactManifest.load(f);
+            } catch (IOException e) {
+                LOGGER.log(WARNING, "Failed to load "+f, e);
+            }
+            if (m!=null) {
+                artifactManifestTimestamp = timestamp;
+                artifactManifest = new SoftReference<ArtifactManifest>(m);
+                return m;
+            }
+        }
+        return refreshArtifactManifest();
+    }
+
+    /**
+     * Walks {@link #getArtifactsDir()} and records what's in there, for when the archive
+     * was changed after the build completed.
+     *
+     * @since 1.446
+     */
+    public ArtifactManifest refreshArtifactManifest() {
+        File dir = getArtifactsDir();
+        // taken before the walk, so that changes made during the walk are picked up next time
+        long timestamp = dir.lastModified();
+        ArtifactManifest m = ArtifactManifest.scan(dir);
+        try {
+            m.save(getArtifactManifestFile());
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Failed to record the artifacts of "+this, e);
+        }
+        artifactManifestTimestamp = timestamp;
+        artifactManifest = new SoftReference<ArtifactManifest>(m);
+        return m;
+    }
+
+    private File getArtifactManifestFile() {
+        return new File(getRootDir(),"artifacts.manifest");
+    }
+
     /**
      * Maximum number of artifacts to list before using switching to the tree view.
      */
@@ -1203,6 +1381,8 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         File artifactsDir = getArtifactsDir();
 
         Util.deleteContentsRecursive(artifactsDir);
+        getArtifactManifestFile().delete();
+        artifactManifest = null;
     }
 
     /**
@@ -1458,6 +1638,9 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
                 if(listener!=null)
                     listener.closeQuietly();
 
+                if (getArtifactsDir().exists())
+                    refreshArtifactManifest();
+
                 try {
                     save();
                 } catch (IOException e) {
@@ -1678,7 +1861,11 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         if(Functions.isArtifactsPermissionEnabled()) {
           checkPermission(ARTIFACTS);
         }
-        return new DirectoryBrowserSupport(this,new FilePath(getArtifactsDir()), project.getDisplayName()+' '+getDisplayName(), "package.png", true);
+        DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this,new FilePath(getArtifactsDir()), project.getDisplayName()+' '+getDisplayName(), "package.png", true);
+        ArtifactManifest m = getArtifactManifest();
+        if (m!=null)
+            dbs.setFileList(m.getPaths());
+        return dbs;
     }
 
     /**
@@ -50,10 +50,12 @@ import javax.servlet.ServletException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,10 +72,49 @@ public class LabelAtom extends Label implements Saveable {
     @CopyOnWrite
     protected transient volatile List<Action> transientActions = new Vector<Action>();
 
+    /**
+     * {@link #getIndex()} plus one, or 0 if not computed yet.
+     * (Instances created by XStream bypass field initializers, hence the offset.)
+     */
+    private transient volatile int index;
+
     public LabelAtom(String name) {
         super(name);
     }
 
+    /**
+     * Position of this atom in the {@link BitSet}s given to {@link #matches(BitSet)}.
+     *
+     * <p>
+     * The index is tied to the name, so it stays the same even if the atom object gets
+     * discarded and recreated.
+     *
+     * @since 1.446
+     */
+    public int getIndex() {
+        int i = index;
+        if (i==0)
+            index = i = indexOf(name)+1;
+        return i-1;
+    }
+
+    /**
+     * Gets the {@linkplain #getIndex() index} of the atom of the given name, allocating one if necessary.
+     *
+     * @since 1.446
+     */
+    public static int indexOf(String name) {
+        Integer i = INDICES.get(name);
+        if (i==null) {
+            synchronized (INDICES) {
+                i = INDICES.get(name);
+                if (i==null)
+                    INDICES.put(name, i=INDICES.size());
+            }
+        }
+        return i;
+    }
+
     /**
      * If the label contains 'unsafe' chars, escape them.
      */
@@ -146,6 +187,11 @@ public class LabelAtom extends Label implements Saveable {
         return resolver.resolve(name);
     }
 
+    @Override
+    public boolean matches(BitSet atoms) {
+        return atoms.get(getIndex());
+    }
+
     @Override
     public <V, P> V accept(LabelVisitor<V, P> visitor, P param) {
         return visitor.onAtom(this,param);
@@ -251,6 +297,12 @@ public class LabelAtom extends Label implements Saveable {
 
     private static final Logger LOGGER = Logger.getLogger(LabelAtom.class.getName());
 
+    /**
+     * Atom names to their indices. Entries are never removed, so that indices stay stable
+     * and {@link BitSet}s computed earlier remain valid.
+     */
+    private static final ConcurrentHashMap<String,Integer> INDICES = new ConcurrentHashMap<String,Integer>();
+
     private static final XStream2 XSTREAM = new XStream2();
 
     static {
@@ -26,6 +26,8 @@ package hudson.model.labels;
 import hudson.model.Label;
 import hudson.util.VariableResolver;
 
+import java.util.BitSet;
+
 /**
  * Boolean expression of labels.
  * 
@@ -55,6 +57,11 @@ public abstract class LabelExpression extends Label {
             return !base.matches(resolver);
         }
 
+        @Override
+        public boolean matches(BitSet atoms) {
+            return !base.matches(atoms);
+        }
+
         @Override
         public <V, P> V accept(LabelVisitor<V, P> visitor, P param) {
             return visitor.onNot(this, param);
@@ -82,6 +89,11 @@ public abstract class LabelExpression extends Label {
             return base.matches(resolver);
         }
 
+        @Override
+        public boolean matches(BitSet atoms) {
+            return base.matches(atoms);
+        }
+
         @Override
         public <V, P> V accept(LabelVisitor<V, P> visitor, P param) {
             return visitor.onParen(this, param);
@@ -124,6 +136,11 @@ public abstract class LabelExpression extends Label {
             return op(lhs.matches(resolver),rhs.matches(resolver));
         }
 
+        @Override
+        public boolean matches(BitSet atoms) {
+            return op(lhs.matches(atoms),rhs.matches(atoms));
+        }
+
         protected abstract boolean op(boolean a, boolean b);
     }
 
@@ -0,0 +1,330 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.Extension;
+import hudson.init.Initializer;
+import hudson.model.AbstractProject;
+import hudson.model.Cause;
+import hudson.model.Cause.UserCause;
+import hudson.model.Cause.UserIdCause;
+import hudson.model.Job;
+import hudson.model.JobProperty;
+import hudson.model.JobPropertyDescriptor;
+import hudson.model.Queue;
+import hudson.model.Queue.BuildableItem;
+import hudson.model.Queue.Task;
+import hudson.util.TimeUnit2;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import static hudson.init.InitMilestone.JOB_LOADED;
+
+/**
+ * {@link QueueSorter} that shares executors fairly between users and folders, honoring job priorities.
+ *
+ * <p>
+ * Each buildable item is given a sort key once, when it's first seen:
+ * the time it became buildable, pushed back so that successive items of the same owner
+ * (the user who started it, or else the {@link hudson.model.ItemGroup} the job is in)
+ * are at least {@link #QUANTUM} apart, and pulled forward by {@link #PRIORITY_STEP}
+ * for each level of {@link PriorityProperty}. Since the key is a point in time,
+ * an item that waits long enough will eventually overtake items with higher priority,
+ * so nothing starves. Once an owner has nothing buildable left, its items are done, however early they got
+ * to run, so its next item is pushed back from the present instead of from the keys of those items.
+ *
+ * <p>
+ * Because the key of an item never changes, items are kept in a sorted tree that's updated
+ * only by the items that entered or left the buildable list since the last call,
+ * instead of sorting the whole list in every queue maintenance.
+ *
+ * <p>
+ * This sorter is not installed by default. Set the <tt>hudson.model.queue.FairShareQueueSorter.enabled</tt>
+ * system property to true to use it.
+ *
+ * @since 1.446
+ */
+public class FairShareQueueSorter extends QueueSorter {
+    /**
+     * Items that were in the buildable list the last time, in the order they should be built.
+     */
+    private final TreeSet<Entry> order = new TreeSet<Entry>();
+
+    /**
+     * Same entries as {@link #order}, keyed by {@link Queue.Item#id}.
+     */
+    private final Map<Integer,Entry> entries = new HashMap<Integer,Entry>();
+
+    /**
+     * Fair share state of each owner.
+     */
+    private final Map<String,Owner> owners = new HashMap<String,Owner>();
+
+    /**
+     * Incremented every time {@link #sortBuildableItems(List)} is called, to detect the items that left.
+     */
+    private int generation;
+
+    @Override
+    public synchronized void sortBuildableItems(List<BuildableItem> buildables) {
+        generation++;
+
+        List<BuildableItem> added = new ArrayList<BuildableItem>();
+        for (BuildableItem bi : buildables) {
+            Entry e = entries.get(bi.id);
+            if (e==null) {
+                added.add(bi);
+                continue;
+            }
+            e.item = bi;    // the item object gets recreated as it goes through the queue
+            e.generation = generation;
+        }
+
+        // forget the items that are no longer buildable before keying the new ones,
+        // so that the new ones see which owners have nothing left
+        for (Iterator<Entry> itr = entries.values().iterator(); itr.hasNext();) {
+            Entry e = itr.next();
+            if (e.generation!=generation) {
+                itr.remove();
+                order.remove(e);
+                if (e.owner!=null)
+                    e.owner.buildables--;
+            }
+        }
+
+        for (BuildableItem bi : added) {
+            String name = getOwner(bi);
+            Owner o = null;
+            if (name!=null) {
+                o = owners.get(name);
+                if (o==null)
+                    owners.put(name, o=new Owner());
+            }
+            Entry e = new Entry(bi.id, computeKey(bi,o), o);
+            e.item = bi;
+            e.generation = generation;
+            entries.put(bi.id,e);
+            order.add(e);
+            if (o!=null)
+                o.buildables++;
+        }
+
+        // even without new items the list can be out of order, as an item that was blocked
+        // in between two calls keeps its key but comes back at the end of the list
+        ListIterator<BuildableItem> litr = buildables.listIterator();
+        for (Entry e : order) {
+            if (litr.next()!=e.item)
+                litr.set(e.item);
+        }
+
+        if (owners.size()>buildables.size()*2)
+            purgeOwners();
+    }
+
+    /**
+     * Computes the sort key of a newly buildable item. Smaller keys are built first.
+     *
+     * @param o
+     *      The owner of the item, or null if the item is exempt from the fair share.
+     */
+    private long computeKey(BuildableItem bi, Owner o) {
+        long key = bi.buildableStartMilliseconds;
+
+        if (o!=null) {
+            if (o.lastKey!=null) {
+                long last = o.lastKey;
+                if (o.buildables==0)
+                    // everything before was built already, so don't keep pushing back from the future
+                    last = Math.min(last, System.currentTimeMillis());
+                key = Math.max(key, last+QUANTUM);
+            }
+            o.lastKey = key;
+        }
+
+        return key - getPriority(bi)*PRIORITY_STEP;
+    }
+
+    /**
+     * Determines whose share the item counts against.
+     *
+     * @return
+     *      null to exempt the item from the fair share.
+     */
+    protected String getOwner(BuildableItem bi) {
+        for (Cause c : bi.getCauses()) {
+            if (c instanceof UserIdCause)
+                return "user:"+((UserIdCause)c).getUserId();
+            if (c instanceof UserCause)
+                return "user:"+((UserCause)c).getUserName();
+        }
+        AbstractProject<?,?> p = getProject(bi.task);
+        if (p!=null)
+            return "group:"+p.getParent().getFullName();
+        return null;
+    }
+
+    /**
+     * Determines the priority of the item. Higher values are built first,
+     * and the default priority is 0.
+     */
+    protected int getPriority(BuildableItem bi) {
+        AbstractProject<?,?> p = getProject(bi.task);
+        if (p!=null) {
+            PriorityProperty pp = p.getProperty(PriorityProperty.class);
+            if (pp!=null)
+                return pp.getPriority();
+        }
+        return 0;
+    }
+
+    private static AbstractProject<?,?> getProject(Task t) {
+        if (t instanceof AbstractProject)
+            // matrix configurations and the likes inherit the settings from their root project
+            return ((AbstractProject<?,?>)t).getRootProject();
+        return null;
+    }
+
+    /**
+     * Owners with nothing buildable and whose last key is in the past have no effect on new items, so drop them.
+     */
+    private void purgeOwners() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Owner> itr = owners.values().iterator(); itr.hasNext();) {
+            Owner o = itr.next();
+            if (o.buildables==0 && (o.lastKey==null || o.lastKey+QUANTUM<now))
+                itr.remove();
+        }
+    }
+
+    private static final class Owner {
+        /**
+         * Key given to the last item of this owner, before the priority is applied.
+         */
+        Long lastKey;
+        /**
+         * Number of items of this owner in the buildable list.
+         */
+        int buildables;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final int id;
+        final long key;
+        final Owner owner;
+        BuildableItem item;
+        int generation;
+
+        Entry(int id, long key, Owner owner) {
+            this.id = id;
+            this.key = key;
+            this.owner = owner;
+        }
+
+        public int compareTo(Entry that) {
+            if (this.key<that.key)  return -1;
+            if (this.key>that.key)  return 1;
+            return this.id<that.id ? -1 : (this.id==that.id ? 0 : 1);
+        }
+    }
+
+    /**
+     * Priority of a job, used by {@link FairShareQueueSorter}.
+     */
+    public static class PriorityProperty extends JobProperty<AbstractProject<?,?>> {
+        private final int priority;
+
+        @DataBoundConstructor
+        public PriorityProperty(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Higher values are built first. 0 is the default.
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        @Extension
+        public static class DescriptorImpl extends JobPropertyDescriptor {
+            @Override
+            public boolean isApplicable(Class<? extends Job> jobType) {
+                return ENABLED && super.isApplicable(jobType);
+            }
+
+            @Override
+            public JobProperty<?> newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+                if (formData.isNullObject())    return null;
+                JSONObject o = formData.getJSONObject("queuePriority");
+                if (o.isNullObject())   return null;
+                return req.bindJSON(PriorityProperty.class,o);
+            }
+
+            @Override
+            public String getDisplayName() {
+                return Messages.FairShareQueueSorter_PriorityProperty_DisplayName();
+            }
+        }
+    }
+
+    /**
+     * Installs this sorter if it's enabled and no other sorter has been set.
+     */
+    @Initializer(after=JOB_LOADED)
+    public static void install() {
+        if (!ENABLED)   return;
+
+        Queue q = Jenkins.getInstance().getQueue();
+        if (q.getSorter()!=null) {
+            LOGGER.warning("FairShareQueueSorter is enabled but another QueueSorter is already installed: "+q.getSorter());
+            return;
+        }
+        q.setSorter(new FairShareQueueSorter());
+    }
+
+    public static boolean ENABLED = Boolean.getBoolean(FairShareQueueSorter.class.getName()+".enabled");
+
+    /**
+     * Minimum distance between keys of the items of the same owner, in milliseconds.
+     */
+    public static long QUANTUM = Long.getLong(FairShareQueueSorter.class.getName()+".quantum", TimeUnit2.MINUTES.toMillis(1));
+
+    /**
+     * How much earlier an item is treated to have become buildable for each level of priority, in milliseconds.
+     */
+    public static long PRIORITY_STEP = Long.getLong(FairShareQueueSorter.class.getName()+".priorityStep", TimeUnit2.MINUTES.toMillis(10));
+
+    private static final Logger LOGGER = Logger.getLogger(FairShareQueueSorter.class.getName());
+}
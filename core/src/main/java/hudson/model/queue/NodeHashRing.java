@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.queue.MappingWorksheet.ExecutorChunk;
+import hudson.slaves.ComputerListener;
+import hudson.util.ConsistentHash;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link ConsistentHash} of all the {@link Node}s in the system, weighted by their number of executors.
+ *
+ * <p>
+ * {@link hudson.model.LoadBalancer#CONSISTENT_HASH} and the placement of flyweight tasks used to
+ * build a new consistent hash for every scheduling decision, which means computing 100 MD5s per executor
+ * and sorting them each time. Nodes change far less often than tasks get scheduled, so this class keeps
+ * one ring that's only updated when the node configuration changes, and then only for the nodes
+ * that were actually added, removed, or resized.
+ *
+ * <p>
+ * The ring is keyed by {@linkplain Node#getNodeName() node names}, so a task is mapped to the same node
+ * as before.
+ *
+ * @see Queue#getNodeHashRing()
+ * @since 1.446
+ */
+public final class NodeHashRing {
+    private final ConsistentHash<String> hash = new ConsistentHash<String>();
+
+    /**
+     * Node names to their number of replicas currently in {@link #hash}.
+     */
+    private final Map<String,Integer> replicas = new HashMap<String,Integer>();
+
+    /**
+     * Node names to nodes, as of the last {@link #update()}.
+     */
+    private volatile Map<String,Node> nodes = Collections.emptyMap();
+
+    private volatile boolean dirty = true;
+
+    /**
+     * Marks the ring as stale, so that it'll be brought up to date when it's used next time.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Lists up all the nodes in the order of preference for the given key.
+     */
+    public Iterable<Node> list(String key) {
+        if (dirty)  update();
+        final Map<String,Node> nodes = this.nodes;
+        final Iterable<String> names = hash.list(key);
+        return new Iterable<Node>() {
+            public Iterator<Node> iterator() {
+                final Iterator<String> itr = names.iterator();
+                return new Iterator<Node>() {
+                    private Node next;
+
+                    public boolean hasNext() {
+                        while (next==null && itr.hasNext())
+                            next = nodes.get(itr.next());   // null if the node is gone since then
+                        return next!=null;
+                    }
+
+                    public Node next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        Node n = next;
+                        next = null;
+                        return n;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Sorts the given executor chunks in the order of preference for the given key.
+     *
+     * <p>
+     * Chunks whose nodes aren't in the ring (which can only happen if the node configuration
+     * has changed concurrently) are put at the end.
+     */
+    public List<ExecutorChunk> sort(String key, Collection<ExecutorChunk> chunks) {
+        if (dirty)  update();
+
+        Map<String,ExecutorChunk> remaining = new LinkedHashMap<String,ExecutorChunk>();
+        for (ExecutorChunk ec : chunks)
+            remaining.put(ec.getName(),ec);
+
+        List<ExecutorChunk> r = new ArrayList<ExecutorChunk>(remaining.size());
+        for (Iterator<String> itr = hash.list(key).iterator(); itr.hasNext() && !remaining.isEmpty(); ) {
+            ExecutorChunk ec = remaining.remove(itr.next());
+            if (ec!=null)   r.add(ec);
+        }
+        r.addAll(remaining.values());
+        return r;
+    }
+
+    /**
+     * Brings the ring in sync with the current set of nodes.
+     */
+    private synchronized void update() {
+        if (!dirty)     return;
+        dirty = false;  // clear this first, so that a concurrent change will be picked up next time
+
+        Jenkins h = Jenkins.getInstance();
+        Map<String,Node> nodes = new HashMap<String,Node>();
+        nodes.put(h.getNodeName(),h);
+        for (Node n : h.getNodes())
+            nodes.put(n.getNodeName(),n);
+
+        Map<String,Integer> delta = new HashMap<String,Integer>();
+        for (Node n : nodes.values()) {
+            int r = n.getNumExecutors()*100;
+            Integer old = replicas.get(n.getNodeName());
+            if (old==null || old!=r)
+                delta.put(n.getNodeName(),r);
+        }
+        for (String name : replicas.keySet())
+            if (!nodes.containsKey(name))
+                delta.put(name,0);
+
+        hash.addAll(delta);
+        for (Map.Entry<String,Integer> e : delta.entrySet()) {
+            if (e.getValue()==0)    replicas.remove(e.getKey());
+            else                    replicas.put(e.getKey(),e.getValue());
+        }
+        this.nodes = nodes;
+    }
+
+    /**
+     * Invalidates the ring whenever nodes are added, removed, or reconfigured.
+     */
+    @Extension
+    public static class ListenerImpl extends ComputerListener {
+        @Override
+        public void onConfigurationChange() {
+            Jenkins h = Jenkins.getInstance();
+            if (h!=null)
+                h.getQueue().getNodeHashRing().invalidate();
+        }
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Api;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.model.ManagementLink;
+import hudson.model.MultiStageTimeSeries;
+import hudson.model.MultiStageTimeSeries.TimeScale;
+import hudson.model.MultiStageTimeSeries.TrendChart;
+import hudson.model.PeriodicWork;
+import hudson.model.Queue;
+import hudson.model.Queue.Item;
+import hudson.util.ColorPalette;
+import hudson.util.TimeUnit2;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how long {@link Item}s spend in each stage of the {@link Queue},
+ * per {@link Label} and per {@link Queue.Task}, as well as why they get blocked.
+ *
+ * <p>
+ * {@link Queue} reports each transition of an item, and the statistics are accumulated into
+ * fixed-size {@link Histogram}s. In addition, the average time in the queue for the whole system
+ * and for each label is tracked over time as {@link MultiStageTimeSeries}, just like {@link LoadStatistics}.
+ * Per-task statistics only keep histograms, since there can be a lot of them.
+ *
+ * <p>
+ * This object is bound to <tt>/queue/statistics</tt>.
+ *
+ * @since 1.446
+ */
+@ExportedBean
+public final class QueueStatistics {
+    /**
+     * Stages of the queue whose duration is measured.
+     */
+    public enum Stage {
+        /**
+         * Time spent in the quiet period.
+         */
+        WAITING,
+        /**
+         * Time spent blocked, for example because another build of the same task is in progress.
+         */
+        BLOCKED,
+        /**
+         * Time spent waiting for an available executor.
+         */
+        BUILDABLE,
+        /**
+         * Total time from the submission to the queue until an executor picks it up.
+         */
+        TOTAL
+    }
+
+    private final WaitTimes overall = new WaitTimes(null,true);
+
+    private final ConcurrentMap<String,WaitTimes> labels = new ConcurrentHashMap<String,WaitTimes>();
+
+    private final ConcurrentMap<String,WaitTimes> tasks = new ConcurrentHashMap<String,WaitTimes>();
+
+    /**
+     * Number of times items got blocked, keyed by the type of the blockage.
+     */
+    private final ConcurrentMap<String,AtomicLong> blockages = new ConcurrentHashMap<String,AtomicLong>();
+
+    /**
+     * Records the time an item spent in the given stage.
+     */
+    public void record(Stage stage, Item item, long duration) {
+        if (duration<0)     duration = 0;   // clock skew
+
+        overall.record(stage,duration);
+        Label l = item.getAssignedLabel();
+        if (l!=null)
+            getOrCreate(labels,l.getName(),true).record(stage,duration);
+        getOrCreate(tasks,item.task.getFullDisplayName(),false).record(stage,duration);
+    }
+
+    /**
+     * Records that an item got blocked.
+     *
+     * @param type
+     *      Identifies the kind of the blockage, such as the class name of {@link CauseOfBlockage}.
+     */
+    public void blocked(String type) {
+        AtomicLong c = blockages.get(type);
+        if (c==null) {
+            AtomicLong n = new AtomicLong();
+            c = blockages.putIfAbsent(type,n);
+            if (c==null)    c = n;
+        }
+        c.incrementAndGet();
+    }
+
+    private WaitTimes getOrCreate(ConcurrentMap<String,WaitTimes> map, String name, boolean withTrend) {
+        WaitTimes w = map.get(name);
+        if (w==null) {
+            WaitTimes n = new WaitTimes(name,withTrend);
+            w = map.putIfAbsent(name,n);
+            if (w==null)    w = n;
+        }
+        return w;
+    }
+
+    /**
+     * Statistics of all the items.
+     */
+    @Exported
+    public WaitTimes getOverall() {
+        return overall;
+    }
+
+    /**
+     * Statistics per label, sorted by name.
+     */
+    @Exported
+    public List<WaitTimes> getLabels() {
+        return sorted(labels);
+    }
+
+    /**
+     * Statistics per task, sorted by name.
+     */
+    @Exported
+    public List<WaitTimes> getTasks() {
+        return sorted(tasks);
+    }
+
+    public WaitTimes getLabel(String name) {
+        return labels.get(name);
+    }
+
+    public WaitTimes getTask(String name) {
+        return tasks.get(name);
+    }
+
+    /**
+     * Number of times items got blocked, keyed by the type of the blockage.
+     */
+    @Exported
+    public Map<String,Long> getBlockages() {
+        Map<String,Long> r = new TreeMap<String,Long>();
+        for (Map.Entry<String,AtomicLong> e : blockages.entrySet())
+            r.put(e.getKey(),e.getValue().get());
+        return r;
+    }
+
+    private static List<WaitTimes> sorted(Map<String,WaitTimes> map) {
+        return new ArrayList<WaitTimes>(new TreeMap<String,WaitTimes>(map).values());
+    }
+
+    /**
+     * Called periodically to push the data points to the trend, and to discard stale per-task records.
+     */
+    /*package*/ void tick() {
+        overall.tick();
+        for (WaitTimes w : labels.values())
+            w.tick();
+
+        long threshold = System.currentTimeMillis()-RETENTION;
+        for (Iterator<WaitTimes> itr = tasks.values().iterator(); itr.hasNext();)
+            if (itr.next().lastRecorded<threshold)
+                itr.remove();
+    }
+
+    /**
+     * Formats the duration for display. Used from views.
+     */
+    public String timeSpan(long duration) {
+        return Util.getTimeSpanString(duration);
+    }
+
+    public Api getApi() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return new Api(this);
+    }
+
+    /**
+     * Time spent in the queue by items of a label, a task, or the whole system.
+     */
+    @ExportedBean(defaultVisibility=2)
+    public static final class WaitTimes {
+        /**
+         * Name of the label or the task, or null for the whole system.
+         */
+        @Exported
+        public final String name;
+
+        private final Histogram[] histograms = new Histogram[Stage.values().length];
+
+        /**
+         * Average time in seconds that items spent in the queue, and how it changes over time.
+         * Null for per-task statistics.
+         */
+        @Exported
+        public final MultiStageTimeSeries queueTime;
+
+        /**
+         * When was the last time something was recorded?
+         */
+        private volatile long lastRecorded = System.currentTimeMillis();
+
+        /**
+         * Total time in the queue and the number of items since the last {@link #tick()}.
+         */
+        private long tickTotal;
+        private int tickCount;
+
+        private WaitTimes(String name, boolean withTrend) {
+            this.name = name;
+            for (int i=0; i<histograms.length; i++)
+                histograms[i] = new Histogram();
+            this.queueTime = withTrend ? new MultiStageTimeSeries(
+                    Messages._QueueStatistics_Legends_QueueTime(), ColorPalette.BLUE, 0, LoadStatistics.DECAY) : null;
+        }
+
+        private void record(Stage stage, long duration) {
+            histograms[stage.ordinal()].add(duration);
+            lastRecorded = System.currentTimeMillis();
+            if (stage==Stage.TOTAL) {
+                synchronized (this) {
+                    tickTotal += duration;
+                    tickCount++;
+                }
+            }
+        }
+
+        private synchronized void tick() {
+            if (queueTime==null)    return;
+            queueTime.update(tickCount==0 ? 0 : tickTotal/tickCount/1000f);
+            tickTotal = 0;
+            tickCount = 0;
+        }
+
+        public Histogram getHistogram(Stage stage) {
+            return histograms[stage.ordinal()];
+        }
+
+        @Exported
+        public Histogram getWaiting() {
+            return getHistogram(Stage.WAITING);
+        }
+
+        @Exported
+        public Histogram getBlocked() {
+            return getHistogram(Stage.BLOCKED);
+        }
+
+        @Exported
+        public Histogram getBuildable() {
+            return getHistogram(Stage.BUILDABLE);
+        }
+
+        @Exported
+        public Histogram getTotal() {
+            return getHistogram(Stage.TOTAL);
+        }
+
+        /**
+         * Generates the trend graph of the average time in the queue.
+         */
+        public TrendChart doGraph(@QueryParameter String type) {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            if (queueTime==null)    return null;
+            return MultiStageTimeSeries.createTrendChart(TimeScale.parse(type),queueTime);
+        }
+    }
+
+    /**
+     * Distribution of durations, bucketed by {@link #BOUNDS}.
+     */
+    @ExportedBean(defaultVisibility=3)
+    public static final class Histogram {
+        /**
+         * counts[i] is the number of durations less than BOUNDS[i] (and no less than BOUNDS[i-1].)
+         * The last entry counts everything above.
+         */
+        private final long[] counts = new long[BOUNDS.length+1];
+        private long count, sum, max;
+
+        public synchronized void add(long duration) {
+            int i=0;
+            while (i<BOUNDS.length && duration>=BOUNDS[i])
+                i++;
+            counts[i]++;
+            count++;
+            sum += duration;
+            max = Math.max(max,duration);
+        }
+
+        /**
+         * Number of data points.
+         */
+        @Exported
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Mean duration in milliseconds.
+         */
+        @Exported
+        public synchronized long getMean() {
+            return count==0 ? 0 : sum/count;
+        }
+
+        /**
+         * Longest duration in milliseconds.
+         */
+        @Exported
+        public synchronized long getMax() {
+            return max;
+        }
+
+        /**
+         * Number of data points in each bucket. See {@link #getBounds()}.
+         */
+        @Exported
+        public synchronized long[] getCounts() {
+            return counts.clone();
+        }
+
+        /**
+         * Upper bounds of buckets in milliseconds, except the last bucket, which doesn't have one.
+         */
+        @Exported
+        public long[] getBounds() {
+            return BOUNDS.clone();
+        }
+
+        /**
+         * Estimates the given percentile, by the upper bound of the bucket that contains it.
+         *
+         * @param p
+         *      0 &lt; p &lt;= 100
+         * @return
+         *      Duration in milliseconds.
+         */
+        public synchronized long getPercentile(double p) {
+            long threshold = (long)Math.ceil(count*p/100);
+            long n=0;
+            for (int i=0; i<BOUNDS.length; i++) {
+                n += counts[i];
+                if (n>=threshold)
+                    return Math.min(BOUNDS[i],max);
+            }
+            return max;
+        }
+
+        @Exported
+        public long getMedian() {
+            return getPercentile(50);
+        }
+
+        @Exported
+        public long getPercentile90() {
+            return getPercentile(90);
+        }
+    }
+
+    /**
+     * Bucket boundaries of {@link Histogram}s.
+     */
+    private static final long[] BOUNDS = {
+        TimeUnit2.SECONDS.toMillis(1),
+        TimeUnit2.SECONDS.toMillis(5),
+        TimeUnit2.SECONDS.toMillis(15),
+        TimeUnit2.SECONDS.toMillis(30),
+        TimeUnit2.MINUTES.toMillis(1),
+        TimeUnit2.MINUTES.toMillis(5),
+        TimeUnit2.MINUTES.toMillis(15),
+        TimeUnit2.MINUTES.toMillis(30),
+        TimeUnit2.HOURS.toMillis(1),
+        TimeUnit2.HOURS.toMillis(3),
+    };
+
+    /**
+     * Per-task records that haven't been updated for this long are discarded.
+     */
+    private static final long RETENTION = TimeUnit2.DAYS.toMillis(7);
+
+    /**
+     * Periodically pushes data points to the trends.
+     */
+    @Extension
+    public static class Updater extends PeriodicWork {
+        public long getRecurrencePeriod() {
+            return LoadStatistics.CLOCK;
+        }
+
+        protected void doRun() {
+            Jenkins.getInstance().getQueue().getStatistics().tick();
+        }
+    }
+
+    /**
+     * Exposes the statistics in the "manage Jenkins" page.
+     */
+    @Extension
+    public static class LinkImpl extends ManagementLink {
+        @Override
+        public String getIconFileName() {
+            return "monitor.png";
+        }
+
+        @Override
+        public String getUrlName() {
+            return "queue/statistics";
+        }
+
+        public String getDisplayName() {
+            return Messages.QueueStatistics_DisplayName();
+        }
+
+        @Override
+        public String getDescription() {
+            return Messages.QueueStatistics_Description();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Node.Mode;
+import hudson.model.PeriodicWork;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.scheduler.CronTabList;
+import hudson.triggers.TimerTrigger;
+import hudson.util.TimeUnit2;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Predicts the load of the builds that {@link TimerTrigger}s are going to start.
+ *
+ * <p>
+ * For each job with a timer, this predictor figures out when it fires next, how long the build is
+ * likely to take (a high percentile of its recent build durations, so that a slow night isn't missed),
+ * and which node it will probably land on (the first suitable node in the {@linkplain Queue#getNodeHashRing() consistent hash}
+ * that {@link hudson.model.LoadBalancer#CONSISTENT_HASH} uses.) {@link MappingWorksheet} then holds back
+ * executors that would still be busy when those builds start, so that long builds avoid the nodes
+ * a scheduled job is about to need, while short builds can still fill the gap before it.
+ * {@link BackFiller} takes this into account, too.
+ *
+ * <p>
+ * Computing this for every job is too expensive to do in every scheduling decision, which happens
+ * under the queue lock, so the forecast is rebuilt by {@link Refresher} every {@link #REFRESH_INTERVAL}
+ * and the scheduling only looks it up.
+ *
+ * <p>
+ * This predictor is off unless the {@code hudson.model.queue.ScheduledLoadPredictor.enabled} system property is set.
+ *
+ * @since 1.446
+ */
+@Extension
+public class ScheduledLoadPredictor extends LoadPredictor {
+    /**
+     * Node name to the builds predicted to start there within {@link #HORIZON}, sorted by their start time.
+     */
+    private volatile Map<String,List<Prediction>> forecast = Collections.emptyMap();
+
+    /**
+     * Durations estimated from the build history, keyed by job. Only recomputed when a new build is completed.
+     */
+    private final Map<AbstractProject<?,?>,Estimate> estimates = new WeakHashMap<AbstractProject<?,?>,Estimate>();
+
+    @Override
+    public Iterable<FutureLoad> predict(MappingWorksheet plan, Computer computer, long start, long end) {
+        if (!ENABLED)   return Collections.emptyList();
+
+        List<Prediction> predictions = forecast.get(computer.getName());
+        if (predictions==null)  return Collections.emptyList();
+
+        List<FutureLoad> r = new ArrayList<FutureLoad>();
+        for (Prediction p : predictions) {
+            if (p.start>=end)   break;  // sorted by the start time, so nothing else will overlap
+            if (p.start+p.duration<=start)  continue;
+            if (plan!=null && plan.item!=null && plan.item.task==p.job)
+                continue;   // the job can't be in its own way
+            r.add(new FutureLoad(p.start,p.duration,1));
+        }
+        return r;
+    }
+
+    /**
+     * Rebuilds {@link #forecast}.
+     */
+    protected synchronized void refresh(long now) {
+        Jenkins h = Jenkins.getInstance();
+        Map<String,List<Prediction>> forecast = new HashMap<String,List<Prediction>>();
+        for (AbstractProject<?,?> p : h.getAllItems(AbstractProject.class)) {
+            TimerTrigger t = p.getTrigger(TimerTrigger.class);
+            if (t==null || p.isDisabled())  continue;
+            CronTabList tabs = t.getCronTabList();
+            if (tabs==null) continue;
+
+            Node n = predictNode(p);
+            if (n==null)    continue;
+
+            long duration = estimateDuration(p);
+            List<Prediction> l = forecast.get(n.getNodeName());
+            if (l==null)
+                forecast.put(n.getNodeName(), l=new ArrayList<Prediction>());
+
+            long limit = now+HORIZON;
+            long time = now;
+            Prediction last = null;
+            for (int i=0; i<MAX_FIRES; i++) {
+                Calendar next = tabs.ceil(time);
+                if (next==null || next.getTimeInMillis()>=limit)    break;
+                time = next.getTimeInMillis()+TimeUnit2.MINUTES.toMillis(1);
+
+                long start = next.getTimeInMillis();
+                if (last!=null && start<last.start+last.duration && !p.isConcurrentBuild()) {
+                    // the previous build is still running, so this one waits in the queue until it's done,
+                    // and the timer firing again before then doesn't add another build
+                    if (start<=last.start)  continue;
+                    start = last.start+last.duration;
+                    if (start>=limit)   break;
+                }
+                l.add(last=new Prediction(p,start,duration));
+            }
+        }
+
+        for (List<Prediction> l : forecast.values())
+            Collections.sort(l,START_TIME);
+        this.forecast = forecast;
+    }
+
+    /**
+     * Which node will the next build of this job most likely run on?
+     */
+    protected Node predictNode(AbstractProject<?,?> p) {
+        Label l = p.getAssignedLabel();
+        for (Node n : Jenkins.getInstance().getQueue().getNodeHashRing().list(p.getFullDisplayName())) {
+            if (l==null ? n.getMode()!=Mode.NORMAL : !l.contains(n))
+                continue;
+            Computer c = n.toComputer();
+            if (c==null || c.isOffline())   continue;
+            return n;
+        }
+        return null;
+    }
+
+    /**
+     * How long will the next build of this job take?
+     */
+    protected long estimateDuration(AbstractProject<?,?> p) {
+        Run<?,?> last = p.getLastCompletedBuild();
+        int number = last!=null ? last.getNumber() : 0;
+
+        Estimate e = estimates.get(p);
+        if (e==null || e.buildNumber!=number) {
+            e = new Estimate(number, computePercentile(p));
+            estimates.put(p,e);
+        }
+        return e.duration;
+    }
+
+    private long computePercentile(AbstractProject<?,?> p) {
+        List<? extends Run<?,?>> builds = p.getLastBuildsOverThreshold(SAMPLES, Result.UNSTABLE);
+        if (builds.isEmpty())
+            return DEFAULT_DURATION;
+        long[] durations = new long[builds.size()];
+        for (int i=0; i<durations.length; i++)
+            durations[i] = builds.get(i).getDuration();
+        Arrays.sort(durations);
+        return Math.max(durations[(durations.length-1)*PERCENTILE/100], 1);
+    }
+
+    private static final class Estimate {
+        final int buildNumber;
+        final long duration;
+
+        Estimate(int buildNumber, long duration) {
+            this.buildNumber = buildNumber;
+            this.duration = duration;
+        }
+    }
+
+    private static final class Prediction {
+        final AbstractProject<?,?> job;
+        final long start;
+        final long duration;
+
+        Prediction(AbstractProject<?,?> job, long start, long duration) {
+            this.job = job;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    private static final Comparator<Prediction> START_TIME = new Comparator<Prediction>() {
+        public int compare(Prediction o1, Prediction o2) {
+            return o1.start<o2.start ? -1 : (o1.start==o2.start ? 0 : 1);
+        }
+    };
+
+    /**
+     * Rebuilds the forecast outside the queue lock.
+     */
+    @Extension
+    public static class Refresher extends PeriodicWork {
+        public long getRecurrencePeriod() {
+            return REFRESH_INTERVAL;
+        }
+
+        protected void doRun() {
+            if (!ENABLED)   return;
+            ScheduledLoadPredictor lp = Jenkins.getInstance().getExtensionList(LoadPredictor.class).get(ScheduledLoadPredictor.class);
+            if (lp!=null)
+                lp.refresh(System.currentTimeMillis());
+        }
+    }
+
+    public static boolean ENABLED = Boolean.getBoolean(ScheduledLoadPredictor.class.getName()+".enabled");
+
+    /**
+     * How often the forecast is rebuilt, in milliseconds.
+     */
+    public static long REFRESH_INTERVAL = Long.getLong(ScheduledLoadPredictor.class.getName()+".refreshInterval", TimeUnit2.MINUTES.toMillis(1));
+
+    /**
+     * How far into the future the forecast looks, in milliseconds.
+     */
+    public static long HORIZON = Long.getLong(ScheduledLoadPredictor.class.getName()+".horizon", TimeUnit2.HOURS.toMillis(24));
+
+    /**
+     * Builds of a job that hasn't completed any are assumed to take this long, in milliseconds.
+     */
+    public static long DEFAULT_DURATION = Long.getLong(ScheduledLoadPredictor.class.getName()+".defaultDuration", TimeUnit2.MINUTES.toMillis(5));
+
+    /**
+     * Number of recent builds the duration is estimated from, and which percentile of them is used.
+     */
+    public static int SAMPLES = Integer.getInteger(ScheduledLoadPredictor.class.getName()+".samples", 10);
+    public static int PERCENTILE = Integer.getInteger(ScheduledLoadPredictor.class.getName()+".percentile", 80);
+
+    /**
+     * Upper bound on the number of future builds predicted per job, so that "every minute" timers don't flood the forecast.
+     */
+    private static final int MAX_FIRES = 100;
+}
@@ -32,10 +32,26 @@ import hudson.triggers.Trigger;
 import hudson.triggers.SafeTimerTask;
 import hudson.slaves.OfflineCause;
 
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -165,9 +181,35 @@ public abstract class   AbstractNodeMonitorDescriptor<T> extends Descriptor<Node
         return t;
     }
 
+    /**
+     * Gets how long it took to collect the data from the given computer in the last round, in milliseconds.
+     * A computer that timed out reports at least {@link #TIMEOUT}.
+     *
+     * @return
+     *      -1 if not known.
+     * @since 1.446
+     */
+    public long getCollectionTime(Computer c) {
+        Record r = record;
+        if (r==null)    return -1;
+        Long t = r.collectionTimes.get(c);
+        return t!=null ? t : -1;
+    }
+
+    /**
+     * Monitoring tasks that are queued or still running, so that a node that doesn't respond even to interruption
+     * won't have more and more threads piled up on it. An entry is only removed once its thread has
+     * actually returned from {@link #monitor(Computer)}, even if the task was cancelled long before.
+     */
+    private final Map<Computer,Future<T>> running = Collections.synchronizedMap(new WeakHashMap<Computer,Future<T>>());
+
     /**
      * Thread that monitors nodes, as well as the data structure to record
      * the result.
+     *
+     * <p>
+     * The actual monitoring of each node happens in {@link #POOL} in parallel,
+     * and this thread just waits for them to complete.
      */
     private final class Record extends Thread {
         /**
@@ -175,6 +217,11 @@ public abstract class   AbstractNodeMonitorDescriptor<T> extends Descriptor<Node
          */
         private final Map<Computer,T> data = new HashMap<Computer,T>();
 
+        /**
+         * How long it took to monitor each computer, in milliseconds.
+         */
+        private final Map<Computer,Long> collectionTimes = new ConcurrentHashMap<Computer,Long>();
+
         public Record() {
             super("Monitoring thread for "+getDisplayName()+" started on "+new Date());
             synchronized(AbstractNodeMonitorDescriptor.this) {
@@ -190,23 +237,46 @@ public abstract class   AbstractNodeMonitorDescriptor<T> extends Descriptor<Node
         @Override
         public void run() {
             long startTime = System.currentTimeMillis();
-            String oldName = getName();
 
+            // fan out
+            Map<Computer,Future<T>> futures = new LinkedHashMap<Computer,Future<T>>();
             for( Computer c : Jenkins.getInstance().getComputers() ) {
+                if(c.getChannel()==null) {
+                    data.put(c,null);
+                    continue;
+                }
+
+                Task t = new Task(c);
+                synchronized (running) {
+                    // a cancelled task reports isDone() even while its thread is still stuck in monitor(c),
+                    // so go by whether it has left the map
+                    if (running.containsKey(c)) {
+                        LOGGER.warning("Previous "+getDisplayName()+" monitoring of "+c.getDisplayName()+" is still in progress. Skipping");
+                        collectionTimes.put(c,TIMEOUT);
+                        continue;
+                    }
+                    running.put(c,t.future);
+                }
+                // the time spent waiting for a thread of the pool counts against the timeout, too
+                Trigger.timer.schedule(t.watchdog,TIMEOUT);
+                POOL.execute(t.future);
+                futures.put(c,t.future);
+            }
+
+            for (Entry<Computer,Future<T>> e : futures.entrySet()) {
+                Computer c = e.getKey();
                 try {
-                    setName("Monitoring "+c.getDisplayName()+" for "+getDisplayName());
-
-                    if(c.getChannel()==null)
-                        data.put(c,null);
-                    else
-                        data.put(c,monitor(c));
-                } catch (IOException e) {
-                    LOGGER.log(Level.WARNING, "Failed to monitor "+c.getDisplayName()+" for "+getDisplayName(), e);
-                } catch (InterruptedException e) {
-                    LOGGER.log(Level.WARNING,"Node monitoring "+c.getDisplayName()+" for "+getDisplayName()+" aborted.",e);
+                    data.put(c,e.getValue().get());
+                } catch (ExecutionException x) {
+                    LOGGER.log(Level.WARNING, "Failed to monitor "+c.getDisplayName()+" for "+getDisplayName(), x.getCause());
+                } catch (CancellationException x) {
+                    LOGGER.warning("Node monitoring "+c.getDisplayName()+" for "+getDisplayName()+" timed out after "+TIMEOUT+"ms");
+                    collectionTimes.put(c,TIMEOUT);
+                } catch (InterruptedException x) {
+                    LOGGER.log(Level.WARNING,"Node monitoring "+c.getDisplayName()+" for "+getDisplayName()+" aborted.",x);
+                    e.getValue().cancel(true);
                 }
             }
-            setName(oldName);
 
             synchronized(AbstractNodeMonitorDescriptor.this) {
                 assert inProgress==this;
@@ -216,9 +286,79 @@ public abstract class   AbstractNodeMonitorDescriptor<T> extends Descriptor<Node
 
             LOGGER.fine("Node monitoring "+getDisplayName()+" completed in "+(System.currentTimeMillis()-startTime)+"ms");
         }
+
+        /**
+         * Monitors one computer, and gets cancelled if that takes longer than {@link #TIMEOUT} from the time it's queued.
+         */
+        private final class Task implements Callable<T> {
+            private final Computer c;
+
+            /**
+             * Set once {@link #call()} starts, after which it's up to {@link #call()} to leave {@link #running}.
+             */
+            private volatile boolean started;
+
+            private final FutureTask<T> future = new FutureTask<T>(this) {
+                @Override
+                protected void done() {
+                    if (!started)
+                        // cancelled before it got a thread, so call() will never run
+                        leave();
+                }
+            };
+
+            private final TimerTask watchdog = new SafeTimerTask() {
+                protected void doRun() {
+                    future.cancel(true);
+                }
+            };
+
+            Task(Computer c) {
+                this.c = c;
+            }
+
+            /**
+             * Removes this task from {@link #running}, unless a newer one has replaced it.
+             */
+            private void leave() {
+                synchronized (running) {
+                    if (running.get(c)==future)
+                        running.remove(c);
+                }
+            }
+
+            public T call() throws Exception {
+                started = true;
+                Thread t = Thread.currentThread();
+                String oldName = t.getName();
+                t.setName("Monitoring "+c.getDisplayName()+" for "+getDisplayName());
+                long start = System.currentTimeMillis();
+                try {
+                    return monitor(c);
+                } finally {
+                    watchdog.cancel();
+                    collectionTimes.put(c,System.currentTimeMillis()-start);
+                    t.setName(oldName);
+                    leave();
+                }
+            }
+        }
     }
 
     private final Logger LOGGER = Logger.getLogger(getClass().getName());
 
     private static final long HOUR = 1000*60*60L;
+
+    /**
+     * How long a single node is given to respond to a single monitor, in milliseconds.
+     */
+    public static long TIMEOUT = Long.getLong(AbstractNodeMonitorDescriptor.class.getName()+".timeout", 30*1000L);
+
+    /**
+     * Maximum number of nodes monitored concurrently, shared by all the monitors.
+     */
+    public static int POOL_SIZE = Integer.getInteger(AbstractNodeMonitorDescriptor.class.getName()+".poolSize", 8);
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(POOL_SIZE,
+            new ExceptionCatchingThreadFactory(new DaemonThreadFactory()));
 }
@@ -257,6 +257,9 @@ public final class CronTab {
      *
      * <p>
      * Note that if t already matches this cron, it's returned as is.
+     *
+     * @throws IllegalArgumentException
+     *      if this crontab never matches (for example "0 0 31 2 *".)
      */
     public Calendar ceil(long t) {
         Calendar cal = new GregorianCalendar(Locale.US);
@@ -270,8 +273,12 @@ public final class CronTab {
      * This method modifies the given calendar and returns the same object.
      */
     public Calendar ceil(Calendar cal) {
+        // a valid date always recurs within 28 years (leap day and day of week both repeat), so beyond that we are looping
+        final int limit = cal.get(YEAR)+YEAR_LIMIT;
         OUTER:
         while (true) {
+            if (cal.get(YEAR)>limit)
+                throw new IllegalArgumentException(spec+" never matches");
             for (CalendarField f : CalendarField.ADJUST_ORDER) {
                 int cur = f.valueOf(cal);
                 int next = f.ceil(this,cur);
@@ -413,4 +420,6 @@ public final class CronTab {
     // lower/uppser bounds of fields
     private static final int[] LOWER_BOUNDS = new int[] {0,0,1,0,0};
     private static final int[] UPPER_BOUNDS = new int[] {59,23,31,12,7};
+
+    private static final int YEAR_LIMIT = 30;
 }
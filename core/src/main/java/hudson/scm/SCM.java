@@ -50,6 +50,8 @@ import hudson.model.AbstractProject.AbstractProjectDescriptor;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
@@ -348,6 +350,79 @@ public abstract class SCM implements Describable<SCM>, ExtensionPoint {
      */
     protected abstract PollingResult compareRemoteRevisionWith(AbstractProject<?,?> project, Launcher launcher, FilePath workspace, TaskListener listener, SCMRevisionState baseline) throws IOException, InterruptedException;
 
+    /**
+     * Identifies the remote location that the polling of the given project looks at, such as
+     * the repository URL and the branch.
+     *
+     * <p>
+     * Projects whose SCMs return equal keys (in the sense of {@link Object#equals(Object)}) share the
+     * outcome of {@link #calcRemoteRevision(AbstractProject, TaskListener)}, so that a lot of projects
+     * watching the same repository only cause one remote operation. See {@link SharedPolling}.
+     *
+     * @return
+     *      null, the default, to opt out of the sharing. The key only takes effect in
+     *      {@link #getSharedRemoteRevision(AbstractProject, TaskListener)}, which requires
+     *      {@link #calcRemoteRevision(AbstractProject, TaskListener)} to be implemented.
+     * @since 1.446
+     */
+    public Object getPollingKey(AbstractProject<?,?> project) {
+        return null;
+    }
+
+    /**
+     * Identifies the host that the polling of the given project talks to, so that the pollings of
+     * each host are done by their own threads, and one slow host can't hold up the pollings of the others.
+     *
+     * <p>
+     * The default implementation returns the host of the {@linkplain #getPollingKey(AbstractProject) polling key},
+     * if that's a URI.
+     *
+     * @return
+     *      null to have the polling done by the shared default threads.
+     * @since 1.446
+     */
+    public String getPollingHost(AbstractProject<?,?> project) {
+        Object key = getPollingKey(project);
+        if (key!=null) {
+            try {
+                return new URI(key.toString()).getHost();
+            } catch (URISyntaxException e) {
+                // not a URI
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtains the current state of the remote location identified by {@link #getPollingKey(AbstractProject)},
+     * without comparing it to anything.
+     *
+     * <p>
+     * The returned object is shared between all the projects with the same polling key, so it must not
+     * depend on anything else about the given project, nor be modified afterward.
+     *
+     * <p>
+     * SCMs that call {@link #getSharedRemoteRevision(AbstractProject, TaskListener)} must implement this method.
+     *
+     * @since 1.446
+     */
+    public SCMRevisionState calcRemoteRevision(AbstractProject<?,?> project, TaskListener listener) throws IOException, InterruptedException {
+        throw new UnsupportedOperationException(getClass().getName()+" doesn't implement calcRemoteRevision");
+    }
+
+    /**
+     * Used by {@link #compareRemoteRevisionWith(AbstractProject, Launcher, FilePath, TaskListener, SCMRevisionState)}
+     * implementations to obtain the current state of the remote location, which is shared with the other
+     * projects polling the same location.
+     *
+     * @throws IllegalStateException
+     *      if this SCM doesn't implement {@link #calcRemoteRevision(AbstractProject, TaskListener)}.
+     * @since 1.446
+     */
+    protected final SCMRevisionState getSharedRemoteRevision(AbstractProject<?,?> project, TaskListener listener) throws IOException, InterruptedException {
+        return SharedPolling.INSTANCE.calcRemoteRevision(this,project,listener);
+    }
+
     /**
      * A pointless function to work around what appears to be a HotSpot problem. See JENKINS-5756 and bug 6933067
      * on BugParade for more details.
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.scm;
+
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Collapses the pollings of projects that watch the same remote location into one remote operation.
+ *
+ * <p>
+ * Projects whose {@link SCM}s return equal {@linkplain SCM#getPollingKey(AbstractProject) polling keys}
+ * share the {@link SCMRevisionState} obtained by {@link SCM#calcRemoteRevision(AbstractProject, TaskListener)}:
+ * while one of them is talking to the repository, the others wait for its result, and the result is
+ * reused for {@link #SHARE_WINDOW} milliseconds after it's obtained. Each project then compares
+ * the shared state against its own baseline.
+ *
+ * @since 1.446
+ */
+public final class SharedPolling {
+    private final Map<Object,Poll> polls = new HashMap<Object,Poll>();
+
+    private long remotePolls;
+    private long savedPolls;
+
+    /**
+     * One remote operation, and its outcome once it completes.
+     */
+    private static final class Poll {
+        private boolean done;
+        private SCMRevisionState result;
+        private boolean failed;
+        private long finished;
+
+        synchronized void set(SCMRevisionState result, boolean failed) {
+            this.result = result;
+            this.failed = failed;
+            this.finished = System.currentTimeMillis();
+            this.done = true;
+            notifyAll();
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (!done)
+                wait();
+        }
+
+        synchronized boolean isReusable(long now) {
+            return !done || (!failed && now-finished<SHARE_WINDOW);
+        }
+    }
+
+    /**
+     * Obtains the current state of the remote location that the given project polls, sharing it
+     * with the other projects that poll the same location.
+     *
+     * @throws IllegalStateException
+     *      if the SCM doesn't implement {@link SCM#calcRemoteRevision(AbstractProject, TaskListener)}.
+     */
+    public SCMRevisionState calcRemoteRevision(SCM scm, AbstractProject<?,?> project, TaskListener listener) throws IOException, InterruptedException {
+        if (!Util.isOverridden(SCM.class, scm.getClass(), "calcRemoteRevision", AbstractProject.class, TaskListener.class))
+            // fail the same way every time, rather than only when the polling isn't shared
+            throw new IllegalStateException(scm.getClass().getName()+" obtains the shared remote revision but doesn't implement calcRemoteRevision");
+
+        Object key = scm.getPollingKey(project);
+        if (key==null)
+            return scm.calcRemoteRevision(project,listener);
+
+        Poll p;
+        boolean owner = false;
+        synchronized (this) {
+            p = polls.get(key);
+            if (p==null || !p.isReusable(System.currentTimeMillis())) {
+                polls.put(key,p=new Poll());
+                owner = true;
+                remotePolls++;
+            }
+        }
+
+        if (owner) {
+            boolean failed = true;
+            SCMRevisionState r = null;
+            try {
+                r = scm.calcRemoteRevision(project,listener);
+                failed = false;
+                return r;
+            } finally {
+                p.set(r,failed);
+            }
+        }
+
+        p.await();
+        synchronized (p) {
+            if (!p.failed) {
+                synchronized (this) {
+                    savedPolls++;
+                }
+                LOGGER.log(FINE, "Reusing the polling result of {0} for {1}", new Object[]{key,project});
+                listener.getLogger().println("Reusing the remote state obtained by another polling of the same repository");
+                return p.result;
+            }
+        }
+        // the polling we've been waiting for failed, so try on our own to report the problem
+        return scm.calcRemoteRevision(project,listener);
+    }
+
+    /**
+     * Number of remote operations performed on behalf of projects with polling keys.
+     */
+    public synchronized long getRemotePolls() {
+        return remotePolls;
+    }
+
+    /**
+     * Number of remote operations that were saved by sharing the result of another polling.
+     */
+    public synchronized long getSavedPolls() {
+        return savedPolls;
+    }
+
+    /**
+     * Forgets the results obtained so far, so that the next pollings go to the remote locations.
+     */
+    public synchronized void clear() {
+        polls.clear();
+    }
+
+    public static final SharedPolling INSTANCE = new SharedPolling();
+
+    private static final Logger LOGGER = Logger.getLogger(SharedPolling.class.getName());
+
+    /**
+     * How long the result of a remote operation is reused for the pollings that start after it completes, in milliseconds.
+     */
+    public static long SHARE_WINDOW = Long.getLong(SharedPolling.class.getName()+".shareWindow",10*1000L);
+}
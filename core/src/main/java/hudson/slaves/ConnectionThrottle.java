@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.slaves;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for slave connections.
+ *
+ * <p>
+ * When the master restarts, every slave tries to come back at the same time,
+ * and the handshake, the {@link ComputerLauncher#launch(SlaveComputer, hudson.model.TaskListener)}
+ * and the {@link ComputerListener#onOnline(hudson.model.Computer, hudson.model.TaskListener)} callbacks
+ * of hundreds of nodes compete for the same CPU and locks. This class limits the number of
+ * connections that are being established concurrently, and keeps track of how long
+ * they wait and take, so that the rest of the system stays responsive.
+ *
+ * <p>
+ * The permit must be acquired by the thread that drives the connection, and
+ * released in the <tt>finally</tt> block. The wait is bounded by {@link #TIMEOUT}, after which
+ * the connection goes ahead without a permit, so that a few hung connections can't lock out every other node:
+ *
+ * <pre>
+ * long start = System.currentTimeMillis();
+ * boolean admitted = ConnectionThrottle.INSTANCE.acquire();
+ * try {
+ *     ... connect ...
+ * } finally {
+ *     if (admitted) ConnectionThrottle.INSTANCE.release();
+ *     ConnectionThrottle.INSTANCE.record(start, success);
+ * }
+ * </pre>
+ *
+ * <p>
+ * Slaves that we launch and JNLP slaves that connect to us are admitted by separate instances,
+ * so that the launches that take long can't keep the JNLP handshakes waiting, and vice versa.
+ *
+ * <p>
+ * The numbers are exported through <tt>/computer/api</tt>.
+ *
+ * @since 1.446
+ */
+@ExportedBean(defaultVisibility=2)
+public final class ConnectionThrottle {
+    private final Semaphore permits;
+    private final int concurrency;
+
+    /**
+     * Number of connections waiting for a permit.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Number of connections that are currently being established.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong connected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Exponential moving average of the time it took to bring a node online,
+     * including the time spent waiting for a permit. -1 until the first connection.
+     */
+    private volatile long averageLatency = -1;
+    private volatile long maxLatency;
+
+    private final Random random = new Random();
+
+    /*package*/ ConnectionThrottle(int concurrency) {
+        this.concurrency = Math.max(1,concurrency);
+        this.permits = new Semaphore(this.concurrency,true);
+    }
+
+    /**
+     * Blocks until the caller is allowed to establish a connection, but no longer than {@link #TIMEOUT}.
+     *
+     * @return
+     *      true if the permit was obtained, in which case it must be returned with {@link #release()}.
+     *      false if the wait timed out, in which case the caller goes ahead without a permit.
+     */
+    public boolean acquire() throws InterruptedException {
+        return acquire(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /*package*/ boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(timeout,unit))
+                return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+        active.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the permit obtained by {@link #acquire()}.
+     */
+    public void release() {
+        active.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * Records the outcome of a connection attempt.
+     *
+     * @param start
+     *      When the connection was requested, including the time spent in {@link #acquire()}.
+     * @param success
+     *      True if the node is now online.
+     */
+    public void record(long start, boolean success) {
+        if (success) {
+            connected.incrementAndGet();
+            long latency = System.currentTimeMillis()-start;
+            synchronized (this) {
+                averageLatency = averageLatency<0 ? latency : (long)(DECAY*averageLatency + (1-DECAY)*latency);
+                maxLatency = Math.max(maxLatency,latency);
+            }
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Computes how long to wait before the given retry attempt.
+     *
+     * <p>
+     * The delay grows exponentially from {@link #BACKOFF_BASE} up to {@link #BACKOFF_MAX},
+     * and a random portion of up to a half of it is shaved off so that nodes that failed
+     * together don't all retry together.
+     *
+     * @param attempt
+     *      Number of failed attempts so far. 0 means this is the first attempt, which is not delayed.
+     */
+    public long getBackoff(int attempt) {
+        if (attempt<=0 || BACKOFF_BASE<=0)  return 0;
+        long max = BACKOFF_BASE << Math.min(attempt-1,20);
+        if (max>BACKOFF_MAX || max<=0)  max = BACKOFF_MAX;
+        long half = max/2;
+        long jitter;
+        synchronized (random) {
+            jitter = half>0 ? (long)(random.nextDouble()*half) : 0;
+        }
+        return max-jitter;
+    }
+
+    /**
+     * Maximum number of connections that are established concurrently.
+     */
+    @Exported
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Number of connections currently waiting for admission.
+     */
+    @Exported
+    public int getQueueLength() {
+        return waiting.get();
+    }
+
+    /**
+     * Number of connections currently being established.
+     */
+    @Exported
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Number of connections that were successfully established so far.
+     */
+    @Exported
+    public long getConnectedCount() {
+        return connected.get();
+    }
+
+    /**
+     * Number of connection attempts that failed so far.
+     */
+    @Exported
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Moving average of the time from the connection request to the node being online, in milliseconds,
+     * or -1 if no connection has completed yet.
+     */
+    @Exported
+    public long getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Longest time it took from the connection request to the node being online, in milliseconds.
+     */
+    @Exported
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    private static final float DECAY = 0.8f;
+
+    /**
+     * Number of slaves that can be connecting at the same time.
+     */
+    public static int CONCURRENCY = Integer.getInteger(ConnectionThrottle.class.getName()+".concurrency",
+            Math.max(4,Runtime.getRuntime().availableProcessors()*2));
+
+    /**
+     * Delay before the first retry of a failed launch, in milliseconds. Set to 0 to retry without delay.
+     */
+    public static long BACKOFF_BASE = Long.getLong(ConnectionThrottle.class.getName()+".backoffBase",1000);
+
+    /**
+     * Upper bound of the retry delay. This is kept below the period of {@link RetentionStrategy} checks,
+     * so that a launch is never still sleeping when the next retry is requested.
+     */
+    public static long BACKOFF_MAX = Long.getLong(ConnectionThrottle.class.getName()+".backoffMax",30*1000);
+
+    /**
+     * How long a connection waits for a permit before it goes ahead anyway, in milliseconds.
+     */
+    public static long TIMEOUT = Long.getLong(ConnectionThrottle.class.getName()+".timeout",60*1000);
+
+    /**
+     * Admits the slaves that we launch.
+     */
+    public static final ConnectionThrottle INSTANCE = new ConnectionThrottle(CONCURRENCY);
+
+    /**
+     * Admits the JNLP slaves that connect to us.
+     */
+    public static final ConnectionThrottle JNLP = new ConnectionThrottle(CONCURRENCY);
+}
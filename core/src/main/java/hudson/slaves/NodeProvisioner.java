@@ -29,6 +29,9 @@ import jenkins.model.Jenkins;
 import static hudson.model.LoadStatistics.DECAY;
 import hudson.model.MultiStageTimeSeries.TimeScale;
 import hudson.Extension;
+import hudson.triggers.SafeTimerTask;
+import hudson.triggers.Trigger;
+import hudson.util.TimeUnit2;
 
 import java.awt.Color;
 import java.util.concurrent.Future;
@@ -36,6 +39,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.List;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
@@ -84,8 +90,24 @@ public class NodeProvisioner {
 
     private List<PlannedNode> pendingLaunches = new ArrayList<PlannedNode>();
 
+    /**
+     * When each of {@link #pendingLaunches} has started, to learn how long a launch takes.
+     */
+    private final Map<PlannedNode,Long> launchStartTimes = new IdentityHashMap<PlannedNode,Long>();
+
+    /**
+     * Exponential moving average of the time it took to launch a node, in milliseconds.
+     * Used by the {@link #EVENT_DRIVEN} strategy to tell which running builds will complete before a new node comes up.
+     */
+    private long launchTime = INITIAL_LAUNCH_TIME;
+
     private transient volatile long lastSuggestedReview;
 
+    /**
+     * True if a review is scheduled to happen after {@link #suggestReviewNow()} got throttled.
+     */
+    private transient volatile boolean reviewDeferred;
+
     /**
      * Exponential moving average of the "planned capacity" over time, which is the number of
      * additional executors being brought up.
@@ -126,6 +148,15 @@ public class NodeProvisioner {
                     update();
                 }
             });
+        } else if (EVENT_DRIVEN && !reviewDeferred && Trigger.timer!=null) {
+            // with the event driven strategy, items arriving in a burst shouldn't wait for the next periodic review
+            reviewDeferred = true;
+            Trigger.timer.schedule(new SafeTimerTask() {
+                protected void doRun() {
+                    reviewDeferred = false;
+                    suggestReviewNow();
+                }
+            }, TimeUnit.SECONDS.toMillis(1));
         }
     }
 
@@ -142,6 +173,9 @@ public class NodeProvisioner {
         for (Iterator<PlannedNode> itr = pendingLaunches.iterator(); itr.hasNext();) {
             PlannedNode f = itr.next();
             if(f.future.isDone()) {
+                Long started = launchStartTimes.remove(f);
+                if (started!=null)
+                    launchTime = (launchTime + (System.currentTimeMillis()-started))/2;
                 try {
                     hudson.addNode(f.future.get());
                     LOGGER.info(f.displayName+" provisioning successfully completed. We have now "+hudson.getComputers().length+" computer(s)");
@@ -159,6 +193,11 @@ public class NodeProvisioner {
         float plannedCapacity = plannedCapacitySnapshot;
         plannedCapacitiesEMA.update(plannedCapacity);
 
+        if (EVENT_DRIVEN) {
+            provisionForSnapshot(plannedCapacitySnapshot);
+            return;
+        }
+
         /*
             Here we determine how many additional slaves we need to keep up with the load (if at all),
             which involves a simple math.
@@ -229,13 +268,85 @@ public class NodeProvisioner {
                             excessWorkload -= ac.numExecutors;
                             LOGGER.info("Started provisioning "+ac.displayName+" from "+c.name+" with "+ac.numExecutors+" executors. Remaining excess workload:"+excessWorkload);
                         }
-                        pendingLaunches.addAll(additionalCapacities);
+                        addPendingLaunches(additionalCapacities);
                     }
                 }
             }
         }
     }
 
+    /**
+     * The {@link #EVENT_DRIVEN} strategy.
+     *
+     * <p>
+     * Instead of the moving averages, which take several {@link LoadStatistics#CLOCK}s to respond to a burst
+     * and then keep responding after it's over, this looks at the current numbers only:
+     * the buildable items waiting for this label, minus the idle executors, minus the executors already being
+     * launched, minus the builds expected to complete before a new node would come online anyway.
+     * It's meant to be run whenever the queue grows, via {@link #suggestReviewNow()}, so it doesn't need
+     * the smoothing to catch the load.
+     */
+    private void provisionForSnapshot(int plannedCapacity) {
+        int excessWorkload = computeExcessWorkload(stat.computeQueueLength(), stat.computeIdleExecutors(),
+                plannedCapacity, countCompletingWithin(launchTime));
+        if (excessWorkload<=0)  return;
+
+        LOGGER.fine("Excess workload "+excessWorkload+" detected for "+(label!=null?label:"unassigned jobs")+". (planned capacity="+plannedCapacity+",launch time="+launchTime+"ms)");
+        for( Cloud c : Jenkins.getInstance().clouds ) {
+            if(excessWorkload<=0)    break;  // enough slaves allocated
+
+            if (c.canProvision(label)) {
+                Collection<PlannedNode> additionalCapacities = c.provision(label, excessWorkload);
+                for (PlannedNode ac : additionalCapacities) {
+                    excessWorkload -= ac.numExecutors;
+                    LOGGER.info("Started provisioning "+ac.displayName+" from "+c.name+" with "+ac.numExecutors+" executors. Remaining excess workload:"+excessWorkload);
+                }
+                addPendingLaunches(additionalCapacities);
+            }
+        }
+    }
+
+    /**
+     * How many more executors are needed right now.
+     */
+    /*package*/ static int computeExcessWorkload(int queueLength, int idle, int plannedCapacity, int completingSoon) {
+        return queueLength - idle - plannedCapacity - completingSoon;
+    }
+
+    /**
+     * Counts the builds running on the nodes of this label that are expected to complete within the given time.
+     */
+    private int countCompletingWithin(long time) {
+        Jenkins h = Jenkins.getInstance();
+        List<Computer> computers = new ArrayList<Computer>();
+        if (label==null)
+            computers.addAll(Arrays.asList(h.getComputers()));
+        else
+            for (Node n : label.getNodes()) {
+                Computer c = n.toComputer();
+                if (c!=null)    computers.add(c);
+            }
+
+        int r = 0;
+        for (Computer c : computers) {
+            if (!c.isOnline())  continue;
+            for (Executor e : c.getExecutors()) {
+                if (e.isIdle()) continue;
+                long eta = e.getEstimatedRemainingTimeMillis();
+                if (eta>=0 && eta<time)
+                    r++;
+            }
+        }
+        return r;
+    }
+
+    private void addPendingLaunches(Collection<PlannedNode> additionalCapacities) {
+        Long now = System.currentTimeMillis();
+        for (PlannedNode ac : additionalCapacities)
+            launchStartTimes.put(ac,now);
+        pendingLaunches.addAll(additionalCapacities);
+    }
+
     /**
      * Computes the threshold for triggering an allocation.
      *
@@ -312,6 +423,19 @@ public class NodeProvisioner {
     }
 
     private static final Logger LOGGER = Logger.getLogger(NodeProvisioner.class.getName());
+
+    /**
+     * Provision in reaction to the queue growing, based on the current numbers rather than the moving averages.
+     * See {@link #provisionForSnapshot(int)}.
+     *
+     * @since 1.446
+     */
+    public static boolean EVENT_DRIVEN = Boolean.getBoolean(NodeProvisioner.class.getName()+".eventDriven");
+
+    /**
+     * Assumed launch time of a node until we see one, in milliseconds.
+     */
+    private static final long INITIAL_LAUNCH_TIME = Long.getLong(NodeProvisioner.class.getName()+".initialLaunchTime", TimeUnit2.MINUTES.toMillis(1));
     private static final float MARGIN = Integer.getInteger(NodeProvisioner.class.getName()+".MARGIN",10)/100f;
     private static final float MARGIN0 = Math.max(MARGIN, getFloatSystemProperty(NodeProvisioner.class.getName()+".MARGIN0",0.5f));
     private static final float MARGIN_DECAY = getFloatSystemProperty(NodeProvisioner.class.getName()+".MARGIN_DECAY",0.5f);
@@ -107,6 +107,12 @@ public class SlaveComputer extends Computer {
      */
     private transient int numRetryAttempt;
 
+    /**
+     * True while the launch is waiting for {@link ConnectionThrottle#getBackoff(int)} to pass,
+     * in which case a forced reconnect can simply cancel it.
+     */
+    private transient volatile boolean backingOff;
+
     /**
      * Tracks the status of the last launch operation, which is always asynchronous.
      * This can be used to wait for the completion, or cancel the launch activity.
@@ -183,16 +189,42 @@ public class SlaveComputer extends Computer {
         if(channel!=null)   return Futures.precomputed(null);
         if(!forceReconnect && isConnecting())
             return lastConnectActivity;
-        if(forceReconnect && isConnecting())
+        if(forceReconnect && isConnecting()) {
             logger.fine("Forcing a reconnect on "+getName());
+            if (backingOff)
+                lastConnectActivity.cancel(true);
+        }
 
         closeChannel();
         return lastConnectActivity = Computer.threadPoolForRemoting.submit(new java.util.concurrent.Callable<Object>() {
             public Object call() throws Exception {
                 // do this on another thread so that the lengthy launch operation
                 // (which is typical) won't block UI thread.
+                log.rewind();
+
+                // spread out the retries of nodes that failed together
+                long delay = ConnectionThrottle.INSTANCE.getBackoff(numRetryAttempt);
+                if (delay>0) {
+                    taskListener.getLogger().println("Waiting "+delay+"ms before reconnecting");
+                    backingOff = true;
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        return null;    // superseded by a forced reconnect
+                    } finally {
+                        backingOff = false;
+                    }
+                }
+
                 try {
-                    log.rewind();
+                    // limit the number of nodes coming online at the same time.
+                    // JNLP slaves are admitted by TcpSlaveAgentListener when they actually connect,
+                    // as their launch() does nothing.
+                    ConnectionThrottle throttle = launcher.isLaunchSupported() ? ConnectionThrottle.INSTANCE : null;
+                    long start = System.currentTimeMillis();
+                    boolean admitted = throttle!=null && throttle.acquire();
+                    if (throttle!=null && !admitted)
+                        taskListener.getLogger().println("Timed out waiting for other nodes to connect; launching anyway");
                     try {
                         for (ComputerListener cl : ComputerListener.all())
                             cl.preLaunch(SlaveComputer.this, taskListener);
@@ -208,6 +240,11 @@ public class SlaveComputer extends Computer {
                     } catch (InterruptedException e) {
                         e.printStackTrace(taskListener.error(Messages.ComputerLauncher_abortedLaunch()));
                         throw e;
+                    } finally {
+                        if (admitted)
+                            throttle.release();
+                        if (throttle!=null)
+                            throttle.record(start, channel!=null);
                     }
                 } finally {
                     if (channel==null) {
@@ -448,6 +485,7 @@ public class SlaveComputer extends Computer {
             return;
         }
 
+        numRetryAttempt = 0;    // the user asked for it, so don't make them wait for the backoff
         connect(true);
 
         // TODO: would be nice to redirect the user to "launching..." wait page,
@@ -113,7 +113,10 @@ public class ArtifactArchiver extends Recorder {
             }
 
             String artifacts = build.getEnvironment(listener).expand(this.artifacts);
-            if(ws.copyRecursiveTo(artifacts,excludes,new FilePath(dir))==0) {
+            ArtifactStore store = ArtifactStore.get();
+            int n = store!=null ? store.archive(build,ws,artifacts,excludes,listener)
+                                : ws.copyRecursiveTo(artifacts,excludes,new FilePath(dir));
+            if(n==0) {
                 if(build.getResult().isBetterOrEqualTo(Result.UNSTABLE)) {
                     // If the build failed, don't complain that there was no matching artifact.
                     // The build probably didn't even get to the point where it produces artifacts. 
@@ -0,0 +1,387 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.tasks;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.os.PosixAPI;
+import hudson.remoting.VirtualChannel;
+import hudson.tasks.Fingerprinter.FingerprintAction;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import hudson.util.IOException2;
+import hudson.util.IOUtils;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static hudson.util.jna.GNUCLibrary.LIBC;
+
+/**
+ * Content-addressed storage for archived artifacts.
+ *
+ * <p>
+ * Every archived file is kept once in <tt>$JENKINS_HOME/artifact-store</tt> under its MD5 digest,
+ * and {@link Run#getArtifactsDir()} of each build that archived it holds a hard link to it.
+ * So everything that reads artifacts keeps working unchanged, identical files archived by many
+ * builds take the disk space only once, and a file that's already in the store doesn't need
+ * to be sent from the slave at all.
+ *
+ * <p>
+ * The link count of the file system is the reference count. Deleting a build (or its artifacts)
+ * just removes its links, and {@link Collector} deletes the blobs that nobody links to anymore.
+ * For this reason the blobs are read-only: writing to an artifact would change it for every build.
+ *
+ * <p>
+ * The digests of the archived files are recorded in <tt>artifacts.md5</tt> in the build directory,
+ * in the format of <tt>md5sum</tt>, which {@link Fingerprinter} uses instead of computing them again.
+ *
+ * <p>
+ * This needs hard links, so it's not available on Windows. Enable it with
+ * <tt>-Dhudson.tasks.ArtifactStore.enabled=true</tt>.
+ *
+ * @since 1.446
+ */
+public class ArtifactStore {
+    private final File root;
+
+    public ArtifactStore(File root) {
+        this.root = root;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Where the file of the given digest is stored.
+     */
+    public File getBlob(String md5) {
+        return new File(root,md5.substring(0,2)+'/'+md5);
+    }
+
+    /**
+     * Copies the artifacts from the workspace to {@link Run#getArtifactsDir()},
+     * sending only those that are not in the store yet.
+     *
+     * @return
+     *      the number of files archived.
+     */
+    public int archive(AbstractBuild<?,?> build, FilePath ws, String includes, String excludes, TaskListener listener) throws IOException, InterruptedException {
+        File dir = build.getArtifactsDir();
+
+        // the fingerprinter might have digested these already
+        Map<String,String> known = new HashMap<String,String>();
+        FingerprintAction fa = build.getAction(FingerprintAction.class);
+        if (fa!=null)
+            known.putAll(fa.getRecords());
+
+        Map<String,String> digests = ws.act(new Digester(includes,excludes,known));
+
+        List<String> missing = new ArrayList<String>();
+        for (Map.Entry<String,String> e : digests.entrySet()) {
+            File blob = getBlob(e.getValue());
+            File dst = new File(dir,e.getKey());
+            if (blob.exists() && link(blob,dst))
+                continue;
+            // never write into an existing file, which might be a link to a blob
+            dst.delete();
+            missing.add(e.getKey());
+        }
+
+        if (!missing.isEmpty())
+            ws.copyRecursiveTo(new DirScanner.Listed(missing),new FilePath(dir),includes);
+
+        for (String path : missing) {
+            File f = new File(dir,path);
+            if (!f.exists())    continue;   // deleted while we were at it
+            // don't trust the slave's digest for what goes into the store: the file might have changed since
+            String md5 = Util.getDigestOf(new FileInputStream(f));
+            if (!md5.equals(digests.get(path)))
+                LOGGER.warning(path+" of "+build+" changed while being archived");
+            digests.put(path,md5);
+            store(f,md5);
+        }
+
+        writeDigests(build,digests);
+        if (!digests.isEmpty())
+            listener.getLogger().println(Messages.ArtifactStore_Reused(digests.size()-missing.size(),digests.size()));
+        return digests.size();
+    }
+
+    /**
+     * Puts a newly archived file into the store, or replaces it with a link to the stored copy.
+     */
+    private void store(File f, String md5) {
+        File blob = getBlob(md5);
+        if (blob.exists()) {
+            // another build archived the same file concurrently
+            File tmp = new File(f.getPath()+".tmp");
+            if (link(blob,tmp) && !tmp.renameTo(f))
+                tmp.delete();
+            return;
+        }
+
+        try {
+            int mode = IOUtils.mode(f);
+            if (mode!=-1)
+                LIBC.chmod(f.getPath(),mode&0555);
+            blob.getParentFile().mkdirs();
+            if (LIBC.link(f.getPath(),blob.getPath())!=0)
+                LOGGER.fine("Failed to store "+f+" as "+blob);
+        } catch (LinkageError e) {
+            LOGGER.log(Level.FINE,"Failed to store "+f,e);
+        }
+    }
+
+    /**
+     * Creates a hard link, replacing whatever is at the destination.
+     */
+    private boolean link(File blob, File dst) {
+        try {
+            dst.getParentFile().mkdirs();
+            dst.delete();
+            return LIBC.link(blob.getPath(),dst.getPath())==0;
+        } catch (LinkageError e) {
+            LOGGER.log(Level.FINE,"Failed to link "+blob,e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the blobs that are no longer referenced from any build.
+     *
+     * @param digests
+     *      The blobs to check, or null to check everything.
+     * @return
+     *      the number of blobs deleted.
+     */
+    public int collect(Iterable<String> digests) {
+        int n = 0;
+        if (digests!=null) {
+            for (String md5 : digests)
+                if (collectBlob(getBlob(md5)))
+                    n++;
+        } else {
+            File[] dirs = root.listFiles();
+            if (dirs==null)     return 0;
+            for (File d : dirs) {
+                File[] blobs = d.listFiles();
+                if (blobs==null)    continue;
+                for (File blob : blobs)
+                    if (collectBlob(blob))
+                        n++;
+            }
+        }
+        return n;
+    }
+
+    private boolean collectBlob(File blob) {
+        if (!blob.isFile())     return false;
+        try {
+            if (PosixAPI.get().stat(blob.getPath()).nlink()>1)
+                return false;
+        } catch (Throwable t) {
+            LOGGER.log(Level.FINE,"Failed to stat "+blob,t);
+            return false;
+        }
+        return blob.delete();
+    }
+
+    /**
+     * Gets the store of this Jenkins, or null if the deduplication is not enabled.
+     */
+    public static ArtifactStore get() {
+        if (!ENABLED || Functions.isWindows())
+            return null;
+        return new ArtifactStore(new File(Jenkins.getInstance().getRootDir(),"artifact-store"));
+    }
+
+    /**
+     * Gets the digests of the artifacts archived by the given build.
+     *
+     * @return
+     *      map from the relative path in {@link Run#getArtifactsDir()} to the MD5 digest,
+     *      or an empty map if the build hasn't archived anything into the store.
+     */
+    public static Map<String,String> getDigests(Run<?,?> build) throws IOException {
+        File f = new File(build.getRootDir(),DIGESTS);
+        if (!f.exists())    return Collections.emptyMap();
+
+        Map<String,String> r = new LinkedHashMap<String,String>();
+        BufferedReader in = new BufferedReader(new FileReader(f));
+        try {
+            String line;
+            while ((line=in.readLine())!=null) {
+                // "<md5>  <path>" as in md5sum
+                if (line.length()>34)
+                    r.put(line.substring(34),line.substring(0,32));
+            }
+        } finally {
+            in.close();
+        }
+        return r;
+    }
+
+    private static void writeDigests(Run<?,?> build, Map<String,String> digests) throws IOException {
+        PrintWriter w = new PrintWriter(new File(build.getRootDir(),DIGESTS),"UTF-8");
+        try {
+            for (Map.Entry<String,String> e : digests.entrySet())
+                w.println(e.getValue()+"  "+e.getKey());
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Lists the artifacts in the workspace with their digests.
+     */
+    private static final class Digester implements FileCallable<Map<String,String>> {
+        private final String includes, excludes;
+        private final Map<String,String> known;
+
+        Digester(String includes, String excludes, Map<String,String> known) {
+            this.includes = includes;
+            this.excludes = excludes;
+            this.known = known;
+        }
+
+        public Map<String,String> invoke(File base, VirtualChannel channel) throws IOException {
+            final Map<String,String> r = new LinkedHashMap<String,String>();
+            new DirScanner.Glob(includes,excludes).scan(base,new FileVisitor() {
+                public void visit(File f, String relativePath) throws IOException {
+                    if (!f.isFile())    return;
+                    String md5 = known.get(relativePath);
+                    if (md5==null) {
+                        try {
+                            md5 = new FilePath(f).digest();
+                        } catch (InterruptedException e) {
+                            throw new IOException2(e);
+                        }
+                    }
+                    r.put(relativePath,md5);
+                }
+            });
+            return r;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Removes the blobs that are no longer used.
+     *
+     * <p>
+     * Blobs of deleted builds are checked within a minute. Everything is checked once a day,
+     * to catch artifacts that went away by other means, such as {@link ArtifactArchiver#isLatestOnly()}.
+     */
+    @Extension
+    public static final class Collector extends PeriodicWork {
+        private long lastFullScan = System.currentTimeMillis();
+
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            ArtifactStore store = get();
+            if (store==null)    return;
+
+            Set<String> candidates;
+            synchronized (PENDING) {
+                candidates = new HashSet<String>(PENDING);
+                PENDING.clear();
+            }
+
+            int n;
+            if (System.currentTimeMillis()-lastFullScan>DAY) {
+                lastFullScan = System.currentTimeMillis();
+                n = store.collect(null);
+            } else {
+                if (candidates.isEmpty())   return;
+                n = store.collect(candidates);
+            }
+            if (n>0)
+                LOGGER.fine("Deleted "+n+" unused artifacts from "+store.getRoot());
+        }
+    }
+
+    /**
+     * Marks the blobs of a deleted build for {@link Collector}.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run> {
+        @Override
+        public void onDeleted(Run r) {
+            if (!ENABLED)   return;
+            try {
+                Map<String,String> digests = getDigests(r);
+                synchronized (PENDING) {
+                    PENDING.addAll(digests.values());
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING,"Failed to read the artifact digests of "+r,e);
+            }
+        }
+    }
+
+    /**
+     * Digests of the blobs that might have lost their last reference.
+     */
+    private static final Set<String> PENDING = new HashSet<String>();
+
+    /**
+     * Name of the file in the build directory that records the digests of the artifacts.
+     */
+    public static final String DIGESTS = "artifacts.md5";
+
+    public static boolean ENABLED = Boolean.getBoolean(ArtifactStore.class.getName()+".enabled");
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactStore.class.getName());
+}
@@ -42,6 +42,7 @@ import hudson.model.ItemGroup;
 import hudson.model.Items;
 import hudson.model.Job;
 import hudson.model.Project;
+import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
@@ -202,6 +203,9 @@ public class BuildTrigger extends Recorder implements DependecyDeclarer {
             }
         });
 
+        // schedule all the downstream builds at once, to avoid going through the queue for each of them
+        List<Queue.ScheduleRequest> requests = new ArrayList<Queue.ScheduleRequest>();
+        List<String> names = new ArrayList<String>();
         for (Dependency dep : downstreamProjects) {
             AbstractProject p = dep.getDownstreamProject();
             if (p.isDisabled()) {
@@ -213,15 +217,25 @@ public class BuildTrigger extends Recorder implements DependecyDeclarer {
                 // this is not completely accurate, as a new build might be triggered
                 // between these calls
                 String name = HyperlinkNote.encodeTo('/'+ p.getUrl(), p.getName())+" #"+p.getNextBuildNumber();
-                if(p.scheduleBuild(p.getQuietPeriod(), new UpstreamCause((Run)build),
-                                   buildActions.toArray(new Action[buildActions.size()]))) {
-                    logger.println(Messages.BuildTrigger_Triggering(name));
+                Queue.ScheduleRequest req = p.createScheduleRequest(p.getQuietPeriod(), new UpstreamCause((Run)build), buildActions);
+                if (req!=null) {
+                    requests.add(req);
+                    names.add(name);
                 } else {
                     logger.println(Messages.BuildTrigger_InQueue(name));
                 }
             }
         }
 
+        List<Queue.WaitingItem> items = Jenkins.getInstance().getQueue().schedule(requests);
+        for (int i=0; i<items.size(); i++) {
+            if (items.get(i)!=null) {
+                logger.println(Messages.BuildTrigger_Triggering(names.get(i)));
+            } else {
+                logger.println(Messages.BuildTrigger_InQueue(names.get(i)));
+            }
+        }
+
         return true;
     }
 
@@ -66,6 +66,7 @@ import java.io.Serializable;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -119,7 +120,7 @@ public class Fingerprinter extends Recorder implements Serializable, DependecyDe
             EnvVars environment = build.getEnvironment(listener);
             if(targets.length()!=0) {
                 String expandedTargets = environment.expand(targets);
-                record(build, listener, record, expandedTargets);
+                record(build, listener, record, expandedTargets, Collections.<String,String>emptyMap());
             }
 
             if(recordBuildArtifacts) {
@@ -131,13 +132,14 @@ public class Fingerprinter extends Recorder implements Serializable, DependecyDe
                     return true;
                 }
                 String expandedArtifacts = environment.expand(aa.getArtifacts());
-                record(build, listener, record, expandedArtifacts);
+                // the artifact store has digested the archived files already
+                record(build, listener, record, expandedArtifacts, ArtifactStore.getDigests(build));
             }
 
             build.getActions().add(new FingerprintAction(build,record));
 
             if (enableFingerprintsInDependencyGraph) {
-                Jenkins.getInstance().rebuildDependencyGraph();
+                Jenkins.getInstance().updateDependencyGraph(Collections.singleton(build.getProject()));
             }
         } catch (IOException e) {
             e.printStackTrace(listener.error(Messages.Fingerprinter_Failed()));
@@ -192,7 +194,11 @@ public class Fingerprinter extends Recorder implements Serializable, DependecyDe
         }
     }
 
-    private void record(AbstractBuild<?,?> build, BuildListener listener, Map<String,String> record, final String targets) throws IOException, InterruptedException {
+    /**
+     * @param known
+     *      Digests that are already known, keyed by the relative path in the workspace.
+     */
+    private void record(AbstractBuild<?,?> build, BuildListener listener, Map<String,String> record, final String targets, final Map<String,String> known) throws IOException, InterruptedException {
         final class Record implements Serializable {
             final boolean produced;
             final String relativePath;
@@ -239,7 +245,10 @@ public class Fingerprinter extends Recorder implements Serializable, DependecyDe
                     boolean produced = buildTimestamp <= file.lastModified()+2000;
 
                     try {
-                        results.add(new Record(produced,f,file.getName(),new FilePath(file).digest()));
+                        String md5 = known.get(f.replace(File.separatorChar,'/'));
+                        if (md5==null)
+                            md5 = new FilePath(file).digest();
+                        results.add(new Record(produced,f,file.getName(),md5));
                     } catch (IOException e) {
                         throw new IOException2(Messages.Fingerprinter_DigestFailed(file),e);
                     } catch (InterruptedException e) {
@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.triggers;
+
+import hudson.Util;
+import hudson.model.SCMedItem;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Decides which of the scheduled SCM pollings are actually worth running, based on how often
+ * each job has recently seen changes and how expensive its polling is.
+ *
+ * <p>
+ * A job whose polling keeps finding nothing is backed off exponentially: after {@link #BACKOFF_START}
+ * unchanged polls it skips 1, then 3, then 7... of its crontab ticks, but never waits longer than
+ * {@link #MAX_BACKOFF} milliseconds between two polls. A single change puts the job back on its
+ * crontab right away.
+ *
+ * <p>
+ * On top of that, all polls share a budget of {@link #getPollsPerMinute()} polls per minute. A poll that
+ * keeps a polling thread busy for longer than {@link #COST_UNIT} milliseconds is charged as several polls.
+ * Hot jobs (those that changed recently) and jobs that have been waiting for {@link #MAX_BACKOFF} can
+ * use the whole budget, while the rest of the jobs leave a {@link #RESERVE} fraction of it to them.
+ *
+ * @since 1.446
+ */
+public final class AdaptivePolling {
+    private final Map<SCMedItem,Stats> stats = new WeakHashMap<SCMedItem,Stats>();
+
+    /**
+     * Polls per minute, or 0 for unlimited.
+     */
+    private int pollsPerMinute;
+
+    /**
+     * Remaining budget, in polls. Goes negative when polls turn out to be more expensive than charged upfront.
+     */
+    private double tokens;
+
+    private long lastRefill = System.currentTimeMillis();
+
+    /**
+     * Polls that were skipped so far, either for backoff or for the budget.
+     */
+    private long skipped;
+
+    /**
+     * Per-job polling history.
+     */
+    public static final class Stats {
+        /**
+         * Weak, as {@link AdaptivePolling#stats} would otherwise never let go of the job.
+         */
+        private final WeakReference<SCMedItem> job;
+        private int unchanged;
+        private int skipsRemaining;
+        private long lastPoll;
+        private long lastChange;
+        private long averageDuration = -1;
+        private int skipped;
+
+        Stats(SCMedItem job) {
+            this.job = new WeakReference<SCMedItem>(job);
+        }
+
+        /**
+         * The job, or null if it has already been garbage collected.
+         */
+        public SCMedItem getJob() {
+            return job.get();
+        }
+
+        /**
+         * Number of polls in a row that didn't find any change.
+         */
+        public synchronized int getUnchangedPolls() {
+            return unchanged;
+        }
+
+        /**
+         * Number of crontab ticks that are going to be skipped before the job polls again.
+         */
+        public synchronized int getSkipsRemaining() {
+            return skipsRemaining;
+        }
+
+        /**
+         * Number of crontab ticks that were skipped for this job so far.
+         */
+        public synchronized int getSkipped() {
+            return skipped;
+        }
+
+        public synchronized long getLastPoll() {
+            return lastPoll;
+        }
+
+        /**
+         * When did the polling last find a change, or 0 if never.
+         */
+        public synchronized long getLastChange() {
+            return lastChange;
+        }
+
+        /**
+         * Exponential moving average of the polling duration, or -1 if the job hasn't polled yet.
+         */
+        public synchronized long getAverageDuration() {
+            return averageDuration;
+        }
+
+        public String getLastChangeString() {
+            long t = getLastChange();
+            return t==0 ? "N/A" : Util.getPastTimeString(System.currentTimeMillis()-t);
+        }
+
+        public String getAverageDurationString() {
+            long d = getAverageDuration();
+            return d<0 ? "N/A" : Util.getTimeSpanString(d);
+        }
+
+        /**
+         * True if this job changed recently enough not to be backed off.
+         */
+        public synchronized boolean isHot() {
+            return lastChange!=0 && unchanged<BACKOFF_START;
+        }
+
+        synchronized boolean isOverdue(long now) {
+            return lastPoll!=0 && now-lastPoll>=MAX_BACKOFF;
+        }
+
+        /**
+         * Consumes one crontab tick, and returns true if it's to be skipped.
+         */
+        synchronized boolean skip(long now) {
+            if (skipsRemaining>0 && !isOverdue(now)) {
+                skipsRemaining--;
+                skipped++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void record(long start, long duration, boolean changed) {
+            lastPoll = start;
+            averageDuration = averageDuration<0 ? duration : (averageDuration*3+duration)/4;
+            if (changed) {
+                lastChange = start;
+                unchanged = 0;
+                skipsRemaining = 0;
+            } else {
+                unchanged++;
+                int n = unchanged-BACKOFF_START;
+                skipsRemaining = n<0 ? 0 : (1<<Math.min(n+1,16))-1;
+            }
+        }
+    }
+
+    public synchronized int getPollsPerMinute() {
+        return pollsPerMinute;
+    }
+
+    public synchronized void setPollsPerMinute(int n) {
+        n = Math.max(0,n);
+        tokens = pollsPerMinute==0 ? n : Math.min(tokens,n);
+        pollsPerMinute = n;
+    }
+
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Number of polls left in the budget, or -1 if the budget is unlimited.
+     */
+    public synchronized int getRemainingBudget() {
+        if (pollsPerMinute==0)  return -1;
+        refill(System.currentTimeMillis());
+        return Math.max(0,(int)tokens);
+    }
+
+    /**
+     * Gets the history of the given job.
+     */
+    public synchronized Stats getStats(SCMedItem job) {
+        Stats s = stats.get(job);
+        if (s==null)
+            stats.put(job,s=new Stats(job));
+        return s;
+    }
+
+    /**
+     * Snapshot of the history of all the jobs that polled so far.
+     */
+    public synchronized List<Stats> getAllStats() {
+        List<Stats> r = new ArrayList<Stats>(stats.size());
+        for (Stats s : stats.values())
+            if (s.getJob()!=null)
+                r.add(s);
+        return r;
+    }
+
+    /**
+     * Called on every crontab tick of the given job to decide if it should poll now.
+     */
+    public boolean shouldPoll(SCMedItem job, long now) {
+        Stats s = getStats(job);
+        synchronized (this) {
+            if (s.skip(now)) {
+                skipped++;
+                return false;
+            }
+            if (pollsPerMinute==0)
+                return true;
+
+            refill(now);
+            double floor = s.isHot() || s.isOverdue(now) ? 0 : pollsPerMinute*RESERVE;
+            if (tokens-1<floor) {
+                skipped++;
+                s.skipped++;
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
+    /**
+     * Records the outcome of a polling.
+     */
+    public void onPolled(SCMedItem job, long start, long duration, boolean changed) {
+        getStats(job).record(start,duration,changed);
+        synchronized (this) {
+            if (pollsPerMinute!=0)
+                // the first unit was already charged in shouldPoll
+                tokens -= duration/COST_UNIT;
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now-lastRefill;
+        if (elapsed<=0)     return;
+        lastRefill = now;
+        tokens = Math.min(pollsPerMinute, tokens+pollsPerMinute*elapsed/60000.0);
+    }
+
+    /**
+     * Number of unchanged polls in a row before the job starts to skip crontab ticks.
+     */
+    public static int BACKOFF_START = Integer.getInteger(AdaptivePolling.class.getName()+".backoffStart",3);
+
+    /**
+     * The longest a job is left unpolled because of backoff, in milliseconds.
+     */
+    public static long MAX_BACKOFF = Long.getLong(AdaptivePolling.class.getName()+".maxBackoff",60*60*1000L);
+
+    /**
+     * Polling time that's charged as one poll against the budget, in milliseconds.
+     */
+    public static long COST_UNIT = Long.getLong(AdaptivePolling.class.getName()+".costUnit",60*1000L);
+
+    /**
+     * Fraction of the budget that jobs without recent changes leave to the hot and overdue ones.
+     */
+    public static double RESERVE = 0.25;
+}
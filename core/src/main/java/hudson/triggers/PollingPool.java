@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.triggers;
+
+import hudson.Util;
+import hudson.model.queue.QueueStatistics.Histogram;
+import hudson.triggers.SCMTrigger.Runner;
+import hudson.util.SequentialExecutionQueue;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads that poll the repositories of one SCM host, so that a slow or hanging host can only
+ * occupy its own threads and not starve the pollings of the other hosts.
+ *
+ * <p>
+ * Each pool has its own concurrency limit and its own {@link SequentialExecutionQueue}, and keeps
+ * the distributions of the polling durations and of the times pollings wait for a thread.
+ *
+ * @see SCMTrigger.DescriptorImpl#getPools()
+ * @since 1.446
+ */
+@ExportedBean(defaultVisibility=2)
+public final class PollingPool {
+    private final String host;
+    private final SequentialExecutionQueue queue;
+    private int maximumThreads;
+
+    private final Histogram durations = new Histogram();
+    private final Histogram waits = new Histogram();
+
+    /**
+     * @param host
+     *      null for the pool of the pollings that aren't associated with any particular host.
+     */
+    PollingPool(String host, SequentialExecutionQueue queue) {
+        this.host = host;
+        this.queue = queue;
+    }
+
+    /**
+     * The SCM host this pool polls, or null for the default pool.
+     */
+    @Exported
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Max number of concurrent pollings, or 0 for unlimited.
+     */
+    @Exported
+    public synchronized int getThreadCount() {
+        return maximumThreads;
+    }
+
+    synchronized void setThreadCount(int n) {
+        maximumThreads = n;
+        queue.setExecutors(n==0 ? Executors.newCachedThreadPool() : Executors.newFixedThreadPool(n));
+    }
+
+    public ExecutorService getExecutor() {
+        return queue.getExecutors();
+    }
+
+    void execute(Runner r) {
+        queue.execute(r);
+    }
+
+    /**
+     * True if a polling has been waiting for a thread for longer than {@link SCMTrigger#STARVATION_THRESHOLD}.
+     */
+    @Exported
+    public boolean isStarving() {
+        return queue.isStarving(SCMTrigger.STARVATION_THRESHOLD);
+    }
+
+    /**
+     * Gets the snapshot of {@link Runner}s that are performing polling in this pool.
+     */
+    public List<Runner> getRunners() {
+        return Util.filter(queue.getInProgress(),Runner.class);
+    }
+
+    /**
+     * Number of pollings in progress.
+     */
+    @Exported
+    public int getBusy() {
+        return queue.getInProgress().size();
+    }
+
+    /**
+     * Distribution of the time pollings took, in milliseconds.
+     */
+    @Exported
+    public Histogram getDurations() {
+        return durations;
+    }
+
+    /**
+     * Distribution of the time pollings waited for a thread, in milliseconds.
+     */
+    @Exported
+    public Histogram getWaits() {
+        return waits;
+    }
+
+    void onPolled(long wait, long duration) {
+        waits.add(wait);
+        durations.add(duration);
+    }
+
+    public String getDisplayName() {
+        return host!=null ? host : Messages.PollingPool_DefaultPool();
+    }
+}
@@ -36,6 +36,9 @@ import hudson.model.Item;
 import hudson.model.Project;
 import hudson.model.SCMedItem;
 import hudson.model.AdministrativeMonitor;
+import hudson.model.Api;
+import hudson.scm.SCM;
+import hudson.scm.SharedPolling;
 import hudson.util.FlushProofOutputStream;
 import hudson.util.FormValidation;
 import hudson.util.StreamTaskListener;
@@ -53,8 +56,10 @@ import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
@@ -64,6 +69,8 @@ import java.text.DateFormat;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
 import static java.util.logging.Level.*;
 
@@ -83,6 +90,21 @@ public class SCMTrigger extends Trigger<SCMedItem> {
         run(null);
     }
 
+    /**
+     * Skips the crontab ticks that {@link AdaptivePolling} decides against. Pollings requested
+     * through {@link #run()}, such as those of commit hooks, always happen.
+     */
+    @Override
+    void runOnSchedule() {
+        DescriptorImpl d = getDescriptor();
+        if (d.isAdaptivePolling() && !Jenkins.getInstance().isQuietingDown()
+         && !d.getAdaptivePolling().shouldPoll(job,System.currentTimeMillis())) {
+            LOGGER.fine("Skipping the polling of "+job+" as it's backed off");
+            return;
+        }
+        run();
+    }
+
     /**
      * Run the SCM trigger with additional build actions. Used by SubversionRepositoryStatus
      * to trigger a build at a specific revisionn number.
@@ -106,7 +128,8 @@ public class SCMTrigger extends Trigger<SCMedItem> {
             // even if we end up submitting this too many times, that's OK.
             // the real exclusion control happens inside Runner.
         	LOGGER.fine("scheduling the trigger to (asynchronously) run");
-            d.queue.execute(new Runner(additionalActions));
+            Runner r = new Runner(additionalActions);
+            r.pool.execute(r);
             d.clogCheck();
         }
     }
@@ -121,6 +144,14 @@ public class SCMTrigger extends Trigger<SCMedItem> {
         return Collections.singleton(new SCMAction());
     }
 
+    /**
+     * Determines the {@link PollingPool} that polls this job.
+     */
+    private String getPollingHost() {
+        SCM scm = job.asProject().getScm();
+        return scm!=null ? scm.getPollingHost(job.asProject()) : null;
+    }
+
     /**
      * Returns the file that records the last/current polling activity.
      */
@@ -128,7 +159,7 @@ public class SCMTrigger extends Trigger<SCMedItem> {
         return new File(job.getRootDir(),"scm-polling.log");
     }
 
-    @Extension
+    @Extension @ExportedBean
     public static class DescriptorImpl extends TriggerDescriptor {
         /**
          * Used to control the execution of the polling tasks.
@@ -140,37 +171,119 @@ public class SCMTrigger extends Trigger<SCMedItem> {
          */
         private transient final SequentialExecutionQueue queue = new SequentialExecutionQueue(Executors.newSingleThreadExecutor());
 
+        /**
+         * Polls the jobs whose SCM doesn't tell which host it polls.
+         */
+        private transient final PollingPool defaultPool = new PollingPool(null,queue);
+
+        /**
+         * {@link PollingPool}s of the individual SCM hosts, keyed by {@link SCM#getPollingHost(AbstractProject)}.
+         */
+        private transient final Map<String,PollingPool> pools = new HashMap<String,PollingPool>();
+
         /**
          * Whether the projects should be polled all in one go in the order of dependencies. The default behavior is
          * that each project polls for changes independently.
          */
         public boolean synchronousPolling = false;
 
+        /**
+         * With {@link #synchronousPolling}, the max number of projects polled at once. Projects are
+         * still only polled after their upstream projects. 1 polls one project at a time.
+         *
+         * @since 1.446
+         */
+        public int synchronousPollingParallelism = 1;
+
         /**
          * Max number of threads for SCM polling.
          * 0 for unbounded.
          */
         private int maximumThreads;
 
+        /**
+         * Max number of threads for SCM polling of each SCM host.
+         * 0, the default, to poll all the hosts with the threads of {@link #maximumThreads}, so that the
+         * total number of polling threads doesn't grow with the number of hosts unless asked for.
+         */
+        private int maximumThreadsPerHost;
+
+        /**
+         * Whether the crontab ticks of each job are thinned out according to its change history.
+         *
+         * @see AdaptivePolling
+         */
+        private boolean adaptivePolling;
+
+        /**
+         * Budget of adaptive polling, in polls per minute. 0 for unlimited.
+         */
+        private int pollsPerMinute;
+
+        private transient final AdaptivePolling adaptive = new AdaptivePolling();
+
         public DescriptorImpl() {
             load();
             resizeThreadPool();
+            adaptive.setPollsPerMinute(pollsPerMinute);
         }
 
         public boolean isApplicable(Item item) {
             return item instanceof SCMedItem;
         }
 
+        /**
+         * Gets the executor of the default {@link PollingPool}.
+         */
         public ExecutorService getExecutor() {
             return queue.getExecutors();
         }
 
+        /**
+         * Gets the {@link PollingPool} that polls the given SCM host, creating it if necessary.
+         *
+         * @param host
+         *      null for the default pool.
+         * @return
+         *      the default pool if {@link #getPollingThreadCountPerHost()} is 0.
+         * @since 1.446
+         */
+        public PollingPool getPool(String host) {
+            if (host==null || maximumThreadsPerHost==0)     return defaultPool;
+            synchronized (pools) {
+                PollingPool p = pools.get(host);
+                if (p==null) {
+                    pools.put(host,p=new PollingPool(host,new SequentialExecutionQueue(Executors.newSingleThreadExecutor())));
+                    p.setThreadCount(getHostThreadCount());
+                }
+                return p;
+            }
+        }
+
+        /**
+         * Gets the snapshot of all the {@link PollingPool}s, starting with the default one.
+         *
+         * @since 1.446
+         */
+        @Exported(inline=true)
+        public List<PollingPool> getPools() {
+            List<PollingPool> r = new ArrayList<PollingPool>();
+            r.add(defaultPool);
+            synchronized (pools) {
+                r.addAll(pools.values());
+            }
+            return r;
+        }
+
         /**
          * Returns true if the SCM polling thread queue has too many jobs
          * than it can handle.
          */
         public boolean isClogged() {
-            return queue.isStarving(STARVATION_THRESHOLD);
+            for (PollingPool p : getPools())
+                if (p.isStarving())
+                    return true;
+            return false;
         }
 
         /**
@@ -185,7 +298,10 @@ public class SCMTrigger extends Trigger<SCMedItem> {
          * Gets the snapshot of {@link Runner}s that are performing polling.
          */
         public List<Runner> getRunners() {
-            return Util.filter(queue.getInProgress(),Runner.class);
+            List<Runner> r = new ArrayList<Runner>();
+            for (PollingPool p : getPools())
+                r.addAll(p.getRunners());
+            return r;
         }
 
         /**
@@ -227,11 +343,109 @@ public class SCMTrigger extends Trigger<SCMedItem> {
         }
 
         /**
-         * Update the {@link ExecutorService} instance.
+         * @since 1.446
+         */
+        public boolean isAdaptivePolling() {
+            return adaptivePolling;
+        }
+
+        /**
+         * @since 1.446
+         */
+        public void setAdaptivePolling(boolean adaptivePolling) {
+            this.adaptivePolling = adaptivePolling;
+        }
+
+        /**
+         * Gets the polling history of the jobs, which is maintained even when the adaptive polling is off.
+         *
+         * @since 1.446
+         */
+        public AdaptivePolling getAdaptivePolling() {
+            return adaptive;
+        }
+
+        /**
+         * Gets the statistics of the pollings shared between jobs watching the same repository.
+         *
+         * @since 1.446
+         */
+        public SharedPolling getSharedPolling() {
+            return SharedPolling.INSTANCE;
+        }
+
+        /**
+         * Gets the adaptive polling budget.
+         *
+         * @return
+         *      0 if unlimited.
+         * @since 1.446
+         */
+        public int getPollsPerMinute() {
+            return pollsPerMinute;
+        }
+
+        /**
+         * @since 1.446
+         */
+        public void setPollsPerMinute(int n) {
+            pollsPerMinute = Math.max(0,n);
+            adaptive.setPollsPerMinute(pollsPerMinute);
+        }
+
+        /**
+         * Gets the number of concurrent threads used for polling each SCM host.
+         * These are in addition to the threads of {@link #getPollingThreadCount()}, so up to
+         * this many times the number of hosts more pollings can run at once.
+         *
+         * @return
+         *      0 if the hosts aren't given their own threads, and all pollings share those of {@link #getPollingThreadCount()}.
+         * @since 1.446
+         */
+        public int getPollingThreadCountPerHost() {
+            return maximumThreadsPerHost;
+        }
+
+        /**
+         * Sets the number of concurrent threads used for polling each SCM host and resizes the thread pools accordingly.
+         * @param n number of concurrent threads, zero or less to not give the hosts their own threads, maximum is 100
+         * @since 1.446
+         */
+        public void setPollingThreadCountPerHost(int n) {
+            if(n<0)     n=0;
+            if(n>100)   n=100;
+
+            maximumThreadsPerHost = n;
+
+            resizeThreadPool();
+        }
+
+        private int getHostThreadCount() {
+            // once turned off, the pools only finish what they've got
+            return Math.max(maximumThreadsPerHost,1);
+        }
+
+        /**
+         * Update the {@link ExecutorService} instances.
          */
         /*package*/ synchronized void resizeThreadPool() {
-            queue.setExecutors(
-                    (maximumThreads==0 ? Executors.newCachedThreadPool() : Executors.newFixedThreadPool(maximumThreads)));
+            defaultPool.setThreadCount(maximumThreads);
+            synchronized (pools) {
+                for (PollingPool p : pools.values())
+                    p.setThreadCount(getHostThreadCount());
+            }
+        }
+
+        /**
+         * Formats the duration for display. Used from views.
+         */
+        public String timeSpan(long duration) {
+            return Util.getTimeSpanString(duration);
+        }
+
+        public Api getApi() {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            return new Api(this);
         }
 
         @Override
@@ -242,6 +456,13 @@ public class SCMTrigger extends Trigger<SCMedItem> {
             else
                 setPollingThreadCount(Integer.parseInt(t));
 
+            t = json.optString("pollingThreadCountPerHost",null);
+            setPollingThreadCountPerHost(t==null || t.length()==0 ? 0 : Integer.parseInt(t));
+
+            setAdaptivePolling(json.optBoolean("adaptivePolling"));
+            t = json.optString("pollsPerMinute",null);
+            setPollsPerMinute(t==null || t.length()==0 ? 0 : Integer.parseInt(t));
+
             // Save configuration
             save();
 
@@ -253,6 +474,14 @@ public class SCMTrigger extends Trigger<SCMedItem> {
                 return FormValidation.ok();
             return FormValidation.validateNonNegativeInteger(value);
         }
+
+        public FormValidation doCheckPollingThreadCountPerHost(@QueryParameter String value) {
+            return doCheckPollingThreadCount(value);
+        }
+
+        public FormValidation doCheckPollsPerMinute(@QueryParameter String value) {
+            return doCheckPollingThreadCount(value);
+        }
     }
 
     @Extension
@@ -365,6 +594,14 @@ public class SCMTrigger extends Trigger<SCMedItem> {
          */
         private volatile long startTime;
 
+        /**
+         * When was this polling requested? Reset after each run, so that a polling requested again
+         * while this one is running doesn't count the time of this run as waiting.
+         */
+        private volatile long submissionTime = System.currentTimeMillis();
+
+        private final PollingPool pool = getDescriptor().getPool(getPollingHost());
+
         private Action[] additionalActions;
 
         public Runner() {
@@ -418,7 +655,10 @@ public class SCMTrigger extends Trigger<SCMedItem> {
                     long start = System.currentTimeMillis();
                     logger.println("Started on "+ DateFormat.getDateTimeInstance().format(new Date()));
                     boolean result = job.poll(listener).hasChanges();
-                    logger.println("Done. Took "+ Util.getTimeSpanString(System.currentTimeMillis()-start));
+                    long duration = System.currentTimeMillis()-start;
+                    getDescriptor().getAdaptivePolling().onPolled(job,start,duration,result);
+                    pool.onPolled(startTime-submissionTime,duration);
+                    logger.println("Done. Took "+ Util.getTimeSpanString(duration));
                     if(result)
                         logger.println("Changes found");
                     else
@@ -463,6 +703,7 @@ public class SCMTrigger extends Trigger<SCMedItem> {
                     }
                 }
             } finally {
+                submissionTime = System.currentTimeMillis();
                 Thread.currentThread().setName(threadName);
             }
         }
@@ -56,6 +56,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Timer;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -94,6 +95,14 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
      */
     public void run() {}
 
+    /**
+     * Called by {@link Cron} when the crontab matches the current time.
+     * Unlike {@link #run()}, this is never called for an explicit request.
+     */
+    void runOnSchedule() {
+        run();
+    }
+
     /**
      * Called before a {@link Trigger} is removed.
      * Under some circumstances, this may be invoked more than once for
@@ -167,6 +176,15 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
         return spec;
     }
 
+    /**
+     * Gets the parsed form of {@link #getSpec()}.
+     *
+     * @since 1.446
+     */
+    public final CronTabList getCronTabList() {
+        return tabs;
+    }
+
     protected Object readResolve() throws ObjectStreamException {
         try {
             tabs = CronTabList.create(spec);
@@ -223,21 +241,40 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
                 // ignored, only the global setting is honored. The polling job is submitted only if the previous job has
                 // terminated.
                 // FIXME allow to set a global crontab spec
-                previousSynchronousPolling = scmd.getExecutor().submit(new DependencyRunner(new ProjectRunnable() {
+                ExecutorService executor = scmd.getExecutor();
+                previousSynchronousPolling = executor.submit(new DependencyRunner(new ProjectRunnable() {
                     public void run(AbstractProject p) {
                         for (Trigger t : (Collection<Trigger>) p.getTriggers().values()) {
                             if (t instanceof SCMTrigger) {
                                 LOGGER.fine("synchronously triggering SCMTrigger for project " + t.job.getName());
-                                t.run();
+                                t.runOnSchedule();
                             }
                         }
                     }
-                }));
+                }, executor, scmd.synchronousPollingParallelism));
             } else {
                 LOGGER.fine("synchronous polling has detected unfinished jobs, will not trigger additional jobs.");
             }
         }
 
+        if (!SCAN_ALL) {
+            // Process the triggers that are due, except SCMTriggers when synchronousPolling is set
+            for (TriggerSchedule.Entry e : TriggerSchedule.INSTANCE.due(cal.getTimeInMillis())) {
+                Trigger t = e.trigger;
+                if (t instanceof SCMTrigger && scmd.synchronousPolling)
+                    continue;
+                if (!e.isCurrent())
+                    continue;   // reconfigured or deleted since it was scheduled
+                LOGGER.config("cron triggered "+e.project.getName());
+                try {
+                    t.runOnSchedule();
+                } catch (Throwable x) {
+                    LOGGER.log(Level.WARNING, t.getClass().getName()+".run() failed for "+e.project.getName(),x);
+                }
+            }
+            return;
+        }
+
         // Process all triggers, except SCMTriggers when synchronousPolling is set
         for (AbstractProject<?,?> p : inst.getAllItems(AbstractProject.class)) {
             for (Trigger t : p.getTriggers().values()) {
@@ -247,7 +284,7 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
                     if (t.tabs.check(cal)) {
                         LOGGER.config("cron triggered "+p.getName());
                         try {
-                            t.run();
+                            t.runOnSchedule();
                         } catch (Throwable e) {
                             // t.run() is a plugin, and some of them throw RuntimeException and other things.
                             // don't let that cancel the polling activity. report and move on.
@@ -261,6 +298,11 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
 
     private static final Logger LOGGER = Logger.getLogger(Trigger.class.getName());
 
+    /**
+     * Go back to checking every trigger of every project every minute, instead of using {@link TriggerSchedule}.
+     */
+    public static boolean SCAN_ALL = Boolean.getBoolean(Trigger.class.getName()+".scanAll");
+
     /**
      * This timer is available for all the components inside Hudson to schedule
      * some work.
@@ -275,6 +317,8 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
     public static void init() {
         new DoubleLaunchChecker().schedule();
 
+        TriggerSchedule.INSTANCE.rebuild();
+
         // start all PeridocWorks
         for(PeriodicWork p : PeriodicWork.all())
             timer.scheduleAtFixedRate(p,p.getInitialDelay(),p.getRecurrencePeriod());
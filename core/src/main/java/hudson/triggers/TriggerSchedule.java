@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.triggers;
+
+import hudson.model.AbstractProject;
+import hudson.scheduler.CronTabList;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * Keeps {@link Trigger}s ordered by the next time their crontab fires, so that {@link Trigger.Cron}
+ * only touches the triggers that are due instead of checking every trigger of every project every minute.
+ *
+ * <p>
+ * Projects call {@link #update(AbstractProject)} when their triggers change. As a safety net for triggers
+ * that change some other way, the whole schedule is rebuilt from the list of projects every
+ * {@link #REBUILD_INTERVAL} milliseconds, and each trigger is checked to still be in use right before it runs.
+ *
+ * @since 1.446
+ */
+public final class TriggerSchedule {
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+    private final Map<AbstractProject<?,?>,List<Entry>> entries = new IdentityHashMap<AbstractProject<?,?>,List<Entry>>();
+
+    /**
+     * The minute that the next call to {@link #due(long)} is going to look at.
+     * Newly registered triggers are scheduled from here, so that a {@link Trigger.Cron} catching up on
+     * missed minutes doesn't skip them.
+     */
+    private long cursor = toMinute(System.currentTimeMillis());
+
+    private long lastRebuild = System.currentTimeMillis();
+
+    /**
+     * A trigger and the next time it fires.
+     */
+    static final class Entry implements Comparable<Entry> {
+        final AbstractProject<?,?> project;
+        final Trigger<?> trigger;
+        private long next;
+        private boolean cancelled;
+
+        Entry(AbstractProject<?,?> project, Trigger<?> trigger) {
+            this.project = project;
+            this.trigger = trigger;
+        }
+
+        /**
+         * Computes the first time at or after the given minute that this trigger fires.
+         *
+         * @return
+         *      false if it never does.
+         */
+        private boolean schedule(long from) {
+            CronTabList tabs = trigger.getCronTabList();
+            Calendar c = tabs!=null ? tabs.ceil(from) : null;
+            if (c==null)    return false;
+            next = toMinute(c.getTimeInMillis());
+            return true;
+        }
+
+        /**
+         * Checks that the project still exists and still uses this trigger.
+         */
+        boolean isCurrent() {
+            Jenkins h = Jenkins.getInstance();
+            if (h==null || h.getItemByFullName(project.getFullName())!=project)
+                return false;
+            for (Trigger<?> t : project.getTriggers().values())
+                if (t==trigger)
+                    return true;
+            return false;
+        }
+
+        public int compareTo(Entry that) {
+            return next<that.next ? -1 : next>that.next ? 1 : 0;
+        }
+    }
+
+    /**
+     * (Re-)registers the triggers of the given project.
+     */
+    public void update(AbstractProject<?,?> p) {
+        List<Entry> list = new ArrayList<Entry>();
+        for (Trigger<?> t : p.getTriggers().values())
+            list.add(new Entry(p,t));
+
+        synchronized (this) {
+            cancel(p);
+            for (Entry e : list)
+                if (e.schedule(cursor))
+                    queue.add(e);
+            if (!list.isEmpty())
+                entries.put(p,list);
+        }
+    }
+
+    /**
+     * Forgets the triggers of the given project.
+     */
+    public synchronized void remove(AbstractProject<?,?> p) {
+        cancel(p);
+    }
+
+    private void cancel(AbstractProject<?,?> p) {
+        List<Entry> old = entries.remove(p);
+        if (old!=null)
+            for (Entry e : old)
+                e.cancelled = true; // removing from the middle of the heap is linear, so let due() drop it
+    }
+
+    /**
+     * Registers the triggers of all the projects from scratch.
+     */
+    public void rebuild() {
+        List<AbstractProject> projects = Jenkins.getInstance().getAllItems(AbstractProject.class);
+        synchronized (this) {
+            queue.clear();
+            entries.clear();
+            lastRebuild = System.currentTimeMillis();
+        }
+        for (AbstractProject<?,?> p : projects)
+            update(p);
+    }
+
+    /**
+     * Picks up the triggers that fire at the given time, and schedules their next run.
+     *
+     * <p>
+     * The caller is expected to call this for every minute in turn, including the ones it fell behind on.
+     * The triggers are returned without being checked with {@link Entry#isCurrent()}, since that needs
+     * the lock of the project, which shouldn't be acquired while holding ours.
+     */
+    List<Entry> due(long time) {
+        if (System.currentTimeMillis()-lastRebuild > REBUILD_INTERVAL) {
+            LOGGER.fine("Rebuilding the trigger schedule");
+            rebuild();
+        }
+
+        long minute = toMinute(time);
+        List<Entry> r = new ArrayList<Entry>();
+        synchronized (this) {
+            cursor = minute+MIN;
+            while (!queue.isEmpty() && queue.peek().next<=minute) {
+                Entry e = queue.poll();
+                if (e.cancelled)    continue;
+                r.add(e);
+                if (e.schedule(cursor))
+                    queue.add(e);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Number of registered triggers, including the ones that are no longer in use but haven't come due yet.
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    private static final long MIN = 60*1000;
+
+    private static long toMinute(long t) {
+        return t-t%MIN;
+    }
+
+    public static final TriggerSchedule INSTANCE = new TriggerSchedule();
+
+    /**
+     * How often the schedule is rebuilt from the list of projects, in milliseconds.
+     */
+    public static long REBUILD_INTERVAL = Long.getLong(TriggerSchedule.class.getName()+".rebuildInterval",60*MIN);
+
+    private static final Logger LOGGER = Logger.getLogger(TriggerSchedule.class.getName());
+}
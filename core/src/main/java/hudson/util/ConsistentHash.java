@@ -251,19 +251,53 @@ public class ConsistentHash<T> {
      * Adds a new node with the given number of replica.
      *
      * <p>
-     * This is the only function that manipulates {@link #items}.
+     * This and {@link #addAll(Map)} are the only functions that manipulate {@link #items}.
      */
     public synchronized void add(T node, int replica) {
-        if(replica==0) {
-            items.remove(node);
-        } else {
-            Point[] points = new Point[replica];
-            String seed = hash.hash(node);
-            for (int i=0; i<replica; i++)
-                points[i] = new Point(md5(seed+':'+i),node);
-            items.put(node,points);
-        }
-        table = new Table();
+        if (update(node,replica))
+            table = new Table();
+    }
+
+    /**
+     * Adds/removes/changes multiple nodes at once.
+     *
+     * <p>
+     * This is equivalent to calling {@link #add(Object, int)} for each entry,
+     * but the hash table is only rebuilt once, so this is much faster
+     * when many nodes are involved.
+     *
+     * @param nodes
+     *      Nodes to their number of replica. 0 to remove the node.
+     * @since 1.446
+     */
+    public synchronized void addAll(Map<? extends T,Integer> nodes) {
+        boolean changed = false;
+        for (Map.Entry<? extends T,Integer> e : nodes.entrySet())
+            changed |= update(e.getKey(),e.getValue());
+        if (changed)
+            table = new Table();
+    }
+
+    /**
+     * Updates {@link #items} without rebuilding the table.
+     *
+     * @return
+     *      true if anything has changed.
+     */
+    private boolean update(T node, int replica) {
+        if(replica==0)
+            return items.remove(node)!=null;
+
+        Point[] current = items.get(node);
+        if (current!=null && current.length==replica)
+            return false;   // no change. avoid recomputing MD5s
+
+        Point[] points = new Point[replica];
+        String seed = hash.hash(node);
+        for (int i=0; i<replica; i++)
+            points[i] = new Point(md5(seed+':'+i),node);
+        items.put(node,points);
+        return true;
     }
 
     /**
@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * rsync-style delta encoding of files.
+ *
+ * <p>
+ * The receiver splits its current copy of a file into fixed size blocks and sends the
+ * {@link Signature}, which is a weak rolling checksum and an MD5 digest of each block.
+ * The sender slides a window over its copy, looks up the rolling checksum of every offset,
+ * and sends either a reference to a block the receiver already has, or the literal bytes.
+ * So the cost of the transfer is proportional to the changes, not to the size of the file.
+ *
+ * <p>
+ * The delta is a sequence of operations:
+ * <pre>
+ * COPY    int blockIndex, int blockCount
+ * LITERAL int length, byte[length]
+ * END
+ * </pre>
+ *
+ * @since 1.446
+ * @see hudson.FilePath#syncRecursiveTo(String, String, hudson.FilePath)
+ */
+public class DeltaTransfer {
+    private static final byte END = 0;
+    private static final byte COPY = 1;
+    private static final byte LITERAL = 2;
+
+    /**
+     * Upper bound of a single LITERAL operation, which is also the size of the read-ahead buffer.
+     */
+    private static final int MAX_LITERAL = 64*1024;
+
+    /**
+     * Block checksums of a file.
+     */
+    public static final class Signature implements Serializable {
+        public final int blockSize;
+        public final long length;
+        private final int[] weak;
+        private final byte[][] strong;
+
+        Signature(int blockSize, long length, int[] weak, byte[][] strong) {
+            this.blockSize = blockSize;
+            this.length = length;
+            this.weak = weak;
+            this.strong = strong;
+        }
+
+        public int getBlockCount() {
+            return weak.length;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Chooses the block size for a file of the given size.
+     * Like rsync, this is roughly the square root of the size, so that the signature grows slowly.
+     */
+    public static int getBlockSize(long length) {
+        int bs = (int)Math.min(MAX_BLOCK_SIZE, Math.sqrt(length));
+        bs = Math.max(MIN_BLOCK_SIZE, bs);
+        return (bs+7)&~7;
+    }
+
+    /**
+     * Computes the signature of the given file.
+     */
+    public static Signature signature(File f) throws IOException {
+        long length = f.length();
+        int bs = getBlockSize(length);
+        int n = (int)((length+bs-1)/bs);
+        int[] weak = new int[n];
+        byte[][] strong = new byte[n][];
+
+        MessageDigest md5 = md5();
+        byte[] buf = new byte[bs];
+        InputStream in = new FileInputStream(f);
+        try {
+            for (int i=0; i<n; i++) {
+                int len = readFully(in,buf);
+                weak[i] = checksum(buf,0,len);
+                md5.update(buf,0,len);
+                strong[i] = md5.digest();
+            }
+        } finally {
+            in.close();
+        }
+        return new Signature(bs,length,weak,strong);
+    }
+
+    /**
+     * Writes the delta that transforms the file described by the signature into the given file.
+     *
+     * @param sig
+     *      Signature of the receiver's copy, or null if the receiver doesn't have it,
+     *      in which case the whole file is sent as literals.
+     * @return
+     *      the number of literal bytes, which is what the delta saved us from.
+     */
+    public static long writeDelta(File src, Signature sig, DataOutputStream out) throws IOException {
+        InputStream in = new FileInputStream(src);
+        try {
+            if (sig==null || sig.getBlockCount()==0)
+                return writeLiterals(in,out);
+            return new Encoder(sig,in,out).run();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long writeLiterals(InputStream in, DataOutputStream out) throws IOException {
+        byte[] buf = new byte[MAX_LITERAL];
+        long total = 0;
+        int len;
+        while ((len=readFully(in,buf))>0) {
+            out.writeByte(LITERAL);
+            out.writeInt(len);
+            out.write(buf,0,len);
+            total += len;
+        }
+        out.writeByte(END);
+        return total;
+    }
+
+    /**
+     * Reads a delta and writes the reconstructed file.
+     *
+     * @param base
+     *      The receiver's copy of the file that the signature was computed from.
+     *      Can be null if the signature was null.
+     * @param blockSize
+     *      {@link Signature#blockSize} of the signature.
+     * @param out
+     *      Receives the new content. This must be a different file from the base.
+     */
+    public static void applyDelta(File base, int blockSize, DataInputStream in, OutputStream out) throws IOException {
+        RandomAccessFile raf = base!=null && base.exists() ? new RandomAccessFile(base,"r") : null;
+        try {
+            byte[] buf = new byte[MAX_LITERAL];
+            while (true) {
+                byte op = in.readByte();
+                switch (op) {
+                case END:
+                    return;
+                case COPY:
+                    int index = in.readInt();
+                    int count = in.readInt();
+                    if (raf==null)
+                        throw new IOException("Delta refers to a missing file "+base);
+                    long pos = (long)index*blockSize;
+                    long len = Math.min((long)count*blockSize, raf.length()-pos);
+                    raf.seek(pos);
+                    while (len>0) {
+                        int chunk = (int)Math.min(buf.length,len);
+                        raf.readFully(buf,0,chunk);
+                        out.write(buf,0,chunk);
+                        len -= chunk;
+                    }
+                    break;
+                case LITERAL:
+                    int length = in.readInt();
+                    if (length<0 || length>MAX_LITERAL)
+                        throw new IOException("Corrupted delta: literal of "+length+" bytes");
+                    in.readFully(buf,0,length);
+                    out.write(buf,0,length);
+                    break;
+                default:
+                    throw new IOException("Corrupted delta: unknown operation "+op);
+                }
+            }
+        } finally {
+            if (raf!=null)
+                raf.close();
+        }
+    }
+
+    /**
+     * Slides the window over the sender's copy.
+     */
+    private static final class Encoder {
+        private final Signature sig;
+        private final InputStream in;
+        private final DataOutputStream out;
+        private final int bs;
+        private final Map<Integer,int[]> blocks = new HashMap<Integer,int[]>();
+        private final MessageDigest md5 = md5();
+
+        /**
+         * Data in {@code buf[0,end)} is valid, the window is {@code buf[pos,pos+bs)},
+         * and {@code buf[literal,pos)} is yet to be sent as literals.
+         */
+        private final byte[] buf;
+        private int end, pos, literal;
+        private boolean eof;
+
+        /**
+         * Pending run of consecutive blocks, to be sent in one COPY.
+         */
+        private int runStart = -1, runLength;
+
+        private long literals;
+
+        Encoder(Signature sig, InputStream in, DataOutputStream out) {
+            this.sig = sig;
+            this.in = in;
+            this.out = out;
+            this.bs = sig.blockSize;
+            this.buf = new byte[bs+MAX_LITERAL];
+
+            Map<Integer,List<Integer>> m = new HashMap<Integer,List<Integer>>();
+            // only full blocks can be matched by the sliding window
+            int n = sig.length%bs==0 ? sig.getBlockCount() : sig.getBlockCount()-1;
+            for (int i=0; i<n; i++) {
+                List<Integer> l = m.get(sig.weak[i]);
+                if (l==null)    m.put(sig.weak[i], l=new ArrayList<Integer>(1));
+                l.add(i);
+            }
+            for (Map.Entry<Integer,List<Integer>> e : m.entrySet()) {
+                int[] a = new int[e.getValue().size()];
+                for (int i=0; i<a.length; i++)
+                    a[i] = e.getValue().get(i);
+                blocks.put(e.getKey(),a);
+            }
+        }
+
+        long run() throws IOException {
+            fill();
+            boolean fresh = true;
+            int a=0, b=0;   // components of the rolling checksum of the window
+
+            while (true) {
+                // rolling needs the byte right after the window
+                if (end-pos<=bs && !eof)
+                    compact();
+                if (end-pos<bs)
+                    break;      // whatever remains can't be a full block
+
+                if (fresh) {
+                    a = b = 0;
+                    for (int i=0; i<bs; i++) {
+                        a += buf[pos+i]&0xFF;
+                        b += (bs-i)*(buf[pos+i]&0xFF);
+                    }
+                    fresh = false;
+                }
+
+                int match = find(((b&0xFFFF)<<16)|(a&0xFFFF));
+                if (match>=0) {
+                    matched(match,bs);
+                    fresh = true;
+                    continue;
+                }
+
+                if (pos-literal>=MAX_LITERAL)
+                    flushLiterals();
+                if (end-pos==bs)
+                    break;      // the last window of the file didn't match
+
+                int drop = buf[pos]&0xFF, add = buf[pos+bs]&0xFF;
+                a += add-drop;
+                b += a-bs*drop;
+                pos++;
+            }
+
+            // the last block of the receiver's copy is usually shorter
+            int last = sig.getBlockCount()-1;
+            int tail = (int)(sig.length-(long)last*bs);
+            if (tail<bs && end-pos==tail && checksum(buf,pos,tail)==sig.weak[last]) {
+                md5.update(buf,pos,tail);
+                if (Arrays.equals(md5.digest(),sig.strong[last]))
+                    matched(last,tail);
+            }
+
+            pos = end;
+            flushLiterals();
+            flushRun();
+            out.writeByte(END);
+            return literals;
+        }
+
+        private int find(int weak) {
+            int[] candidates = blocks.get(weak);
+            if (candidates==null)   return -1;
+
+            md5.update(buf,pos,bs);
+            byte[] digest = md5.digest();
+            // prefer the block that continues the current run, so that it stays a single COPY
+            if (runStart>=0) {
+                int next = runStart+runLength;
+                for (int c : candidates)
+                    if (c==next && Arrays.equals(digest,sig.strong[c]))
+                        return c;
+            }
+            for (int c : candidates)
+                if (Arrays.equals(digest,sig.strong[c]))
+                    return c;
+            return -1;
+        }
+
+        /**
+         * The window of the given length at {@link #pos} is the given block of the receiver.
+         */
+        private void matched(int block, int len) throws IOException {
+            flushLiterals();
+            if (runStart>=0 && runStart+runLength==block) {
+                runLength++;
+            } else {
+                flushRun();
+                runStart = block;
+                runLength = 1;
+            }
+            pos += len;
+            literal = pos;
+        }
+
+        private void flushRun() throws IOException {
+            if (runStart<0)     return;
+            out.writeByte(COPY);
+            out.writeInt(runStart);
+            out.writeInt(runLength);
+            runStart = -1;
+            runLength = 0;
+        }
+
+        private void flushLiterals() throws IOException {
+            int len = pos-literal;
+            if (len<=0)     return;
+            flushRun();
+            for (int off=literal; off<pos; off+=MAX_LITERAL) {
+                int chunk = Math.min(MAX_LITERAL,pos-off);
+                out.writeByte(LITERAL);
+                out.writeInt(chunk);
+                out.write(buf,off,chunk);
+            }
+            literals += len;
+            literal = pos;
+        }
+
+        /**
+         * Discards the data before the window and reads more.
+         */
+        private void compact() throws IOException {
+            flushLiterals();
+            System.arraycopy(buf,pos,buf,0,end-pos);
+            end -= pos;
+            literal -= pos;
+            pos = 0;
+            fill();
+        }
+
+        private void fill() throws IOException {
+            while (end<buf.length && !eof) {
+                int n = in.read(buf,end,buf.length-end);
+                if (n<0)    eof = true;
+                else        end += n;
+            }
+        }
+    }
+
+    /**
+     * Rolling checksum of the given block, as used by rsync.
+     */
+    /*package*/ static int checksum(byte[] buf, int off, int len) {
+        int a=0, b=0;
+        for (int i=0; i<len; i++) {
+            a += buf[off+i]&0xFF;
+            b += (len-i)*(buf[off+i]&0xFF);
+        }
+        return ((b&0xFFFF)<<16)|(a&0xFFFF);
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int len = 0;
+        while (len<buf.length) {
+            int n = in.read(buf,len,buf.length-len);
+            if (n<0)    break;
+            len += n;
+        }
+        return len;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+    }
+
+    public static int MIN_BLOCK_SIZE = Integer.getInteger(DeltaTransfer.class.getName()+".minBlockSize",2048);
+    public static int MAX_BLOCK_SIZE = Integer.getInteger(DeltaTransfer.class.getName()+".maxBlockSize",128*1024);
+}
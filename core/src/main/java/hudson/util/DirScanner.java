@@ -10,6 +10,8 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 
 import static hudson.Util.fixEmpty;
 
@@ -109,5 +111,43 @@ public abstract class DirScanner implements Serializable {
         private static final long serialVersionUID = 1L;
     }
 
+    /**
+     * Scans a list of files that is known ahead of time, without listing any directory.
+     *
+     * @since 1.446
+     */
+    public static class Listed extends DirScanner {
+        private final String prefix;
+        private final Collection<String> paths;
+
+        /**
+         * @param paths
+         *      '/'-separated paths relative to the directory being scanned.
+         *      Those that do not exist or are not files are skipped.
+         */
+        public Listed(Collection<String> paths) {
+            this("",paths);
+        }
+
+        /**
+         * @param prefix
+         *      Prepended to each path to form the name passed to {@link FileVisitor}.
+         */
+        public Listed(String prefix, Collection<String> paths) {
+            this.prefix = prefix;
+            this.paths = new ArrayList<String>(paths);
+        }
+
+        public void scan(File dir, FileVisitor visitor) throws IOException {
+            for (String path : paths) {
+                File f = new File(dir,path);
+                if (f.isFile())
+                    visitor.visit(f,prefix+path);
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
     private static final long serialVersionUID = 1L;
 }
@@ -36,6 +36,7 @@ import hudson.slaves.SlaveComputer;
 import hudson.util.ProcessTree.OSProcess;
 import hudson.util.ProcessTreeRemoting.IOSProcess;
 import hudson.util.ProcessTreeRemoting.IProcessTree;
+import hudson.util.jna.GNUCLibrary;
 import org.apache.commons.io.FileUtils;
 import org.jvnet.winp.WinProcess;
 import org.jvnet.winp.WinpException;
@@ -44,7 +45,7 @@ import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -134,6 +135,20 @@ public abstract class ProcessTree implements Iterable<OSProcess>, IProcessTree,
      */
     public abstract void killAll(Map<String, String> modelEnvVars) throws InterruptedException;
 
+    /**
+     * Like {@link #killAll(Map)}, but the caller also says when the processes to be killed could have started
+     * at the earliest, which lets the implementation skip looking at the environment variables of
+     * the processes that are older than that. The default implementation checks every process.
+     *
+     * @param age
+     *      Milliseconds since the build (or whatever launched the processes) started. This is relative
+     *      so that it means the same thing on a slave whose clock is off.
+     * @since 1.446
+     */
+    public void killAll(Map<String, String> modelEnvVars, long age) throws InterruptedException {
+        killAll(modelEnvVars);
+    }
+
     /**
      * Convenience method that does {@link #killAll(Map)} and {@link OSProcess#killRecursively()}.
      * This is necessary to reliably kill the process and its descendants, as some OS
@@ -488,20 +503,17 @@ public abstract class ProcessTree implements Iterable<OSProcess>, IProcessTree,
      */
     static abstract class ProcfsUnix extends Unix {
         ProcfsUnix() {
-            File[] processes = new File("/proc").listFiles(new FileFilter() {
-                public boolean accept(File f) {
-                    return f.isDirectory();
-                }
-            });
+            // numeric entries are always process directories, so there's no need to stat them
+            String[] processes = new File("/proc").list();
             if(processes==null) {
                 LOGGER.info("No /proc");
                 return;
             }
 
-            for (File p : processes) {
+            for (String p : processes) {
                 int pid;
                 try {
-                    pid = Integer.parseInt(p.getName());
+                    pid = Integer.parseInt(p);
                 } catch (NumberFormatException e) {
                     // other sub-directories
                     continue;
@@ -611,33 +623,120 @@ public abstract class ProcessTree implements Iterable<OSProcess>, IProcessTree,
 
 
     static class Linux extends ProcfsUnix {
+        /**
+         * Reused to read /proc/PID/stat of every process while the snapshot is taken.
+         * Not initialized in the declaration, as it's used from the super constructor.
+         */
+        private transient byte[] buf;
+
         protected LinuxProcess createProcess(int pid) throws IOException {
-            return new LinuxProcess(pid);
+            if (buf==null)
+                buf = new byte[1024];
+            return new LinuxProcess(pid,buf);
+        }
+
+        /**
+         * Only reads the environment variables of the processes that started after the build did.
+         */
+        @Override
+        public void killAll(Map<String, String> modelEnvVars, long age) throws InterruptedException {
+            long since = toStartTime(age);
+            for (OSProcess p : this) {
+                if (((LinuxProcess)p).startTime < since)
+                    continue;   // older than the build, so it can't have inherited the variables
+                if (p.hasMatchingEnvVars(modelEnvVars))
+                    p.killRecursively();
+            }
+        }
+
+        /**
+         * Converts "this many milliseconds ago" to a process start time in /proc/PID/stat,
+         * which is in clock ticks since boot. Errs on the early side, and returns 0 if it can't tell.
+         */
+        private static long toStartTime(long age) {
+            try {
+                BufferedReader r = new BufferedReader(new FileReader("/proc/uptime"));
+                String line;
+                try {
+                    line = r.readLine();
+                } finally {
+                    r.close();
+                }
+                if (line==null)     return 0;
+                long uptime = (long)(Double.parseDouble(line.split(" ")[0])*1000);
+                return Math.max(0, (uptime-age-START_TIME_SLACK)/1000*CLOCK_TICKS);
+            } catch (IOException e) {
+                return 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static long getClockTicks() {
+            try {
+                long hz = LIBC.sysconf(GNUCLibrary._SC_CLK_TCK).longValue();
+                if (hz>0)
+                    return hz;
+            } catch (LinkageError e) {
+                // no JNA
+            }
+            return 100; // USER_HZ on just about every Linux, and guessing too low only makes us check more processes
         }
 
+        private static final long CLOCK_TICKS = getClockTicks();
+
+        /**
+         * Leeway in milliseconds for {@link #killAll(Map, long)}, to absorb the network latency and clock adjustments.
+         */
+        private static final long START_TIME_SLACK = 60*1000;
+
+        /**
+         * Positions of the fields in /proc/PID/stat that we use, counting from the one after "(comm)". See proc(5).
+         */
+        private static final int PPID = 1, STARTTIME = 19;
+
         class LinuxProcess extends UnixProcess {
             private int ppid = -1;
+            /**
+             * In clock ticks since boot.
+             */
+            private long startTime = -1;
             private EnvVars envVars;
             private List<String> arguments;
 
-            LinuxProcess(int pid) throws IOException {
+            LinuxProcess(int pid, byte[] buf) throws IOException {
                 super(pid);
 
-                BufferedReader r = new BufferedReader(new FileReader(getFile("status")));
+                int len = 0;
+                FileInputStream in = new FileInputStream(getFile("stat"));
                 try {
-                    String line;
-                    while((line=r.readLine())!=null) {
-                        line=line.toLowerCase(Locale.ENGLISH);
-                        if(line.startsWith("ppid:")) {
-                            ppid = Integer.parseInt(line.substring(5).trim());
-                            break;
-                        }
-                    }
+                    int n;
+                    while (len<buf.length && (n=in.read(buf,len,buf.length-len))>0)
+                        len += n;
                 } finally {
-                    r.close();
+                    in.close();
                 }
-                if(ppid==-1)
-                    throw new IOException("Failed to parse PPID from /proc/"+pid+"/status");
+
+                // "pid (comm) state ppid ...", where comm can contain anything including spaces and ')'
+                int i = len-1;
+                while (i>=0 && buf[i]!=')')
+                    i--;
+                // count the fields after "(comm)", where 0 is the state
+                int field = 0;
+                long value = 0;
+                for (i+=2; i<len && field<=STARTTIME; i++) {
+                    byte b = buf[i];
+                    if (b==' ') {
+                        if (field==PPID)        ppid = (int)value;
+                        if (field==STARTTIME)   startTime = value;
+                        field++;
+                        value = 0;
+                    } else {
+                        value = value*10+(b-'0');
+                    }
+                }
+                if(ppid==-1 || startTime==-1)
+                    throw new IOException("Failed to parse /proc/"+pid+"/stat");
             }
 
             public OSProcess getParent() {
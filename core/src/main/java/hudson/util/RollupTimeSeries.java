@@ -0,0 +1,381 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time series of bounded size that keeps progressively coarser rollups of the older data.
+ *
+ * <p>
+ * Data points are grouped into buckets aligned to the wall clock. Each {@linkplain Level level}
+ * keeps a ring buffer of the last N buckets of a fixed period, and when a bucket closes, it's
+ * folded into the bucket of the next coarser level. Each bucket records the min, max, mean,
+ * and 90th percentile of the values that fell into it, so that short spikes aren't averaged away
+ * in the long-term data like they are with {@link hudson.model.TimeSeries}.
+ *
+ * <p>
+ * The percentile of a bucket at the finest level is exact. At coarser levels it's computed from
+ * the percentiles of the child buckets, which is an approximation.
+ *
+ * <p>
+ * The ring buffers of a level are only allocated once a bucket with data closes there,
+ * so a series that's only been recorded for a while doesn't pay for the coarse levels it hasn't reached yet.
+ *
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 1.446
+ */
+public final class RollupTimeSeries {
+    private final Level[] levels;
+
+    /**
+     * @param periods
+     *      Period of each level in milliseconds, from finest to coarsest. Each must be a multiple of the previous one.
+     * @param sizes
+     *      Number of buckets each level keeps.
+     */
+    public RollupTimeSeries(long[] periods, int[] sizes) {
+        if (periods.length!=sizes.length || periods.length==0)
+            throw new IllegalArgumentException();
+        levels = new Level[periods.length];
+        for (int i=0; i<periods.length; i++) {
+            if (i>0 && periods[i]%periods[i-1]!=0)
+                throw new IllegalArgumentException("Periods must be multiples of the previous one: "+Arrays.toString(periods));
+            levels[i] = new Level(i,periods[i],sizes[i],periods[i]/(i==0?1:periods[i-1]));
+        }
+    }
+
+    /**
+     * Records a data point.
+     *
+     * @param time
+     *      Timestamp of the data point. Data points must be added in the chronological order,
+     *      and those that go back in time are ignored.
+     */
+    public synchronized void add(long time, float value) {
+        levels[0].add(time, new Bucket(0,0,value,value,value,value,1));
+    }
+
+    /**
+     * Gets the buckets that overlap the given time window, in the chronological order.
+     *
+     * <p>
+     * The coarsest level that still retains the start of the window and whose period doesn't exceed
+     * the requested resolution is used (or else the finest level that retains it.) Buckets are then merged as needed,
+     * so that each covers at least the requested resolution. Buckets without any data are omitted.
+     * The bucket that's still accumulating data is not included.
+     *
+     * @param resolution
+     *      Desired duration of each bucket in milliseconds. 0 for the finest available.
+     */
+    public synchronized List<Bucket> query(long from, long to, long resolution) {
+        Level l = null;
+        for (Level c : levels) {
+            if (c.oldestStart()<=from && (l==null || c.period<=resolution))
+                l = c;
+        }
+        if (l==null)
+            l = levels[levels.length-1];    // nothing goes back that far. give them what we've got
+
+        List<Bucket> r = new ArrayList<Bucket>();
+        int ratio = resolution<=l.period ? 1 : (int)Math.min((resolution+l.period-1)/l.period, Integer.MAX_VALUE);
+        List<Bucket> group = new ArrayList<Bucket>();
+        long groupIndex = Long.MIN_VALUE;
+        for (Bucket b : l.list()) {
+            if (b.start+b.duration<=from || b.start>=to)  continue;
+            long gi = (b.start/l.period)/ratio;
+            if (gi!=groupIndex && !group.isEmpty()) {
+                r.add(Bucket.merge(groupIndex*ratio*l.period, ratio*l.period, group));
+                group.clear();
+            }
+            groupIndex = gi;
+            group.add(b);
+        }
+        if (!group.isEmpty())
+            r.add(Bucket.merge(groupIndex*ratio*l.period, ratio*l.period, group));
+        return r;
+    }
+
+    /**
+     * Gets the time of the last data point, or 0 if none.
+     */
+    public synchronized long getLastUpdated() {
+        return Math.max(levels[0].current,0);
+    }
+
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeInt(levels.length);
+        for (Level l : levels)
+            l.writeTo(out);
+    }
+
+    /**
+     * Restores the data written by {@link #writeTo(DataOutputStream)}.
+     * If the data was written by a series of a different shape, it's discarded.
+     */
+    public synchronized void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt()!=FORMAT)       return;
+        if (in.readInt()!=levels.length)    return;
+        Level[] loaded = new Level[levels.length];
+        for (int i=0; i<levels.length; i++) {
+            loaded[i] = new Level(i,levels[i].period,levels[i].size,levels[i].fanIn);
+            if (!loaded[i].readFrom(in))
+                return;
+        }
+        System.arraycopy(loaded,0,levels,0,levels.length);
+    }
+
+    /**
+     * Summary of the data points in a time window.
+     */
+    public static final class Bucket {
+        /**
+         * Start time and duration of the window.
+         */
+        public final long start, duration;
+        public final float min, max, mean, percentile90;
+        /**
+         * Number of data points that went into this bucket.
+         */
+        public final int count;
+
+        public Bucket(long start, long duration, float min, float max, float mean, float percentile90, int count) {
+            this.start = start;
+            this.duration = duration;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.percentile90 = percentile90;
+            this.count = count;
+        }
+
+        /**
+         * Combines the given buckets into one that spans the given window.
+         */
+        public static Bucket merge(long start, long duration, List<Bucket> children) {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            double sum = 0;
+            int count = 0;
+            float[] p = new float[children.size()];
+            for (int i=0; i<p.length; i++) {
+                Bucket b = children.get(i);
+                min = Math.min(min,b.min);
+                max = Math.max(max,b.max);
+                sum += (double)b.mean*b.count;
+                count += b.count;
+                p[i] = b.percentile90;
+            }
+            Arrays.sort(p);
+            return new Bucket(start,duration,min,max,count==0?0:(float)(sum/count),p[(int)Math.ceil(p.length*0.9)-1],count);
+        }
+
+        @Override
+        public String toString() {
+            return "["+start+"+"+duration+": min="+min+",max="+max+",mean="+mean+",p90="+percentile90+",n="+count+"]";
+        }
+    }
+
+    private final class Level {
+        /**
+         * Position of this level in {@link RollupTimeSeries#levels}.
+         */
+        final int index;
+        final long period;
+        final int size;
+        /**
+         * Maximum number of children in one bucket.
+         */
+        final long fanIn;
+
+        /**
+         * Ring buffers. An empty slot has count 0. null until the first bucket with data closes.
+         */
+        float[] min, max, mean, p90;
+        int[] count;
+
+        /**
+         * Index in the ring buffer where the next closed bucket goes.
+         */
+        int head;
+
+        /**
+         * Start time of the bucket currently accumulating data, or -1 if none yet.
+         */
+        long current = -1;
+
+        /**
+         * Children of the bucket that's accumulating data.
+         */
+        final List<Bucket> open = new ArrayList<Bucket>();
+
+        Level(int index, long period, int size, long fanIn) {
+            this.index = index;
+            this.period = period;
+            this.size = size;
+            this.fanIn = fanIn;
+        }
+
+        private void allocate() {
+            if (count!=null)    return;
+            min = new float[size];
+            max = new float[size];
+            mean = new float[size];
+            p90 = new float[size];
+            count = new int[size];
+        }
+
+        void add(long time, Bucket child) {
+            long start = time - time%period;
+            if (start<current)  return;     // going back in time
+            if (start>current) {
+                if (current>=0) {
+                    close();
+                    // buckets between the last one and now had no data
+                    long gap = Math.min((start-current)/period-1, size);
+                    for (long i=0; i<gap; i++)
+                        push(null);
+                }
+                current = start;
+            }
+            if (open.size()<fanIn)
+                open.add(child);
+        }
+
+        /**
+         * Closes the bucket that's been accumulating data.
+         */
+        private void close() {
+            if (open.isEmpty()) {
+                push(null);
+                return;
+            }
+            Bucket b = Bucket.merge(current,period,open);
+            open.clear();
+            push(b);
+
+            if (index+1<levels.length)
+                levels[index+1].add(current,b);
+        }
+
+        private void push(Bucket b) {
+            if (b==null) {
+                if (count!=null)
+                    count[head] = 0;
+            } else {
+                allocate();
+                min[head] = b.min;
+                max[head] = b.max;
+                mean[head] = b.mean;
+                p90[head] = b.percentile90;
+                count[head] = b.count;
+            }
+            head = (head+1)%size;
+        }
+
+        /**
+         * Start time of the oldest bucket this level can still have.
+         */
+        long oldestStart() {
+            return current - period*size;
+        }
+
+        /**
+         * Lists the closed buckets that have data, oldest first.
+         */
+        List<Bucket> list() {
+            List<Bucket> r = new ArrayList<Bucket>();
+            if (count==null)    return r;
+            for (int i=0; i<size; i++) {
+                int idx = (head+i)%size;
+                if (count[idx]==0)  continue;
+                long start = current - period*(size-i);
+                r.add(new Bucket(start,period,min[idx],max[idx],mean[idx],p90[idx],count[idx]));
+            }
+            return r;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(period);
+            out.writeInt(size);
+            out.writeInt(head);
+            out.writeLong(current);
+            out.writeBoolean(count!=null);
+            if (count!=null) {
+                for (int i=0; i<size; i++) {
+                    out.writeInt(count[i]);
+                    if (count[i]==0)    continue;
+                    out.writeFloat(min[i]);
+                    out.writeFloat(max[i]);
+                    out.writeFloat(mean[i]);
+                    out.writeFloat(p90[i]);
+                }
+            }
+            // the bucket that's still accumulating data, so that a restart doesn't lose it
+            out.writeInt(open.size());
+            for (Bucket b : open) {
+                out.writeLong(b.start);
+                out.writeLong(b.duration);
+                out.writeFloat(b.min);
+                out.writeFloat(b.max);
+                out.writeFloat(b.mean);
+                out.writeFloat(b.percentile90);
+                out.writeInt(b.count);
+            }
+        }
+
+        boolean readFrom(DataInputStream in) throws IOException {
+            if (in.readLong()!=period || in.readInt()!=size)
+                return false;
+            head = in.readInt();
+            current = in.readLong();
+            if (head<0 || head>=size)   return false;
+            if (in.readBoolean()) {
+                allocate();
+                for (int i=0; i<size; i++) {
+                    count[i] = in.readInt();
+                    if (count[i]==0)    continue;
+                    min[i] = in.readFloat();
+                    max[i] = in.readFloat();
+                    mean[i] = in.readFloat();
+                    p90[i] = in.readFloat();
+                }
+            }
+            int n = in.readInt();
+            if (n<0 || n>fanIn) return false;
+            for (int i=0; i<n; i++)
+                open.add(new Bucket(in.readLong(),in.readLong(),in.readFloat(),in.readFloat(),in.readFloat(),in.readFloat(),in.readInt()));
+            return true;
+        }
+    }
+
+    private static final int FORMAT = 2;
+}
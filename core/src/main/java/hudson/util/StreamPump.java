@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copies the output of many processes on a few shared threads, instead of a {@link StreamCopyThread} per stream.
+ *
+ * <p>
+ * Process pipes are not selectable in Java, so each pump thread sweeps its streams and only reads what
+ * {@link InputStream#available()} says is there, which never blocks. When a sweep finds nothing, the thread
+ * backs off for a little while, up to {@link #MAX_IDLE} milliseconds.
+ *
+ * <p>
+ * {@link InputStream#available()} can't tell the end of the stream from an empty pipe, so a stream is
+ * considered done once the process that writes it has exited and everything it wrote has been copied.
+ * Unlike {@link StreamCopyThread}, this does not wait for descendants that inherited the pipe, which are
+ * the "leaked file descriptors" {@link hudson.Proc.LocalProc#join()} warns about.
+ *
+ * <p>
+ * The output goes to places like build logs and remote streams that can be slow or block, so the pump
+ * threads never write it themselves. Each stream has a buffer of up to {@link #BUFFER_SIZE} bytes that the pump
+ * thread fills and one of {@link #WRITER_THREADS} shared threads empties into the {@link OutputStream}, a chunk
+ * at a time so that the streams take turns. While the buffer is full, the pump thread leaves the data in the pipe,
+ * so only the process whose output isn't being consumed is held back. The buffer is only allocated while
+ * there's something in it, and grows as needed.
+ *
+ * @since 1.446
+ */
+public final class StreamPump {
+    private final Worker[] workers;
+    private int next;
+
+    public StreamPump(int threads) {
+        workers = new Worker[threads];
+        for (int i=0; i<threads; i++)
+            workers[i] = new Worker("Process output pump #"+(i+1));
+    }
+
+    /**
+     * Starts copying the given stream of the given process.
+     *
+     * @param in
+     *      stdout or stderr of the process. Closed when done.
+     * @param out
+     *      Receives the output. Not closed.
+     */
+    public Handle add(Process proc, InputStream in, OutputStream out) {
+        Handle h = new Handle(proc,in,out);
+        Worker w;
+        synchronized (this) {
+            w = workers[next++%workers.length];
+        }
+        w.add(h);
+        return h;
+    }
+
+    /**
+     * One stream being copied.
+     */
+    public static final class Handle {
+        private final Process proc;
+        private final InputStream in;
+        private final OutputStream out;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Data read but not yet written, from {@link #head} for {@link #size} bytes, guarded by this object.
+         * null while there's nothing to write.
+         */
+        private byte[] pending;
+        private int head, size;
+
+        /**
+         * True while a task of {@link #WRITERS} is emptying {@link #pending}.
+         */
+        private boolean writing;
+
+        /**
+         * Set by the pump thread once {@link #in} is closed, guarded by this object.
+         */
+        private boolean closed;
+
+        /**
+         * Set when writing to {@link #out} fails.
+         */
+        private volatile boolean failed;
+
+        private Handle(Process proc, InputStream in, OutputStream out) {
+            this.proc = proc;
+            this.in = in;
+            this.out = out;
+        }
+
+        /**
+         * Reads whatever is available and fits in the buffer.
+         *
+         * @return
+         *      true if some bytes were read.
+         */
+        private boolean pump(byte[] buf) {
+            if (isClosed())  return false;
+            try {
+                if (failed) {
+                    finish();
+                    return false;
+                }
+                int room;
+                synchronized (this) {
+                    room = BUFFER_SIZE-size;
+                }
+                if (room==0)
+                    return false;   // the writer is behind. leave the rest in the pipe until it catches up
+
+                // check the process first: if it's gone, what it wrote is already in the pipe
+                boolean exited = !isAlive(proc);
+                int n = in.available();
+                if (n>0) {
+                    int len = in.read(buf,0,Math.min(Math.min(n,buf.length),room));
+                    if (len<0) {
+                        finish();
+                        return false;
+                    }
+                    offer(buf,len);
+                    return true;
+                }
+                if (exited)
+                    finish();
+            } catch (IOException e) {
+                // just like StreamCopyThread, the process goes on without us
+                LOGGER.log(Level.FINE, "Failed to copy the output of "+proc, e);
+                finish();
+            }
+            return false;
+        }
+
+        /**
+         * Appends the data to {@link #pending} and makes sure that a writer is on it.
+         */
+        private synchronized void offer(byte[] buf, int len) {
+            if (pending==null) {
+                pending = new byte[Math.max(len,INITIAL_BUFFER_SIZE)];
+            } else if (head+size+len>pending.length) {
+                // make room by moving the data to the front, growing the buffer if that's not enough
+                byte[] b = size+len>pending.length ? new byte[Math.max(size+len,Math.min(pending.length*2,BUFFER_SIZE))] : pending;
+                System.arraycopy(pending,head,b,0,size);
+                pending = b;
+                head = 0;
+            }
+            System.arraycopy(buf,0,pending,head+size,len);
+            size += len;
+            if (!writing) {
+                writing = true;
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            WRITERS.execute(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            });
+        }
+
+        /**
+         * Writes out one chunk of {@link #pending}, and then lets the other streams have the thread.
+         */
+        private void drain() {
+            byte[] chunk;
+            synchronized (this) {
+                if (size==0 || failed) {
+                    pending = null;
+                    head = size = 0;
+                    writing = false;
+                    if (closed)
+                        done.countDown();
+                    return;
+                }
+                chunk = new byte[Math.min(size,CHUNK_SIZE)];
+                System.arraycopy(pending,head,chunk,0,chunk.length);
+            }
+            try {
+                out.write(chunk);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to copy the output of "+proc, e);
+                failed = true;
+            }
+            synchronized (this) {
+                head += chunk.length;
+                size -= chunk.length;
+                if (size==0) {
+                    // don't hold on to the memory while the process is quiet
+                    pending = null;
+                    head = 0;
+                }
+            }
+            schedule();
+        }
+
+        private void finish() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            synchronized (this) {
+                closed = true;
+                if (!writing)
+                    done.countDown();
+            }
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * True once the stream is copied in full, including the part that was still buffered.
+         */
+        public boolean isDone() {
+            return done.getCount()==0;
+        }
+
+        /**
+         * Waits up to the given number of milliseconds for the stream to be copied in full.
+         */
+        public void join(long timeout) throws InterruptedException {
+            done.await(timeout,TimeUnit.MILLISECONDS);
+        }
+
+        private static boolean isAlive(Process proc) {
+            try {
+                proc.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+    }
+
+    private static final class Worker implements Runnable {
+        private final String name;
+        private final List<Handle> handles = new ArrayList<Handle>();
+        private Thread thread;
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(Handle h) {
+            handles.add(h);
+            if (thread==null) {
+                thread = new Thread(this,name);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notify();
+        }
+
+        public void run() {
+            byte[] buf = new byte[8192];
+            List<Handle> sweep = new ArrayList<Handle>();
+            long idle = 1;
+            try {
+                while (true) {
+                    synchronized (this) {
+                        while (handles.isEmpty())
+                            wait();
+                        sweep.addAll(handles);
+                    }
+
+                    boolean progress = false;
+                    for (Handle h : sweep)
+                        progress |= h.pump(buf);
+
+                    synchronized (this) {
+                        for (Iterator<Handle> itr = handles.iterator(); itr.hasNext();)
+                            if (itr.next().isClosed())
+                                itr.remove();
+                    }
+                    sweep.clear();
+
+                    if (progress) {
+                        idle = 1;
+                    } else {
+                        Thread.sleep(idle);
+                        idle = Math.min(idle*2,MAX_IDLE);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING, name+" was interrupted", e);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, name+" died", e);
+            } catch (Error e) {
+                LOGGER.log(Level.SEVERE, name+" died", e);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    // let the next add() start a fresh thread
+                    thread = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of threads that write the buffered output of all the streams. Read only when this class is loaded.
+     */
+    public static final int WRITER_THREADS = Integer.getInteger(StreamPump.class.getName()+".writerThreads",4);
+
+    private static final ExecutorService WRITERS = Executors.newFixedThreadPool(WRITER_THREADS, new ExceptionCatchingThreadFactory(new DaemonThreadFactory()));
+
+    /**
+     * Maximum number of bytes of each stream that are buffered while its {@link OutputStream} is busy.
+     */
+    public static int BUFFER_SIZE = Integer.getInteger(StreamPump.class.getName()+".bufferSize",64*1024);
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    /**
+     * Number of bytes written to one stream before the writer thread moves on to the next stream.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Longest pause, in milliseconds, between two sweeps that found nothing to copy.
+     */
+    public static long MAX_IDLE = Long.getLong(StreamPump.class.getName()+".maxIdle",50);
+
+    private static final Logger LOGGER = Logger.getLogger(StreamPump.class.getName());
+}
@@ -69,6 +69,11 @@ public interface GNUCLibrary extends Library {
     int F_SETFD = 2;
     int FD_CLOEXEC = 1;
 
+    NativeLong sysconf(int name);
+
+    // glibc's value
+    int _SC_CLK_TCK = 2;
+
     int chown(String fileName, int uid, int gid);
     int chmod(String fileName, int i);
 
@@ -96,6 +101,13 @@ public interface GNUCLibrary extends Library {
      */
     int symlink(String oldname, String newname);
 
+    /**
+     * Creates a hard link.
+     *
+     * See http://linux.die.net/man/2/link
+     */
+    int link(String oldname, String newname);
+
     /**
      * Read a symlink. The name will be copied into the specified memory, and returns the number of
      * bytes copied. The string is not null-terminated.
@@ -409,6 +409,11 @@ public class Jenkins extends AbstractCIBase implements ModifiableItemGroup<TopLe
 
     private transient volatile DependencyGraph dependencyGraph;
 
+    /**
+     * Serializes the updates of {@link #dependencyGraph}, so that an incremental update doesn't lose a concurrent one.
+     */
+    private transient final Object dependencyGraphLock = new Object();
+
     /**
      * Currently active Views tab bar.
      */
@@ -1596,12 +1601,12 @@ public class Jenkins extends AbstractCIBase implements ModifiableItemGroup<TopLe
     }
 
     /**
-     * Resets all labels and remove invalid ones.
+     * Updates all labels and remove invalid ones.
      */
     private void trimLabels() {
+        updateLabels(labels.values());
         for (Iterator<Label> itr = labels.values().iterator(); itr.hasNext();) {
             Label l = itr.next();
-            resetLabel(l);
             if(l.isEmpty())
                 itr.remove();
         }
@@ -3319,11 +3324,37 @@ public class Jenkins extends AbstractCIBase implements ModifiableItemGroup<TopLe
      * Rebuilds the dependency map.
      */
     public void rebuildDependencyGraph() {
-        DependencyGraph graph = new DependencyGraph();
-        graph.build();
-        // volatile acts a as a memory barrier here and therefore guarantees 
-        // that graph is fully build, before it's visible to other threads
-        dependencyGraph = graph;
+        synchronized (dependencyGraphLock) {
+            DependencyGraph graph = new DependencyGraph();
+            graph.build();
+            // volatile acts a as a memory barrier here and therefore guarantees 
+            // that graph is fully build, before it's visible to other threads
+            dependencyGraph = graph;
+        }
+    }
+
+    /**
+     * Updates the dependency map to reflect the configuration changes of the given projects,
+     * without asking the other projects for their dependencies.
+     * Falls back to {@link #rebuildDependencyGraph()} if that fails.
+     *
+     * @see DependencyGraph#update(Collection)
+     * @since 1.446
+     */
+    public void updateDependencyGraph(Collection<? extends AbstractProject> projects) {
+        if (!DependencyGraph.INCREMENTAL || dependencyGraph==DependencyGraph.EMPTY) {
+            rebuildDependencyGraph();
+            return;
+        }
+        synchronized (dependencyGraphLock) {
+            try {
+                dependencyGraph = dependencyGraph.update(projects);
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to update the dependency graph for "+projects+". Rebuilding it", e);
+            }
+            rebuildDependencyGraph();
+        }
     }
 
     public DependencyGraph getDependencyGraph() {
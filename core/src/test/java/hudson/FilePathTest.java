@@ -176,6 +176,72 @@ public class FilePathTest extends ChannelTestCase {
         }
     }
 
+    public void testCopyRecursiveToInShards() throws Exception {
+        int streams = FilePath.COPY_STREAMS;
+        FilePath.COPY_STREAMS = 3;
+        File tmp = Util.createTempDir(), src = new File(tmp, "src"), dst = new File(tmp, "dst"), back = new File(tmp, "back");
+        try {
+            java.util.Random r = new java.util.Random(0);
+            for (int i=0; i<20; i++) {
+                byte[] data = new byte[r.nextInt(100000)];
+                r.nextBytes(data);
+                FileUtils.writeByteArrayToFile(new File(src, "d"+(i%4)+"/f"+i), data);
+            }
+
+            assertEquals(20, new FilePath(src).copyRecursiveTo("**/*", null, new FilePath(french, dst.getPath())));
+            assertEquals(20, new FilePath(british, dst.getPath()).copyRecursiveTo("**/*", null, new FilePath(back)));
+            for (int i=0; i<20; i++) {
+                String path = "d"+(i%4)+"/f"+i;
+                byte[] expected = FileUtils.readFileToByteArray(new File(src, path));
+                assertTrue(path, Arrays.equals(expected, FileUtils.readFileToByteArray(new File(dst, path))));
+                assertTrue(path, Arrays.equals(expected, FileUtils.readFileToByteArray(new File(back, path))));
+            }
+
+            // fewer files than streams
+            assertEquals(0, new FilePath(src).copyRecursiveTo("nothing", null, new FilePath(french, dst.getPath())));
+        } finally {
+            FilePath.COPY_STREAMS = streams;
+            Util.deleteRecursive(tmp);
+        }
+    }
+
+    public void testSyncRecursiveTo() throws Exception {
+        File tmp = Util.createTempDir(), src = new File(tmp, "src"), dst = new File(tmp, "dst");
+        try {
+            byte[] data = new byte[300000];
+            new java.util.Random(0).nextBytes(data);
+            FileUtils.writeByteArrayToFile(new File(src, "a/big.bin"), data);
+            FileUtils.writeStringToFile(new File(src, "b.txt"), "hello");
+            FileUtils.writeStringToFile(new File(src, "c.log"), "excluded");
+
+            // local -> remote
+            FilePath from = new FilePath(src), to = new FilePath(french, dst.getPath());
+            assertEquals(2, from.syncRecursiveTo("**/*", "*.log", to));
+            assertTrue(Arrays.equals(data, FileUtils.readFileToByteArray(new File(dst, "a/big.bin"))));
+            assertEquals("hello", FileUtils.readFileToString(new File(dst, "b.txt")));
+            assertFalse(new File(dst, "c.log").exists());
+
+            // edit in the middle, and a new file
+            data[150000] ^= 1;
+            FileUtils.writeByteArrayToFile(new File(src, "a/big.bin"), data);
+            new File(src, "a/big.bin").setLastModified(System.currentTimeMillis()+5000);
+            FileUtils.writeStringToFile(new File(src, "d.txt"), "new");
+            assertEquals(3, from.syncRecursiveTo("**/*", "*.log", to));
+            assertTrue(Arrays.equals(data, FileUtils.readFileToByteArray(new File(dst, "a/big.bin"))));
+            assertEquals("new", FileUtils.readFileToString(new File(dst, "d.txt")));
+            assertEquals(new File(src, "a/big.bin").lastModified()/1000, new File(dst, "a/big.bin").lastModified()/1000);
+
+            // remote -> local, into a modified copy
+            FileUtils.writeStringToFile(new File(dst, "b.txt"), "changed");
+            new File(dst, "b.txt").setLastModified(0);
+            assertEquals(3, new FilePath(british, dst.getPath()).syncRecursiveTo("**/*", null, new FilePath(src)));
+            assertEquals("changed", FileUtils.readFileToString(new File(src, "b.txt")));
+            assertTrue(Arrays.equals(data, FileUtils.readFileToByteArray(new File(src, "a/big.bin"))));
+        } finally {
+            Util.deleteRecursive(tmp);
+        }
+    }
+
     public void testArchiveBug4039() throws Exception {
         File tmp = Util.createTempDir();
         try {
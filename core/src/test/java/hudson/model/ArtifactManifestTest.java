@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.Util;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ArtifactManifestTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Util.createTempDir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Util.deleteRecursive(dir);
+    }
+
+    public void testScanAndReload() throws Exception {
+        File archive = new File(dir,"archive");
+        write(new File(archive,"a.txt"),"abc");
+        write(new File(archive,"x/y/b\tc.bin"),"12345");
+        new File(archive,"empty").mkdirs();
+
+        ArtifactManifest m = ArtifactManifest.scan(archive);
+        List<String> paths = new ArrayList<String>(m.getPaths());
+        Collections.sort(paths);
+        assertEquals("[a.txt, x/y/b\tc.bin]",paths.toString());
+
+        File f = new File(dir,"manifest");
+        m.save(f);
+        ArtifactManifest r = ArtifactManifest.load(f);
+        assertEquals(m.getPaths(),r.getPaths());
+        for (int i=0; i<m.getEntries().size(); i++) {
+            ArtifactManifest.Entry e = m.getEntries().get(i);
+            assertEquals(e.length,r.getEntries().get(i).length);
+            assertEquals(e.lastModified,r.getEntries().get(i).lastModified);
+            assertEquals(new File(archive,e.path).length(),e.length);
+        }
+    }
+
+    public void testMissing() throws Exception {
+        assertNull(ArtifactManifest.load(new File(dir,"nonexistent")));
+        assertTrue(ArtifactManifest.scan(new File(dir,"nonexistent")).isEmpty());
+    }
+
+    public void testLineBreak() throws Exception {
+        ArtifactManifest m = new ArtifactManifest(Collections.singletonList(new ArtifactManifest.Entry("a\nb",1,1)));
+        File f = new File(dir,"manifest");
+        try {
+            m.save(f);
+            fail();
+        } catch (IOException e) {
+            // can't be represented
+        }
+        assertFalse(f.exists());
+    }
+
+    private void write(File f, String content) throws IOException {
+        f.getParentFile().mkdirs();
+        FileWriter w = new FileWriter(f);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+}
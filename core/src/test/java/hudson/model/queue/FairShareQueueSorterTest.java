@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.model.Action;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue.BuildableItem;
+import hudson.model.Queue.Executable;
+import hudson.model.Queue.WaitingItem;
+import hudson.model.ResourceList;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+public class FairShareQueueSorterTest extends TestCase {
+    /**
+     * Owner and priority are encoded in the task name, so that we don't need Jenkins.
+     */
+    private final FairShareQueueSorter sorter = new FairShareQueueSorter() {
+        @Override
+        protected String getOwner(BuildableItem bi) {
+            return ((TestTask)bi.task).owner;
+        }
+
+        @Override
+        protected int getPriority(BuildableItem bi) {
+            return ((TestTask)bi.task).priority;
+        }
+    };
+
+    public void testFairShare() {
+        List<BuildableItem> items = new ArrayList<BuildableItem>();
+        BuildableItem a1 = add(items,"a",0), a2 = add(items,"a",0), a3 = add(items,"a",0);
+        BuildableItem b1 = add(items,"b",0);
+
+        sorter.sortBuildableItems(items);
+        // b doesn't have to wait for all of a's items
+        assertOrder(items, a1,b1,a2,a3);
+    }
+
+    public void testPriority() {
+        List<BuildableItem> items = new ArrayList<BuildableItem>();
+        BuildableItem a = add(items,"a",0);
+        BuildableItem b = add(items,"b",1);
+
+        sorter.sortBuildableItems(items);
+        assertOrder(items, b,a);
+    }
+
+    public void testIncremental() {
+        List<BuildableItem> items = new ArrayList<BuildableItem>();
+        BuildableItem a1 = add(items,"a",0), a2 = add(items,"a",0);
+        sorter.sortBuildableItems(items);
+        assertOrder(items, a1,a2);
+
+        // an item leaves, and new ones come in
+        items.remove(a1);
+        BuildableItem b1 = add(items,"b",0);
+        BuildableItem c1 = add(items,"c",2);
+        sorter.sortBuildableItems(items);
+        assertOrder(items, c1,b1,a2);
+
+        // nothing new. order is retained
+        items.remove(b1);
+        sorter.sortBuildableItems(items);
+        assertOrder(items, c1,a2);
+    }
+
+    /**
+     * An item that went away and came back between two calls keeps its place, even though it's now at the end.
+     */
+    public void testReturningItem() {
+        List<BuildableItem> items = new ArrayList<BuildableItem>();
+        BuildableItem a1 = add(items,"a",1), b1 = add(items,"b",0);
+        sorter.sortBuildableItems(items);
+        assertOrder(items, a1,b1);
+
+        // a1 got blocked and then buildable again, and the queue appended it
+        items.remove(a1);
+        items.add(a1);
+        sorter.sortBuildableItems(items);
+        assertOrder(items, a1,b1);
+    }
+
+    /**
+     * Items that got built ahead of their keys don't keep pushing back the next item of the same owner.
+     */
+    public void testNoDrift() {
+        long quantum = FairShareQueueSorter.QUANTUM;
+        FairShareQueueSorter.QUANTUM = FairShareQueueSorter.PRIORITY_STEP*6;
+        try {
+            List<BuildableItem> items = new ArrayList<BuildableItem>();
+            add(items,"a",0); add(items,"a",0); add(items,"a",0);
+            sorter.sortBuildableItems(items);
+
+            // all of them get built right away
+            items.clear();
+            sorter.sortBuildableItems(items);
+
+            // so the next one is a quantum away from now, not from the last key
+            BuildableItem a4 = add(items,"a",0);
+            BuildableItem b1 = add(items,"b",-12);
+            sorter.sortBuildableItems(items);
+            assertOrder(items, a4,b1);
+        } finally {
+            FairShareQueueSorter.QUANTUM = quantum;
+        }
+    }
+
+    private void assertOrder(List<BuildableItem> actual, BuildableItem... expected) {
+        assertEquals(expected.length, actual.size());
+        for (int i=0; i<expected.length; i++)
+            assertSame("at "+i, expected[i], actual.get(i));
+    }
+
+    private BuildableItem add(List<BuildableItem> items, String owner, int priority) {
+        BuildableItem bi = new BuildableItem(new WaitingItem(new GregorianCalendar(),
+                new TestTask(owner, priority), Collections.<Action>emptyList()));
+        items.add(bi);
+        return bi;
+    }
+
+    private static class TestTask extends AbstractQueueTask {
+        final String owner;
+        final int priority;
+
+        TestTask(String owner, int priority) {
+            this.owner = owner;
+            this.priority = priority;
+        }
+
+        public boolean isBuildBlocked() { return false; }
+        public String getWhyBlocked() { return null; }
+        public String getName() { return owner; }
+        public String getFullDisplayName() { return owner; }
+        public String getDisplayName() { return owner; }
+        public void checkAbortPermission() {}
+        public boolean hasAbortPermission() { return true; }
+        public String getUrl() { return "test/"; }
+        public Label getAssignedLabel() { return null; }
+        public Node getLastBuiltOn() { return null; }
+        public long getEstimatedDuration() { return -1; }
+        public Executable createExecutable() { return null; }
+        public ResourceList getResourceList() { return new ResourceList(); }
+    }
+}
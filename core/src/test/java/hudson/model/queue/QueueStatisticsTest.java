@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.model.queue.QueueStatistics.Histogram;
+import junit.framework.TestCase;
+
+public class QueueStatisticsTest extends TestCase {
+    public void testHistogram() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMean());
+
+        for (int i=0; i<9; i++)
+            h.add(500);         // < 1 sec
+        h.add(2*60*60*1000);    // 2 hours
+
+        assertEquals(10, h.getCount());
+        assertEquals(2*60*60*1000, h.getMax());
+        assertEquals((9*500+2*60*60*1000)/10, h.getMean());
+
+        long[] counts = h.getCounts();
+        assertEquals(h.getBounds().length+1, counts.length);
+        assertEquals(9, counts[0]);
+
+        // percentiles are estimated by the upper bound of the bucket, but never above the max
+        assertEquals(1000, h.getMedian());
+        assertEquals(1000, h.getPercentile(90));
+        assertEquals(2*60*60*1000, h.getPercentile(100));
+    }
+
+    public void testBlockages() {
+        QueueStatistics s = new QueueStatistics();
+        s.blocked("InProgress");
+        s.blocked("InProgress");
+        s.blocked("BecauseLabelIsBusy");
+        assertEquals(Long.valueOf(2), s.getBlockages().get("InProgress"));
+        assertEquals(Long.valueOf(1), s.getBlockages().get("BecauseLabelIsBusy"));
+    }
+}
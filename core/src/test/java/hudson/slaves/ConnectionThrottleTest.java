@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.slaves;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionThrottleTest extends TestCase {
+    public void testBackoff() {
+        ConnectionThrottle t = new ConnectionThrottle(1);
+        assertEquals(0, t.getBackoff(0));
+        for (int i=1; i<40; i++) {
+            long max = Math.min(ConnectionThrottle.BACKOFF_MAX, ConnectionThrottle.BACKOFF_BASE << Math.min(i-1,20));
+            long d = t.getBackoff(i);
+            assertTrue(d<=max);
+            assertTrue(d>=max/2);
+        }
+    }
+
+    public void testAdmission() throws Exception {
+        final ConnectionThrottle t = new ConnectionThrottle(2);
+        long start = System.currentTimeMillis();
+        assertTrue(t.acquire());
+        assertTrue(t.acquire());
+        assertEquals(2, t.getActiveCount());
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread th = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long s = System.currentTimeMillis();
+                    assertTrue(t.acquire());
+                    admitted.countDown();
+                    t.release();
+                    t.record(s, false);
+                } catch (InterruptedException e) {
+                    // test fails on the timeout below
+                }
+            }
+        };
+        th.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, t.getQueueLength());
+
+        t.release();
+        t.record(start, true);
+        assertTrue(admitted.await(10, TimeUnit.SECONDS));
+        th.join();
+        t.release();
+        t.record(start, true);
+
+        assertEquals(0, t.getQueueLength());
+        assertEquals(0, t.getActiveCount());
+        assertEquals(2, t.getConnectedCount());
+        assertEquals(1, t.getFailedCount());
+        assertTrue(t.getAverageLatency()>=0);
+        assertTrue(t.getMaxLatency()>=t.getAverageLatency());
+    }
+
+    /**
+     * Connections that hang on to their permits can't keep the others waiting forever.
+     */
+    public void testTimeout() throws Exception {
+        ConnectionThrottle t = new ConnectionThrottle(1);
+        assertTrue(t.acquire(100, TimeUnit.MILLISECONDS));
+        assertFalse(t.acquire(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, t.getQueueLength());
+        assertEquals(1, t.getActiveCount());
+        t.release();
+        assertTrue(t.acquire(100, TimeUnit.MILLISECONDS));
+    }
+}
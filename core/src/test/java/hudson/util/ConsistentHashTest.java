@@ -119,4 +119,31 @@ public class ConsistentHashTest extends TestCase {
         assertNull(hash.lookup(0));
         assertNull(hash.lookup(999));
     }
+
+    /**
+     * Bulk update should produce the same mapping as individual updates.
+     */
+    public void testAddAll() {
+        ConsistentHash<String> one = new ConsistentHash<String>();
+        one.add("a",10);
+        one.add("b",20);
+        one.add("c",30);
+        one.remove("b");
+        one.add("c",5);
+
+        ConsistentHash<String> all = new ConsistentHash<String>();
+        all.add("b",20);
+        all.add("c",30);
+        Map<String,Integer> delta = new HashMap<String,Integer>();
+        delta.put("a",10);
+        delta.put("b",0);
+        delta.put("c",5);
+        all.addAll(delta);
+
+        Random r = new Random(0);
+        for (int i=0; i<1000; i++) {
+            int q = r.nextInt();
+            assertEquals(one.lookup(q),all.lookup(q));
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DeltaTransferTest extends TestCase {
+    private final Random random = new Random(0);
+    private File base, src;
+
+    @Override
+    protected void setUp() throws Exception {
+        base = File.createTempFile("base","bin");
+        src = File.createTempFile("src","bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        base.delete();
+        src.delete();
+    }
+
+    public void testIdentical() throws Exception {
+        byte[] data = randomBytes(1000*1000);
+        assertEquals(0, roundtrip(data,data));
+    }
+
+    public void testEdits() throws Exception {
+        byte[] data = randomBytes(3*1000*1000+17);
+
+        byte[] edited = new byte[data.length+50];
+        System.arraycopy(data,0,edited,0,1000000);
+        // 100 new bytes inserted
+        System.arraycopy(randomBytes(100),0,edited,1000000,100);
+        // 50 bytes deleted
+        System.arraycopy(data,1000050,edited,1000100,data.length-1000050);
+        // a byte modified
+        edited[2000000] ^= 1;
+
+        long literals = roundtrip(data,edited);
+        // each edit costs at most a couple of blocks
+        assertTrue(literals+" bytes sent", literals < 4*DeltaTransfer.getBlockSize(data.length)+150);
+    }
+
+    public void testAppendAndTruncate() throws Exception {
+        byte[] data = randomBytes(100*1000);
+        byte[] longer = new byte[data.length+3000];
+        System.arraycopy(data,0,longer,0,data.length);
+        System.arraycopy(randomBytes(3000),0,longer,data.length,3000);
+        assertTrue(roundtrip(data,longer) < 3000+DeltaTransfer.getBlockSize(data.length));
+
+        byte[] shorter = new byte[data.length-5555];
+        System.arraycopy(data,0,shorter,0,shorter.length);
+        assertTrue(roundtrip(data,shorter) < DeltaTransfer.getBlockSize(data.length));
+    }
+
+    public void testUnrelated() throws Exception {
+        byte[] data = randomBytes(200*1000);
+        assertEquals(data.length, roundtrip(randomBytes(200*1000),data));
+        assertEquals(0, roundtrip(data,new byte[0]));
+        assertEquals(data.length, roundtrip(new byte[0],data));
+        // repetitive content, where many blocks share the same checksum
+        assertEquals(0, roundtrip(new byte[100000],new byte[100000]));
+    }
+
+    public void testNoBase() throws Exception {
+        byte[] data = randomBytes(200*1000);
+        write(src,data);
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        assertEquals(data.length, DeltaTransfer.writeDelta(src,null,new DataOutputStream(delta)));
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DeltaTransfer.applyDelta(null,0,new DataInputStream(new ByteArrayInputStream(delta.toByteArray())),result);
+        assertTrue(Arrays.equals(data,result.toByteArray()));
+    }
+
+    public void testRollingChecksum() {
+        byte[] data = randomBytes(100);
+        int bs = 16;
+        int a=0, b=0;
+        for (int i=0; i<bs; i++) {
+            a += data[i]&0xFF;
+            b += (bs-i)*(data[i]&0xFF);
+        }
+        for (int pos=0; pos+bs<data.length; pos++) {
+            assertEquals(DeltaTransfer.checksum(data,pos,bs), ((b&0xFFFF)<<16)|(a&0xFFFF));
+            int drop = data[pos]&0xFF, add = data[pos+bs]&0xFF;
+            a += add-drop;
+            b += a-bs*drop;
+        }
+    }
+
+    /**
+     * Transforms the old content into the new one through a delta, and returns the number of literal bytes.
+     */
+    private long roundtrip(byte[] oldData, byte[] newData) throws IOException {
+        write(base,oldData);
+        write(src,newData);
+
+        DeltaTransfer.Signature sig = DeltaTransfer.signature(base);
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        long literals = DeltaTransfer.writeDelta(src,sig,new DataOutputStream(delta));
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta.toByteArray()));
+        DeltaTransfer.applyDelta(base,sig.blockSize,in,result);
+        assertEquals("delta must be consumed exactly", -1, in.read());
+        assertTrue(Arrays.equals(newData,result.toByteArray()));
+        return literals;
+    }
+
+    private byte[] randomBytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    private void write(File f, byte[] data) throws IOException {
+        FileOutputStream o = new FileOutputStream(f);
+        try {
+            o.write(data);
+        } finally {
+            o.close();
+        }
+    }
+}
@@ -8,6 +8,8 @@ import hudson.util.ProcessTree.ProcessCallable;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.UUID;
 
 /**
  * @author Kohsuke Kawaguchi
@@ -35,6 +37,38 @@ public class ProcessTreeTest extends ChannelTestCase {
         t.p.act(new ProcessCallableImpl());
     }
 
+    public void testLinuxKillAllSinceBuildStart() throws Exception {
+        ProcessTree tree = ProcessTree.get();
+        if (!(tree instanceof ProcessTree.Linux))   return;
+
+        String cookie = UUID.randomUUID().toString();
+        ProcessBuilder pb = new ProcessBuilder("sleep","300");
+        pb.environment().put("PROCESS_TREE_TEST",cookie);
+        Process proc = pb.start();
+        try {
+            tree = ProcessTree.get();
+            OSProcess p = tree.get(proc);
+            assertNotNull(p);
+            assertNotNull("parsed the parent from /proc/PID/stat", p.getParent());
+
+            tree.killAll(Collections.singletonMap("PROCESS_TREE_TEST",cookie), 5000);
+            for (int i=0; i<100 && isAlive(proc); i++)
+                Thread.sleep(100);
+            assertFalse(isAlive(proc));
+        } finally {
+            proc.destroy();
+        }
+    }
+
+    private static boolean isAlive(Process proc) {
+        try {
+            proc.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
     private static class MyCallable implements Callable<Tag, IOException>, Serializable {
         public Tag call() throws IOException {
             Tag t = new Tag();
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import hudson.util.RollupTimeSeries.Bucket;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+public class RollupTimeSeriesTest extends TestCase {
+    private RollupTimeSeries create() {
+        // 1 sec x 10, 10 sec x 6, 1 min x 10
+        return new RollupTimeSeries(new long[]{1000,10000,60000}, new int[]{10,6,10});
+    }
+
+    public void testRollup() {
+        RollupTimeSeries ts = create();
+        for (int i=0; i<=70; i++)
+            ts.add(i*1000L, i%10);
+
+        // the finest level only retains the last 10 seconds
+        List<Bucket> raw = ts.query(60000,70000,0);
+        assertEquals(10,raw.size());
+        assertEquals(60000,raw.get(0).start);
+        assertEquals(0f,raw.get(0).max);
+
+        // 10 sec buckets each see 0..9
+        List<Bucket> tens = ts.query(0,60000,10000);
+        assertEquals(6,tens.size());
+        for (Bucket b : tens) {
+            assertEquals(0f,b.min);
+            assertEquals(9f,b.max);
+            assertEquals(4.5f,b.mean);
+            assertEquals(8f,b.percentile90);
+            assertEquals(10,b.count);
+        }
+
+        // merged into a coarser resolution on query
+        List<Bucket> twenties = ts.query(0,60000,20000);
+        assertEquals(3,twenties.size());
+        assertEquals(20000,twenties.get(0).duration);
+        assertEquals(20,twenties.get(0).count);
+    }
+
+    public void testGap() {
+        RollupTimeSeries ts = create();
+        ts.add(0,1);
+        ts.add(1000,2);
+        ts.add(5000,3);
+        ts.add(6000,4);
+
+        List<Bucket> raw = ts.query(0,6000,0);
+        assertEquals(3,raw.size());
+        assertEquals(0,raw.get(0).start);
+        assertEquals(1000,raw.get(1).start);
+        assertEquals(5000,raw.get(2).start);
+
+        // going back in time is ignored
+        ts.add(2000,5);
+        assertEquals(3,ts.query(0,6000,0).size());
+    }
+
+    public void testPersistence() throws Exception {
+        RollupTimeSeries ts = create();
+        for (int i=0; i<30; i++)
+            ts.add(i*1000L, i);
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ts.writeTo(new DataOutputStream(buf));
+
+        RollupTimeSeries copy = create();
+        copy.readFrom(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        assertEquals(ts.query(0,30000,0).toString(),copy.query(0,30000,0).toString());
+        assertEquals(ts.query(0,30000,10000).toString(),copy.query(0,30000,10000).toString());
+
+        // so are the buckets that were still accumulating data
+        for (long t=40000; t<=50000; t+=10000) {
+            ts.add(t,0);
+            copy.add(t,0);
+        }
+        assertEquals(ts.query(0,50000,10000).toString(),copy.query(0,50000,10000).toString());
+        assertEquals(10,copy.query(20000,30000,10000).get(0).count);
+
+        // different shape is discarded
+        RollupTimeSeries other = new RollupTimeSeries(new long[]{1000}, new int[]{5});
+        other.readFrom(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        assertTrue(other.query(0,30000,0).isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+
+public class StreamPumpTest extends TestCase {
+    public void testManyProcesses() throws Exception {
+        if (File.pathSeparatorChar==';')    return; // needs a Unix shell
+
+        StreamPump pump = new StreamPump(2);
+        int n = 50;
+        Process[] procs = new Process[n];
+        ByteArrayOutputStream[] outs = new ByteArrayOutputStream[n];
+        StreamPump.Handle[] handles = new StreamPump.Handle[n];
+        for (int i=0; i<n; i++) {
+            // some output right away, and some after a pause
+            procs[i] = new ProcessBuilder("sh","-c","seq 1 1000; sleep 0.2; echo done "+i).redirectErrorStream(true).start();
+            procs[i].getOutputStream().close();
+            outs[i] = new ByteArrayOutputStream();
+            handles[i] = pump.add(procs[i],procs[i].getInputStream(),outs[i]);
+        }
+
+        StringBuilder expected = new StringBuilder();
+        for (int i=1; i<=1000; i++)
+            expected.append(i).append('\n');
+        for (int i=0; i<n; i++) {
+            assertEquals(0,procs[i].waitFor());
+            handles[i].join(10*1000);
+            assertTrue(handles[i].isDone());
+            assertEquals(expected+"done "+i+"\n",outs[i].toString());
+        }
+    }
+
+    /**
+     * A stream whose output blocks doesn't hold up the others on the same thread.
+     */
+    public void testBlockingOutput() throws Exception {
+        if (File.pathSeparatorChar==';')    return; // needs a Unix shell
+
+        StreamPump pump = new StreamPump(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        OutputStream stuck = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte)b},0,1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.toString());
+                }
+            }
+        };
+        Process p1 = new ProcessBuilder("sh","-c","seq 1 100000").start();
+        StreamPump.Handle h1 = pump.add(p1,p1.getInputStream(),stuck);
+
+        Process p2 = new ProcessBuilder("sh","-c","echo hello").start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamPump.Handle h2 = pump.add(p2,p2.getInputStream(),out);
+        h2.join(10*1000);
+        assertTrue(h2.isDone());
+        assertEquals("hello\n",out.toString());
+        assertFalse(h1.isDone());
+
+        unblock.countDown();
+        assertEquals(0,p1.waitFor());
+        h1.join(10*1000);
+        assertTrue(h1.isDone());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson;
+
+import hudson.DependencyRunner.ProjectRunnable;
+import hudson.model.AbstractProject;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.tasks.BuildTrigger;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class DependencyRunnerTest extends HudsonTestCase {
+    /**
+     * Independent projects run concurrently, and downstream projects only after their upstream.
+     */
+    public void testParallel() throws Exception {
+        final FreeStyleProject a = createFreeStyleProject("a"), b = createFreeStyleProject("b"), c = createFreeStyleProject("c");
+        a.getPublishersList().add(new BuildTrigger("c", Result.SUCCESS));
+        b.getPublishersList().add(new BuildTrigger("c", Result.SUCCESS));
+        hudson.rebuildDependencyGraph();
+
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService es = Executors.newCachedThreadPool();
+        try {
+            new DependencyRunner(new ProjectRunnable() {
+                public void run(AbstractProject p) {
+                    if (p!=c) {
+                        // a and b each wait for the other to start, so this only passes when they run at once
+                        bothStarted.countDown();
+                        try {
+                            assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                    order.add(p.getName());
+                }
+            }, es, 2).run();
+        } finally {
+            es.shutdown();
+        }
+
+        assertEquals(3, order.size());
+        assertEquals("c", order.get(2));
+    }
+
+    /**
+     * A runner using the only thread of its executor still gets everything done.
+     */
+    public void testSingleThreadExecutor() throws Exception {
+        FreeStyleProject a = createFreeStyleProject("a"), b = createFreeStyleProject("b"), c = createFreeStyleProject("c");
+        a.getPublishersList().add(new BuildTrigger("c", Result.SUCCESS));
+        hudson.rebuildDependencyGraph();
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            es.submit(new DependencyRunner(new ProjectRunnable() {
+                public void run(AbstractProject p) {
+                    order.add(p.getName());
+                }
+            }, es, 4)).get(30, TimeUnit.SECONDS);
+        } finally {
+            es.shutdown();
+        }
+
+        assertEquals(3, order.size());
+        assertTrue(order.indexOf("a") < order.indexOf("c"));
+    }
+}
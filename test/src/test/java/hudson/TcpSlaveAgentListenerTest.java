@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson;
+
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Node.Mode;
+import hudson.remoting.Callable;
+import hudson.remoting.Channel;
+import hudson.remoting.Engine;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.RetentionStrategy;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects JNLP agents over the loopback interface, speaking the protocol directly
+ * so that many of them can be run in this JVM.
+ */
+public class TcpSlaveAgentListenerTest extends HudsonTestCase {
+    private final ExecutorService agentPool = Executors.newCachedThreadPool();
+
+    @Override
+    protected void tearDown() throws Exception {
+        agentPool.shutdownNow();
+        super.tearDown();
+    }
+
+    /**
+     * A burst of agents connecting at the same time should all come online.
+     */
+    public void testReconnectStorm() throws Exception {
+        final int n = 50;
+        List<Computer> computers = addJnlpSlaves(n);
+
+        List<Future<Channel>> agents = new ArrayList<Future<Channel>>();
+        for (final Computer c : computers) {
+            agents.add(agentPool.submit(new java.util.concurrent.Callable<Channel>() {
+                public Channel call() throws Exception {
+                    return connect(c.getName());
+                }
+            }));
+        }
+        List<Channel> channels = new ArrayList<Channel>();
+        for (Future<Channel> f : agents)
+            channels.add(f.get(60, TimeUnit.SECONDS));
+
+        for (Computer c : computers) {
+            waitOnline(c);
+            assertEquals("done", c.getChannel().call(new NoopTask()));
+        }
+
+        for (Channel ch : channels)
+            ch.close();
+    }
+
+    /**
+     * Clients that connect but never complete the handshake must not keep others from connecting,
+     * and get disconnected after the timeout.
+     */
+    public void testSlowClients() throws Exception {
+        long timeout = TcpSlaveAgentListener.HANDSHAKE_TIMEOUT;
+        TcpSlaveAgentListener.HANDSHAKE_TIMEOUT = 3000;
+        try {
+            // restart the listener so that it picks up the new timeout
+            hudson.setSlaveAgentPort(-1);
+            hudson.setSlaveAgentPort(0);
+
+            List<Socket> idle = new ArrayList<Socket>();
+            for (int i=0; i<2*TcpSlaveAgentListener.HANDLER_POOL_SIZE; i++) {
+                Socket s = new Socket("localhost", getPort());
+                // send half of the header and stall
+                s.getOutputStream().write(0);
+                s.getOutputStream().flush();
+                idle.add(s);
+            }
+
+            Computer c = addJnlpSlaves(1).get(0);
+            Channel ch = connect(c.getName());
+            waitOnline(c);
+            assertEquals("done", c.getChannel().call(new NoopTask()));
+            ch.close();
+
+            for (Socket s : idle) {
+                s.setSoTimeout(30*1000);
+                assertEquals("stalled client should be disconnected", -1, s.getInputStream().read());
+                s.close();
+            }
+        } finally {
+            TcpSlaveAgentListener.HANDSHAKE_TIMEOUT = timeout;
+        }
+    }
+
+    public void testUnauthorized() throws Exception {
+        Computer c = addJnlpSlaves(1).get(0);
+        Socket s = new Socket("localhost", getPort());
+        try {
+            DataOutputStream dos = new DataOutputStream(s.getOutputStream());
+            dos.writeUTF("Protocol:JNLP-connect");
+            dos.writeUTF("wrong secret");
+            dos.writeUTF(c.getName());
+            dos.flush();
+            assertEquals("Unauthorized access", readLine(s.getInputStream()));
+            assertEquals(-1, s.getInputStream().read());
+        } finally {
+            s.close();
+        }
+        assertTrue(c.isOffline());
+    }
+
+    private int getPort() {
+        return hudson.getTcpSlaveAgentListener().getPort();
+    }
+
+    /**
+     * Performs the agent side of the JNLP-connect protocol.
+     */
+    private Channel connect(String nodeName) throws IOException {
+        Socket s = new Socket("localhost", getPort());
+        DataOutputStream dos = new DataOutputStream(s.getOutputStream());
+        dos.writeUTF("Protocol:JNLP-connect");
+        dos.writeUTF(hudson.getSecretKey());
+        dos.writeUTF(nodeName);
+        dos.flush();
+
+        String greeting = readLine(s.getInputStream());
+        assertEquals(Engine.GREETING_SUCCESS, greeting);
+
+        return new Channel(nodeName, agentPool,
+                new BufferedInputStream(s.getInputStream()),
+                new BufferedOutputStream(s.getOutputStream()));
+    }
+
+    /**
+     * Reads a line without buffering past it.
+     */
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        int ch;
+        while ((ch=in.read())!=-1 && ch!='\n')
+            buf.write(ch);
+        return buf.toString("UTF-8").trim();
+    }
+
+    private void waitOnline(Computer c) throws InterruptedException {
+        for (int i=0; i<600 && c.isOffline(); i++)
+            Thread.sleep(100);
+        assertFalse(c.getName()+" failed to go online", c.isOffline());
+    }
+
+    private List<Computer> addJnlpSlaves(int n) throws Exception {
+        List<Node> slaves = new ArrayList<Node>(hudson.getNodes());
+        List<String> names = new ArrayList<String>();
+        for (int i=0; i<n; i++) {
+            String name = "agent"+slaves.size();
+            slaves.add(new DumbSlave(name,"dummy",createTmpDir().getPath(),"1", Mode.NORMAL, "",
+                    new JNLPLauncher(), RetentionStrategy.INSTANCE, new ArrayList<NodeProperty<?>>()));
+            names.add(name);
+        }
+        hudson.setNodes(slaves);
+
+        List<Computer> computers = new ArrayList<Computer>();
+        for (String name : names) {
+            Computer c = hudson.getComputer(name);
+            assertNotNull(c);
+            computers.add(c);
+        }
+        return computers;
+    }
+
+    private static class NoopTask implements Callable<String,RuntimeException> {
+        public String call() {
+            return "done";
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -26,8 +26,11 @@ package hudson.model;
 import hudson.security.ACL;
 import hudson.tasks.BuildTrigger;
 import hudson.tasks.MailMessageIdAction;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.acegisecurity.context.SecurityContextHolder;
 import org.jvnet.hudson.test.HudsonTestCase;
@@ -125,4 +128,72 @@ public class DependencyGraphTest extends HudsonTestCase {
         }
     }
 
+    /**
+     * Updating the graph for a project should give the same graph as building it from scratch.
+     */
+    public void testUpdate() throws Exception {
+        FreeStyleProject a = createFreeStyleProject("a"), b = createFreeStyleProject("b"),
+            c = createFreeStyleProject("c"), d = createFreeStyleProject("d");
+        a.getPublishersList().add(new BuildTrigger("b,c", Result.SUCCESS));
+        b.getPublishersList().add(new BuildTrigger("d", Result.SUCCESS));
+        // same edge declared by two projects
+        c.getBuildersList().add(new TestDeclarer(Result.SUCCESS, d));
+        d.getBuildersList().add(new UpstreamDeclarer(c));
+        hudson.rebuildDependencyGraph();
+        DependencyGraph old = hudson.getDependencyGraph();
+        assertGraph("a->b a->c b->d c->d", old, a, b, c, d);
+
+        b.getPublishersList().replace(new BuildTrigger("c", Result.SUCCESS));
+        hudson.updateDependencyGraph(Collections.singleton(b));
+        assertGraph("a->b a->c b->c c->d", hudson.getDependencyGraph(), a, b, c, d);
+        // the old graph is left untouched
+        assertGraph("a->b a->c b->d c->d", old, a, b, c, d);
+
+        c.getBuildersList().clear();
+        hudson.updateDependencyGraph(Collections.singleton(c));
+        assertGraph("a->b a->c b->c c->d", hudson.getDependencyGraph(), a, b, c, d);
+        assertEquals(1, hudson.getDependencyGraph().getUpstreamDependencies(d).size());
+
+        d.getBuildersList().clear();
+        hudson.updateDependencyGraph(Collections.singleton(d));
+        assertGraph("a->b a->c b->c", hudson.getDependencyGraph(), a, b, c, d);
+        assertEquals(set(a, b), hudson.getDependencyGraph().getTransitiveUpstream(c));
+
+        hudson.rebuildDependencyGraph();
+        assertGraph("a->b a->c b->c", hudson.getDependencyGraph(), a, b, c, d);
+    }
+
+    private static Set<AbstractProject> set(AbstractProject... projects) {
+        return new HashSet<AbstractProject>(Arrays.asList(projects));
+    }
+
+    private void assertGraph(String expected, DependencyGraph g, AbstractProject... projects) {
+        StringBuilder buf = new StringBuilder();
+        for (AbstractProject p : projects) {
+            for (AbstractProject down : g.getDownstream(p))
+                buf.append(' ').append(p.getName()).append("->").append(down.getName());
+        }
+        assertEquals(expected, buf.toString().trim());
+
+        // and the other direction has to agree
+        int n=0;
+        for (AbstractProject p : projects) {
+            for (AbstractProject up : g.getUpstream(p)) {
+                assertTrue(g.getDownstream(up).contains(p));
+                n++;
+            }
+        }
+        assertEquals(expected.length()==0 ? 0 : expected.split(" ").length, n);
+    }
+
+    private static class UpstreamDeclarer extends MockBuilder implements DependecyDeclarer {
+        private AbstractProject up;
+        private UpstreamDeclarer(AbstractProject up) {
+            super(Result.SUCCESS);
+            this.up = up;
+        }
+        public void buildDependencyGraph(AbstractProject owner, DependencyGraph graph) {
+            graph.addDependency(new DependencyGraph.Dependency(up, owner));
+        }
+    }
 }
@@ -23,6 +23,9 @@
  */
 package hudson.model;
 
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebRequestSettings;
+import com.gargoylesoftware.htmlunit.WebResponse;
 import hudson.Functions;
 import hudson.tasks.Shell;
 import hudson.tasks.BatchFile;
@@ -32,6 +35,9 @@ import org.jvnet.hudson.test.HudsonTestCase;
 import org.jvnet.hudson.test.TestBuilder;
 
 import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Kohsuke Kawaguchi
@@ -93,4 +99,59 @@ public class DirectoryBrowserSupportTest extends HudsonTestCase {
         // can we see it?
         new WebClient().goTo("job/"+p.getName()+"/ws/%e6%bc%a2%e5%ad%97.bin","application/octet-stream");
     }
+
+    /**
+     * Files on the master's disk can be fetched in pieces, and the pieces are guarded by the ETag.
+     */
+    public void testRange() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                build.getWorkspace().child("data.bin").write("0123456789","US-ASCII");
+                return true;
+            }
+        });
+        p.scheduleBuild2(0).get();
+        String url = "job/"+p.getName()+"/ws/data.bin";
+
+        WebResponse full = fetch(url);
+        assertEquals(200, full.getStatusCode());
+        assertEquals("bytes", full.getResponseHeaderValue("Accept-Ranges"));
+        assertEquals("0123456789", full.getContentAsString());
+        String etag = full.getResponseHeaderValue("ETag");
+        assertNotNull(etag);
+
+        WebResponse part = fetch(url, "Range", "bytes=2-5");
+        assertEquals(206, part.getStatusCode());
+        assertEquals("bytes 2-5/10", part.getResponseHeaderValue("Content-Range"));
+        assertEquals("2345", part.getContentAsString());
+
+        part = fetch(url, "Range", "bytes=-3");
+        assertEquals(206, part.getStatusCode());
+        assertEquals("789", part.getContentAsString());
+
+        part = fetch(url, "Range", "bytes=7-", "If-Range", etag);
+        assertEquals(206, part.getStatusCode());
+        assertEquals("789", part.getContentAsString());
+
+        // a stale If-Range gets the whole thing
+        part = fetch(url, "Range", "bytes=7-", "If-Range", "\"stale\"");
+        assertEquals(200, part.getStatusCode());
+        assertEquals("0123456789", part.getContentAsString());
+
+        assertEquals(416, fetch(url, "Range", "bytes=10-").getStatusCode());
+        assertEquals(304, fetch(url, "If-None-Match", etag).getStatusCode());
+    }
+
+    private WebResponse fetch(String path, String... headers) throws Exception {
+        WebClient wc = new WebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        WebRequestSettings req = new WebRequestSettings(new URL(getURL()+path));
+        Map<String,String> m = new HashMap<String,String>();
+        for (int i=0; i<headers.length; i+=2)
+            m.put(headers[i],headers[i+1]);
+        req.setAdditionalHeaders(m);
+        Page page = wc.getPage(req);
+        return page.getWebResponse();
+    }
 }
@@ -38,6 +38,7 @@ import hudson.triggers.TimerTrigger.TimerTriggerCause;
 import hudson.util.XStream2;
 import hudson.util.OneShotEvent;
 import hudson.Launcher;
+import hudson.XmlFile;
 import net.sf.json.JSONObject;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
@@ -60,7 +61,10 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 /**
@@ -121,6 +125,90 @@ public class QueueTest extends HudsonTestCase {
         assertEquals(0,q.getItems().length);
     }
 
+    /**
+     * Changes made after the last {@link Queue#save()} should be recovered from the journal.
+     */
+    public void testJournal() throws Exception {
+        Queue q = hudson.getQueue();
+
+        // prevent execution to push stuff into the queue
+        hudson.setNumExecutors(0);
+        hudson.setNodes(hudson.getNodes());
+
+        FreeStyleProject p1 = createFreeStyleProject("p1");
+        FreeStyleProject p2 = createFreeStyleProject("p2");
+        q.save();
+
+        // these are only recorded in the journal
+        p1.scheduleBuild(new UserCause());
+        p2.scheduleBuild(new UserCause());
+        q.cancel(p1);
+        assertTrue(new File(hudson.getRootDir(), "queue.journal").exists());
+
+        // simulate a crash by reading back a copy of what's on disk, so that the live queue isn't disturbed
+        List<Queue.Item> items = restoreQueue();
+        assertEquals(1,items.size());
+        assertSame(p2,items.get(0).task);
+
+        // clearing the queue is persisted, too
+        q.clear();
+        assertEquals(0,q.getItems().length);
+        assertEquals(0,restoreQueue().size());
+    }
+
+    /**
+     * Reads back the items from copies of <tt>queue.xml</tt> and <tt>queue.journal</tt>, the way {@link Queue#load()} does.
+     * A second {@link Queue} can't be used for this, as loading would rewrite the files of the live one.
+     */
+    private List<Queue.Item> restoreQueue() throws IOException {
+        File dir = createTmpDir();
+        Map<Integer,Queue.Item> items = new LinkedHashMap<Integer,Queue.Item>();
+
+        File xml = new File(hudson.getRootDir(), "queue.xml");
+        if (xml.exists()) {
+            File copy = new File(dir, xml.getName());
+            FileUtils.copyFile(xml, copy);
+            for (Object o : (List)new XmlFile(Queue.XSTREAM, copy).read()) {
+                Queue.Item item = (Queue.Item)o;
+                items.put(item.id, item);
+            }
+        }
+
+        File journal = new File(hudson.getRootDir(), "queue.journal");
+        if (journal.exists()) {
+            File copy = new File(dir, journal.getName());
+            FileUtils.copyFile(journal, copy);
+            new QueueJournal(copy).replay(items);
+        }
+        return new ArrayList<Queue.Item>(items.values());
+    }
+
+    /**
+     * Scheduling multiple tasks at once should behave just like scheduling them one by one.
+     */
+    public void testScheduleMultiple() throws Exception {
+        Queue q = hudson.getQueue();
+
+        // prevent execution to push stuff into the queue
+        hudson.setNumExecutors(0);
+        hudson.setNodes(hudson.getNodes());
+
+        FreeStyleProject p1 = createFreeStyleProject("p1");
+        FreeStyleProject p2 = createFreeStyleProject("p2");
+        assertNotNull(q.schedule(p2, 10));
+
+        List<Queue.WaitingItem> items = q.schedule(Arrays.asList(
+                new Queue.ScheduleRequest(p1, 10),
+                new Queue.ScheduleRequest(p1, 10),  // duplicate within the batch
+                new Queue.ScheduleRequest(p2, 10)   // duplicate of what's already in the queue
+        ));
+        assertEquals(3, items.size());
+        assertNotNull(items.get(0));
+        assertNull(items.get(1));
+        assertNull(items.get(2));
+        assertEquals(2, q.getItems().length);
+    }
+
     public static final class FileItemPersistenceTestServlet extends HttpServlet {
         @Override protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
             resp.setContentType("text/html");
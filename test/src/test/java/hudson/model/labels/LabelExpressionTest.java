@@ -31,6 +31,7 @@ import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.model.Node.Mode;
 import hudson.slaves.DumbSlave;
 import hudson.slaves.RetentionStrategy;
@@ -41,7 +42,10 @@ import org.jvnet.hudson.test.TestBuilder;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
@@ -223,4 +227,36 @@ public class LabelExpressionTest extends HudsonTestCase {
             }
         });
     }
+
+    /**
+     * {@link Label#getNodes()} should follow the nodes coming and going without being reset.
+     */
+    public void testIncrementalNodeUpdate() throws Exception {
+        Label l = jenkins.getLabel("win&&!64bit");
+        DumbSlave w32 = createSlave("win 32bit",null);
+        assertEquals(Collections.singleton(w32),l.getNodes());
+
+        createSlave("win 64bit",null);
+        assertEquals(Collections.singleton(w32),l.getNodes());
+
+        DumbSlave w = createSlave("win",null);
+        assertEquals(new HashSet<Node>(Arrays.asList(w32,w)),l.getNodes());
+
+        jenkins.removeNode(w32);
+        assertEquals(Collections.<Node>singleton(w),l.getNodes());
+    }
+
+    /**
+     * Matching against atom bit sets should agree with the name-based evaluation.
+     */
+    public void testBitSetMatching() throws Exception {
+        Label l = Label.parseExpression("(win||linux)&&!64bit");
+        Set<LabelAtom> atoms = Label.parse("linux 32bit");
+        assertTrue(l.matches(atoms));
+        assertTrue(l.matches(Label.toBitSet(atoms)));
+
+        atoms = Label.parse("linux 64bit");
+        assertFalse(l.matches(atoms));
+        assertFalse(l.matches(Label.toBitSet(atoms)));
+    }
 }
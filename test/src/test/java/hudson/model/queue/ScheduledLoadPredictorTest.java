@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.model.FreeStyleProject;
+import hudson.triggers.TimerTrigger;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.Iterator;
+
+public class ScheduledLoadPredictorTest extends HudsonTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ScheduledLoadPredictor.ENABLED = true;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ScheduledLoadPredictor.ENABLED = false;
+        super.tearDown();
+    }
+
+    /**
+     * A job that runs every minute should show up as a load on the node it's going to run on.
+     */
+    public void testTimerTrigger() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        p.addTrigger(new TimerTrigger("* * * * *"));
+
+        ScheduledLoadPredictor lp = jenkins.getExtensionList(LoadPredictor.class).get(ScheduledLoadPredictor.class);
+        assertNotNull(lp);
+        long now = System.currentTimeMillis();
+        lp.refresh(now);
+
+        Iterator<FutureLoad> itr = lp.predict(null, jenkins.toComputer(), now, now+ScheduledLoadPredictor.HORIZON).iterator();
+        assertTrue(itr.hasNext());
+        FutureLoad fl = itr.next();
+        assertEquals(1,fl.numExecutors);
+        assertEquals(ScheduledLoadPredictor.DEFAULT_DURATION,fl.duration);
+
+        // a job doesn't run concurrently with itself, so the builds follow each other instead of piling up
+        while (itr.hasNext()) {
+            FutureLoad next = itr.next();
+            assertTrue(next.startTime>=fl.startTime+fl.duration);
+            fl = next;
+        }
+
+        // disabled jobs won't run
+        p.disable();
+        lp.refresh(now);
+        assertFalse(lp.predict(null, jenkins.toComputer(), now, now+ScheduledLoadPredictor.HORIZON).iterator().hasNext());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.scm;
+
+import hudson.model.AbstractProject;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.util.OneShotEvent;
+import hudson.util.StreamTaskListener;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SharedPollingTest extends HudsonTestCase {
+    public void testConcurrentPollsAreCollapsed() throws Exception {
+        final SharedPolling shared = new SharedPolling();
+        final OneShotEvent started = new OneShotEvent();
+        final OneShotEvent proceed = new OneShotEvent();
+        final KeyedSCM scm = new KeyedSCM("repo", started, proceed);
+        final FreeStyleProject p1 = createFreeStyleProject();
+        final FreeStyleProject p2 = createFreeStyleProject();
+
+        ExecutorService es = Executors.newCachedThreadPool();
+        try {
+            Future<SCMRevisionState> f1 = es.submit(new Callable<SCMRevisionState>() {
+                public SCMRevisionState call() throws Exception {
+                    return shared.calcRemoteRevision(scm, p1, StreamTaskListener.fromStdout());
+                }
+            });
+            started.block();
+            Future<SCMRevisionState> f2 = es.submit(new Callable<SCMRevisionState>() {
+                public SCMRevisionState call() throws Exception {
+                    return shared.calcRemoteRevision(scm, p2, StreamTaskListener.fromStdout());
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(f2.isDone());
+
+            proceed.signal();
+            assertSame(f1.get(), f2.get());
+            assertEquals(1, scm.polls);
+            assertEquals(1, shared.getRemotePolls());
+            assertEquals(1, shared.getSavedPolls());
+        } finally {
+            es.shutdown();
+        }
+
+        // a poll right after that reuses the result, but a different key doesn't
+        shared.calcRemoteRevision(scm, p1, StreamTaskListener.fromStdout());
+        assertEquals(1, scm.polls);
+        KeyedSCM other = new KeyedSCM("other", new OneShotEvent(), proceed);
+        shared.calcRemoteRevision(other, p1, StreamTaskListener.fromStdout());
+        assertEquals(1, other.polls);
+        assertEquals(2, shared.getSavedPolls());
+        assertEquals(2, shared.getRemotePolls());
+
+        // once forgotten, the next poll goes to the repository again
+        shared.clear();
+        shared.calcRemoteRevision(scm, p1, StreamTaskListener.fromStdout());
+        assertEquals(2, scm.polls);
+    }
+
+    /**
+     * An SCM with a polling key but without calcRemoteRevision is reported clearly.
+     */
+    public void testUnimplemented() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        NullSCM scm = new NullSCM() {
+            @Override
+            public Object getPollingKey(AbstractProject<?, ?> project) {
+                return "repo";
+            }
+        };
+        try {
+            new SharedPolling().calcRemoteRevision(scm, p, StreamTaskListener.fromStdout());
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("calcRemoteRevision"));
+        }
+    }
+
+    private static class KeyedSCM extends NullSCM {
+        private final String key;
+        private final OneShotEvent started, proceed;
+        volatile int polls;
+
+        KeyedSCM(String key, OneShotEvent started, OneShotEvent proceed) {
+            this.key = key;
+            this.started = started;
+            this.proceed = proceed;
+        }
+
+        @Override
+        public Object getPollingKey(AbstractProject<?, ?> project) {
+            return key;
+        }
+
+        @Override
+        public SCMRevisionState calcRemoteRevision(AbstractProject<?, ?> project, TaskListener listener) throws IOException, InterruptedException {
+            polls++;
+            started.signal();
+            proceed.block();
+            return new SCMRevisionState() {};
+        }
+    }
+}
@@ -195,6 +195,26 @@ public class NodeProvisionerTest extends HudsonTestCase {
         }
     }
 
+    /**
+     * Scenario: with the event driven strategy, a burst of jobs gets exactly as many slaves as it needs,
+     * even though launching one takes a while.
+     */
+    public void testEventDrivenLoadSpike() throws Exception {
+        NodeProvisioner.EVENT_DRIVEN = true;
+        BulkChange bc = new BulkChange(hudson);
+        try {
+            DummyCloudImpl cloud = initHudson(1000);
+
+            verifySuccessfulCompletion(buildAll(create5SlowJobs(new Latch(5))));
+
+            // slaves being launched are taken into account, so no over-provisioning while we wait for them
+            assertEquals(5,cloud.numProvisioned);
+        } finally {
+            bc.abort();
+            NodeProvisioner.EVENT_DRIVEN = false;
+        }
+    }
+
 
     private FreeStyleProject createJob(Builder builder) throws IOException {
         FreeStyleProject p = createFreeStyleProject();
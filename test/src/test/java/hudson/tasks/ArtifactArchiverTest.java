@@ -25,17 +25,28 @@
 package hudson.tasks;
 
 import hudson.FilePath;
+import hudson.Functions;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Result;
+import hudson.model.Run;
+import hudson.os.PosixAPI;
 import hudson.tasks.LogRotatorTest.TestsFail;
 import java.io.File;
 import static hudson.tasks.LogRotatorTest.build;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.FileUtils;
 import org.jvnet.hudson.test.Bug;
 import org.jvnet.hudson.test.FailureBuilder;
 import org.jvnet.hudson.test.HudsonTestCase;
@@ -148,6 +159,103 @@ public class ArtifactArchiverTest extends HudsonTestCase {
         assertEquals("file", kids[0].getName());
     }
 
+    public void testArtifactStore() throws Exception {
+        if (Functions.isWindows())  return; // needs hard links
+        ArtifactStore.ENABLED = true;
+        try {
+            FreeStyleProject project = createFreeStyleProject();
+            project.setAssignedNode(createOnlineSlave());
+            project.getBuildersList().replaceBy(Collections.singleton(new CreateArtifact()));
+            project.getPublishersList().replaceBy(Collections.singleton(new ArtifactArchiver("f", "", false)));
+
+            FreeStyleBuild b1 = assertBuildStatusSuccess(project.scheduleBuild2(0));
+            assertLogContains("0 of 1 artifacts were already on the master", b1);
+            FreeStyleBuild b2 = assertBuildStatusSuccess(project.scheduleBuild2(0));
+            assertLogContains("1 of 1 artifacts were already on the master", b2);
+
+            ArtifactStore store = ArtifactStore.get();
+            String md5 = Util.getDigestOf("content");
+            assertEquals(md5, ArtifactStore.getDigests(b2).get("f"));
+            File blob = store.getBlob(md5);
+            assertEquals("content", FileUtils.readFileToString(new File(b2.getArtifactsDir(), "f")));
+            assertEquals("the blob and both builds", 3, PosixAPI.get().stat(blob.getPath()).nlink());
+
+            b1.delete();
+            assertEquals(0, store.collect(null));
+            assertTrue(blob.exists());
+            b2.delete();
+            assertEquals(1, store.collect(null));
+            assertFalse(blob.exists());
+        } finally {
+            ArtifactStore.ENABLED = false;
+        }
+    }
+
+    public void testManifest() throws Exception {
+        FreeStyleProject project = createFreeStyleProject();
+        project.getBuildersList().replaceBy(Collections.singleton(new TestBuilder() {
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                FilePath dir = build.getWorkspace().child("dir");
+                dir.child("a.txt").write("a", "UTF-8");
+                dir.child("sub/b.txt").write("bb", "UTF-8");
+                return true;
+            }
+        }));
+        project.getPublishersList().replaceBy(Collections.singleton(new ArtifactArchiver("dir/**", "", false)));
+        FreeStyleBuild b = assertBuildStatusSuccess(project.scheduleBuild2(0));
+
+        File manifest = new File(b.getRootDir(), "artifacts.manifest");
+        assertTrue(manifest.exists());
+        assertEquals(2, b.getArtifactManifest().getEntries().size());
+        assertArtifacts(b.getArtifacts(), "dir/a.txt:1", "dir/sub/b.txt:2");
+        assertTrue(b.getHasArtifacts());
+
+        assertEquals("[archive/dir/a.txt, archive/dir/sub/b.txt]", zipEntries(b.getUrl()+"artifact/*zip*/archive.zip").toString());
+        assertEquals("[dir/a.txt, dir/sub/b.txt]", zipEntries(b.getUrl()+"artifact/dir/*zip*/dir.zip").toString());
+        assertEquals("[sub/b.txt]", zipEntries(b.getUrl()+"artifact/dir/**/b.txt/*zip*/b.zip").toString());
+
+        // builds from before manifests get one when they are first looked at
+        manifest.delete();
+        jenkins.reload();
+        Run<?,?> r = jenkins.getItemByFullName(project.getFullName(), FreeStyleProject.class).getBuildByNumber(b.getNumber());
+        assertArtifacts(r.getArtifacts(), "dir/a.txt:1", "dir/sub/b.txt:2");
+        assertTrue(manifest.exists());
+
+        // files added afterward show up, too
+        FileUtils.writeStringToFile(new File(r.getArtifactsDir(), "extra.txt"), "ccc");
+        // file systems with coarse timestamps may not tell the change from the last walk
+        r.getArtifactsDir().setLastModified(r.getArtifactsDir().lastModified()+2000);
+        assertArtifacts(r.getArtifacts(), "dir/a.txt:1", "dir/sub/b.txt:2", "extra.txt:3");
+        FileUtils.writeStringToFile(new File(r.getArtifactsDir(), "dir/sub/c.txt"), "dddd");
+        r.refreshArtifactManifest();
+        assertArtifacts(r.getArtifacts(), "dir/a.txt:1", "dir/sub/b.txt:2", "dir/sub/c.txt:4", "extra.txt:3");
+
+        r.deleteArtifacts();
+        assertFalse(manifest.exists());
+        assertFalse(r.getHasArtifacts());
+    }
+
+    private void assertArtifacts(List<? extends Run<?,?>.Artifact> artifacts, String... expected) {
+        Set<String> actual = new TreeSet<String>();
+        for (Run<?,?>.Artifact a : artifacts)
+            actual.add(a.relativePath+':'+a.getLength());
+        assertEquals(Arrays.asList(expected).toString(), actual.toString());
+    }
+
+    private Set<String> zipEntries(String url) throws Exception {
+        Set<String> r = new TreeSet<String>();
+        ZipInputStream zip = new ZipInputStream(new WebClient().goTo(url, "application/zip").getWebResponse().getContentAsStream());
+        try {
+            ZipEntry e;
+            while ((e=zip.getNextEntry())!=null)
+                if (!e.isDirectory())
+                    r.add(e.getName());
+        } finally {
+            zip.close();
+        }
+        return r;
+    }
+
     static class CreateArtifact extends TestBuilder {
         public boolean perform(AbstractBuild<?,?> build, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
             build.getWorkspace().child("f").write("content", "UTF-8");
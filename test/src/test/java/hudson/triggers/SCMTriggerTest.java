@@ -136,5 +136,156 @@ public class SCMTriggerTest extends HudsonTestCase {
 
         assertFalse("There should only be one BuildAction.", ba.size()!=1);
     }
-}
 
+    public void testAdaptivePollingBackoff() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        AdaptivePolling a = new AdaptivePolling();
+        long t = System.currentTimeMillis();
+
+        for (int i=0; i<AdaptivePolling.BACKOFF_START; i++) {
+            assertTrue(a.shouldPoll(p,t));
+            a.onPolled(p,t,100,false);
+            t += 60000;
+        }
+        // skips one tick, then 3
+        assertFalse(a.shouldPoll(p,t));
+        assertTrue(a.shouldPoll(p,t));
+        a.onPolled(p,t,100,false);
+        for (int i=0; i<3; i++)
+            assertFalse(a.shouldPoll(p,t));
+        assertTrue(a.shouldPoll(p,t));
+
+        // a change brings the job back to its schedule
+        a.onPolled(p,t,100,true);
+        assertTrue(a.getStats(p).isHot());
+        assertTrue(a.shouldPoll(p,t));
+
+        // but a job is never backed off for too long
+        for (int i=0; i<10; i++)
+            a.onPolled(p,t,100,false);
+        assertFalse(a.shouldPoll(p,t+60000));
+        assertTrue(a.shouldPoll(p,t+AdaptivePolling.MAX_BACKOFF));
+        assertEquals(5,a.getSkipped());
+    }
+
+    /**
+     * Only the crontab is backed off; an explicit request to poll, like that of a commit hook, goes through.
+     */
+    public void testAdaptivePollingSparesPollingUrl() throws Exception {
+        SCMTrigger.DescriptorImpl d = hudson.getDescriptorByType(SCMTrigger.DescriptorImpl.class);
+        d.setAdaptivePolling(true);
+        FreeStyleProject p = createFreeStyleProject();
+        p.setScm(new NullSCM());
+        assertBuildStatusSuccess(p.scheduleBuild2(0));
+        SCMTrigger t = new SCMTrigger("@daily");
+        p.addTrigger(t);
+        t.start(p,true);
+
+        AdaptivePolling a = d.getAdaptivePolling();
+        for (int i=0; i<10; i++)
+            a.onPolled(p,0,100,false);
+        AdaptivePolling.Stats s = a.getStats(p);
+        t.runOnSchedule();
+        assertEquals(1,s.getSkipped());
+
+        createWebClient().goTo(p.getUrl()+"polling");
+        for (int i=0; s.getLastPoll()==0; i++) {
+            assertTrue("the polling never happened", i<100);
+            Thread.sleep(100);
+        }
+        assertEquals(1,s.getSkipped());
+    }
+
+    public void testAdaptivePollingBudget() throws Exception {
+        FreeStyleProject cold = createFreeStyleProject();
+        FreeStyleProject hot = createFreeStyleProject();
+        AdaptivePolling a = new AdaptivePolling();
+        a.setPollsPerMinute(4);
+        long t = System.currentTimeMillis();
+        a.onPolled(hot,t,0,true);
+
+        // cold jobs leave a quarter of the budget to the hot ones
+        assertTrue(a.shouldPoll(cold,t));
+        assertTrue(a.shouldPoll(cold,t));
+        assertTrue(a.shouldPoll(cold,t));
+        assertFalse(a.shouldPoll(cold,t));
+        assertTrue(a.shouldPoll(hot,t));
+        assertFalse(a.shouldPoll(hot,t));
+
+        // the budget refills over time, and slow polls are charged more
+        assertTrue(a.shouldPoll(hot,t+30000));
+        a.onPolled(hot,t+30000,AdaptivePolling.COST_UNIT,true);
+        assertFalse(a.shouldPoll(hot,t+30000));
+        assertEquals(3,a.getSkipped());
+    }
+
+    /**
+     * A hanging SCM host shouldn't keep the other jobs from being polled.
+     */
+    public void testPollingPoolsPerHost() throws Exception {
+        SCMTrigger.DescriptorImpl d = hudson.getDescriptorByType(SCMTrigger.DescriptorImpl.class);
+        d.setPollingThreadCount(1);
+        // off by default, so that existing installations don't grow more threads
+        assertSame(d.getPool(null),d.getPool("slow.example.com"));
+        d.setPollingThreadCountPerHost(1);
+
+        OneShotEvent hanging = new OneShotEvent();
+        OneShotEvent release = new OneShotEvent();
+        FreeStyleProject slow = createFreeStyleProject();
+        slow.setScm(new HangingSCM(hanging,release));
+        FreeStyleProject fast = createFreeStyleProject();
+        fast.setScm(new NullSCM());
+        assertBuildStatusSuccess(slow.scheduleBuild2(0));
+        assertBuildStatusSuccess(fast.scheduleBuild2(0));
+
+        SCMTrigger ts = new SCMTrigger("@daily");
+        slow.addTrigger(ts);
+        ts.start(slow,true);
+        SCMTrigger tf = new SCMTrigger("@daily");
+        fast.addTrigger(tf);
+        tf.start(fast,true);
+
+        ts.run();
+        hanging.block();
+        PollingPool slowPool = d.getPool("slow.example.com");
+        assertEquals(1,slowPool.getBusy());
+
+        long count = d.getPool(null).getDurations().getCount();
+        tf.run();
+        for (int i=0; i<100 && d.getPool(null).getDurations().getCount()==count; i++)
+            Thread.sleep(100);
+        assertEquals(count+1,d.getPool(null).getDurations().getCount());
+
+        release.signal();
+        for (int i=0; i<100 && slowPool.getDurations().getCount()==0; i++)
+            Thread.sleep(100);
+        assertEquals(1,slowPool.getDurations().getCount());
+        assertTrue(d.getPools().contains(slowPool));
+    }
+
+    private static class HangingSCM extends NullSCM {
+        private final OneShotEvent hanging, release;
+
+        HangingSCM(OneShotEvent hanging, OneShotEvent release) {
+            this.hanging = hanging;
+            this.release = release;
+        }
+
+        @Override
+        public String getPollingHost(AbstractProject<?, ?> project) {
+            return "slow.example.com";
+        }
+
+        @Override
+        public boolean requiresWorkspaceForPolling() {
+            return false;
+        }
+
+        @Override
+        protected PollingResult compareRemoteRevisionWith(AbstractProject project, Launcher launcher, FilePath workspace, TaskListener listener, SCMRevisionState baseline) throws IOException, InterruptedException {
+            hanging.signal();
+            release.block();
+            return PollingResult.NO_CHANGES;
+        }
+    }
+}
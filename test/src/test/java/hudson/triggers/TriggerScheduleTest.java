@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.triggers;
+
+import hudson.model.FreeStyleProject;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+public class TriggerScheduleTest extends HudsonTestCase {
+    public void testDue() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        TimerTrigger t = new TimerTrigger("*/5 * * * *");
+        p.addTrigger(t);
+        t.start(p,true);
+
+        TriggerSchedule s = new TriggerSchedule();
+        s.update(p);
+        assertEquals(1,s.size());
+
+        // walk through the next hour, minute by minute, as Trigger.Cron does
+        Calendar cal = new GregorianCalendar();
+        int fired = 0;
+        for (int i=0; i<60; i++) {
+            List<TriggerSchedule.Entry> due = s.due(cal.getTimeInMillis());
+            if (cal.get(Calendar.MINUTE)%5==0) {
+                assertEquals(1,due.size());
+                assertSame(t,due.get(0).trigger);
+                assertTrue(due.get(0).isCurrent());
+                fired++;
+            } else {
+                assertEquals(0,due.size());
+            }
+            cal.add(Calendar.MINUTE,1);
+        }
+        assertEquals(12,fired);
+
+        // once the trigger is gone, nothing fires
+        p.removeTrigger(t.getDescriptor());
+        s.update(p);
+        for (int i=0; i<10; i++) {
+            assertEquals(0,s.due(cal.getTimeInMillis()).size());
+            cal.add(Calendar.MINUTE,1);
+        }
+    }
+
+    public void testStaleEntry() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        TimerTrigger t = new TimerTrigger("* * * * *");
+        p.addTrigger(t);
+
+        TriggerSchedule s = new TriggerSchedule();
+        s.update(p);
+        List<TriggerSchedule.Entry> due = s.due(System.currentTimeMillis());
+        assertEquals(1,due.size());
+        p.delete();
+        assertFalse("deleted projects are not triggered even if they are still in the schedule", due.get(0).isCurrent());
+    }
+}